@@ -293,7 +293,8 @@ public final class DroidAPI implements AutoCloseable {
 
         final RequestIdentifier id = getRequestIdentifier(file.toAbsolutePath().toUri());
 
-        try (final FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(metaData, id)) {
+        try (final FileSystemIdentificationRequest request =
+                     new FileSystemIdentificationRequest(metaData, id, droidCore.getTopAndTailExtent())) {
             request.setExtension(extension);
             request.open(file);
             return getApiResults(request);
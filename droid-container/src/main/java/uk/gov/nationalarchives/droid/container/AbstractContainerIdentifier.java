@@ -85,6 +85,7 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
         final ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
             getContainerSignatures(),
             init.getUniqueFileEntries(),
+            init.getFileIndex(),
             maxBytesToScan);
 
         process(request, matches);
@@ -179,6 +180,9 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
                     containerIdentifierFactory.addContainerIdentifier(containerType, this);
                     final String puid = triggerPuid.getPuid();
                     containerFormatResolver.registerPuid(puid, containerType);
+                    if (droidCore != null) {
+                        droidCore.retainMatchesForPuid(puid);
+                    }
                 }
             }
         } catch (SignatureParseException e) {
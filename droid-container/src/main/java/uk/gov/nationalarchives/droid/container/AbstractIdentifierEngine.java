@@ -37,6 +37,7 @@ import java.io.InputStream;
 import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.IdentificationRequestFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 /**
@@ -58,6 +59,43 @@ public abstract class AbstractIdentifierEngine implements IdentifierEngine<Input
         request.open(in);
         return new IdentificationRequestByteReaderAdapter(request);
     }
+
+    /**
+     * Returns a ByteReader for a container entry, which only reads as much of the entry as the binary
+     * signatures it will be matched against can match in.
+     * @param in an input stream of the container entry
+     * @param matches the container signatures the entry will be matched against
+     * @param entryName the name of the container entry
+     * @return a Byte reader
+     * @throws IOException if the input stream could not be read
+     */
+    protected ByteReader newByteReader(InputStream in, Iterable<ContainerSignatureMatch> matches,
+                                       String entryName) throws IOException {
+        IdentificationRequest<InputStream> request = getRequestFactory().newRequest(null, null);
+        if (request instanceof ContainerFileIdentificationRequest) {
+            ((ContainerFileIdentificationRequest) request).setBinaryExtent(getBinaryExtent(matches, entryName));
+        }
+        request.open(in);
+        return new IdentificationRequestByteReaderAdapter(request);
+    }
+
+    // Returns the widest extent of the binary signatures still to match against the entry,
+    // or null if any of them can match anywhere in it.
+    private static TopAndTailExtent getBinaryExtent(Iterable<ContainerSignatureMatch> matches, String entryName) {
+        long top = 0;
+        long tail = 0;
+        for (ContainerSignatureMatch match : matches) {
+            if (match.needsBinaryMatch(entryName)) {
+                final TopAndTailExtent extent = match.getSignature().getFiles().get(entryName).getBinaryExtent();
+                if (extent == null) {
+                    return null;
+                }
+                top = Math.max(top, extent.getTopBytes());
+                tail = Math.max(tail, extent.getTailBytes());
+            }
+        }
+        return new TopAndTailExtent(top, tail);
+    }
     
      /**
      * @param requestFactory the requestFactory to set
@@ -41,6 +41,9 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
 import uk.gov.nationalarchives.droid.core.SignatureParseException;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
+import uk.gov.nationalarchives.droid.core.signature.droid6.ByteSequence;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
 import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
 import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureComparator;
 
@@ -51,6 +54,9 @@ import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureComp
 @XmlAccessorType(XmlAccessType.NONE)
 public class ContainerFile {
 
+    // Marks a file whose binary signatures can match further into it than their offsets allow for.
+    private static final TopAndTailExtent UNBOUNDED = new TopAndTailExtent(-1, -1);
+
     @XmlTransient
     private Logger log = LoggerFactory.getLogger(this.getClass());
     
@@ -68,6 +74,9 @@ public class ContainerFile {
     
     @XmlTransient
     private InternalSignatureCollection signatures;
+
+    @XmlTransient
+    private volatile TopAndTailExtent binaryExtent;
     
     /**
      * @return the path
@@ -110,6 +119,7 @@ public class ContainerFile {
      */
     public void setBinarySignatures(InternalSignatureCollection binarySigs) {
         signatures = binarySigs;
+        binaryExtent = null;
     }
     
     
@@ -142,5 +152,41 @@ public class ContainerFile {
         }
         return this.signatures;
     }
+
+    /**
+     * Returns how many bytes at the top and tail of the file its binary signatures can match in.
+     * Byte sequences at a bounded offset from the start or end of the file only reach so far into it.
+     *
+     * @return How many bytes at the top and tail of the file are worth reading, or null if there are no
+     *         binary signatures, or if any byte sequence can match further into the file than its offsets allow for.
+     */
+    public TopAndTailExtent getBinaryExtent() {
+        TopAndTailExtent extent = binaryExtent;
+        if (extent == null) {
+            final InternalSignatureCollection binarySigs = getCompiledBinarySignatures();
+            extent = binarySigs == null ? UNBOUNDED : calculateBinaryExtent(binarySigs);
+            binaryExtent = extent;
+        }
+        return extent == UNBOUNDED ? null : extent;
+    }
+
+    private static TopAndTailExtent calculateBinaryExtent(InternalSignatureCollection binarySigs) {
+        long top = 1; // read at least one byte, so an empty entry is not mistaken for a non-empty one.
+        long tail = 0;
+        for (InternalSignature signature : binarySigs.getInternalSignatures()) {
+            for (ByteSequence sequence : signature.getByteSequences()) {
+                final long reach = sequence.getMaxExtent();
+                if (reach < 0 || reach > TopAndTailExtent.MAX_BYTES) {
+                    return UNBOUNDED;
+                }
+                if (sequence.isAnchoredToEOF()) {
+                    tail = Math.max(tail, reach);
+                } else {
+                    top = Math.max(top, reach);
+                }
+            }
+        }
+        return new TopAndTailExtent(top, tail);
+    }
     
 }
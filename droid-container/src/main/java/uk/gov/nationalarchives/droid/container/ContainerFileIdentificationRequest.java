@@ -38,12 +38,16 @@ import java.nio.file.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.InputStreamReader;
 import net.byteseek.io.reader.ReaderInputStream;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailStreamCache;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 
 /**
  * @author rflitcroft
@@ -57,6 +61,7 @@ public class ContainerFileIdentificationRequest implements IdentificationRequest
     private Path tempDir;
     private Logger log = LoggerFactory.getLogger(this.getClass());
     private WindowReader reader;
+    private TopAndTailExtent binaryExtent;
 
     /**
      * Constructs a new container file resource.
@@ -65,13 +70,33 @@ public class ContainerFileIdentificationRequest implements IdentificationRequest
     public ContainerFileIdentificationRequest(final Path tempDir) {
         this.tempDir = tempDir;
     }
+
+    /**
+     * Sets how many bytes at the top and tail of the container entry the binary signatures it will be
+     * matched against can match in, so only those bytes are read when the request is opened.
+     * @param extent how many bytes at the top and tail of the entry to read, or null to read all of it.
+     */
+    public void setBinaryExtent(final TopAndTailExtent extent) {
+        this.binaryExtent = extent;
+    }
     
     /**
      * {@inheritDoc}
      */
     @Override
     public final void open(final InputStream in) throws IOException {
-        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY);
+        final TopAndTailExtent extent = binaryExtent;
+        if (extent == null) {
+            reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY);
+        } else if (extent.getTailBytes() == 0) {
+            // Only inflate as far into the entry as the signatures can match.  A longer entry is treated as
+            // ending there, which cannot change whether byte sequences that never reach any further match.
+            reader = new ByteArrayReader(in.readNBytes((int) extent.getTopBytes()));
+        } else {
+            // The tail can only be found by reading to the end, but nothing between the top and tail is kept.
+            reader = new InputStreamReader(in,
+                    new TopAndTailStreamCache(extent.getTopBytes(), extent.getTailBytes()));
+        }
         // Force read of entire input stream to build reader and remove dependence on source input stream.
         size = reader.length(); // getting the size of a reader backed by a stream forces a stream read.
     }
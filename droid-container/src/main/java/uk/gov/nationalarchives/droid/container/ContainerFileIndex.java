@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An index of the file paths in a set of container signatures, built once when the signatures are loaded,
+ * which finds the paths matching a container entry without comparing the entry against every path.
+ * <p>
+ * Paths which are plain names are found by looking up the entry name.  Only the few paths which are globs
+ * or use {containerFileName} are matched one by one, each with a glob compiled once.  The paths found
+ * are exactly those which {@link FileMatcher#fileMatches(String, String, String)} would match.
+ * </p>
+ */
+public class ContainerFileIndex {
+
+    private static final String GLOB_CHARACTERS = "*?[{\\";
+
+    private final FileMatcher fileMatcher = new FileMatcher();
+    private final boolean literalGlobsMatchExactly = fileMatcher.literalGlobsMatchExactly();
+    private final Set<String> literalPaths = new HashSet<>();
+    private final List<String> containerNamePaths = new ArrayList<>();
+    private final List<String> globPaths = new ArrayList<>();
+    private final Map<String, int[]> signaturesByPath = new HashMap<>();
+
+    /**
+     * Indexes the file paths of container signatures.
+     * @param signatures the container signatures to index.
+     */
+    public ContainerFileIndex(final List<ContainerSignature> signatures) {
+        final Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            for (String path : signatures.get(i).getFiles().keySet()) {
+                positions.computeIfAbsent(path, k -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            final String path = entry.getKey();
+            signaturesByPath.put(path, entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            if (path.startsWith(FileMatcher.CONTAINER_NAME_PLACEHOLDER)) {
+                containerNamePaths.add(path);
+            }
+            if (isGlob(path)) {
+                globPaths.add(path);
+            } else {
+                literalPaths.add(path);
+            }
+        }
+    }
+
+    /**
+     * Returns the file paths in the signatures which match a container entry.
+     * @param entryName the name of the container entry.
+     * @param containerFileName the name of the container.
+     * @return the paths matching the entry.
+     */
+    public Set<String> getMatchingPaths(final String entryName, final String containerFileName) {
+        final Set<String> matching = new HashSet<>();
+        if (literalPaths.contains(entryName)) {
+            matching.add(entryName);
+        }
+        for (String path : containerNamePaths) {
+            if (FileMatcher.matchesContainerName(path, entryName, containerFileName)) {
+                matching.add(path);
+            }
+        }
+        for (String path : globPaths) {
+            if (path.equals(entryName) || fileMatcher.globMatches(path, entryName)) {
+                matching.add(path);
+            }
+        }
+        addLiteralGlobMatches(entryName, matching);
+        return matching;
+    }
+
+    /**
+     * Finds the first entry of a container matching each of some file paths, in a single pass over its entries.
+     * @param wanted the paths to find entries for.
+     * @param entries the entries of the container, in the order to search them.
+     * @param name a function giving the name of an entry.
+     * @param skip which entries to skip.
+     * @param containerFileName the name of the container.
+     * @param <T> the type of container entry.
+     * @return the first entry matching each path, for the paths which any entry matches.
+     */
+    public <T> Map<String, T> findFirstEntries(final Collection<String> wanted, final Iterator<? extends T> entries,
+            final Function<T, String> name, final Predicate<T> skip, final String containerFileName) {
+        final Set<String> wantedPaths = new HashSet<>(wanted);
+        final Map<String, T> found = new HashMap<>();
+        while (entries.hasNext() && found.size() < wantedPaths.size()) {
+            final T entry = entries.next();
+            if (!skip.test(entry)) {
+                for (String path : getMatchingPaths(name.apply(entry), containerFileName)) {
+                    if (wantedPaths.contains(path)) {
+                        found.putIfAbsent(path, entry);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param path a file path in the signatures.
+     * @return the positions of the signatures with that path, in the list the index was built from.
+     */
+    public int[] getSignaturePositions(final String path) {
+        final int[] positions = signaturesByPath.get(path);
+        return positions == null ? new int[0] : positions;
+    }
+
+    // A path with no glob characters is still a glob, which matches the entry if it is the entry as a path.
+    private void addLiteralGlobMatches(final String entryName, final Set<String> matching) {
+        if (literalGlobsMatchExactly) {
+            final String normalised = fileMatcher.normalise(entryName);
+            if (normalised != null && literalPaths.contains(normalised)) {
+                matching.add(normalised);
+            }
+        } else {
+            for (String path : literalPaths) {
+                if (fileMatcher.globMatches(path, entryName)) {
+                    matching.add(path);
+                }
+            }
+        }
+    }
+
+    private static boolean isGlob(final String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(path.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
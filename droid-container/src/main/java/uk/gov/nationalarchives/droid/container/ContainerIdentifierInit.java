@@ -47,6 +47,7 @@ public class ContainerIdentifierInit {
     
     private List<String> uniqueFileEntries = new ArrayList<>();
     private List<ContainerSignature> containerSignatures = new ArrayList<ContainerSignature>();
+    private volatile ContainerFileIndex fileIndex;
     
     /**
      * @param defs The definitions from the container signature
@@ -66,6 +67,7 @@ public class ContainerIdentifierInit {
             }
         }
         uniqueFileEntries = new ArrayList<String>(uniqueFileSet); 
+        fileIndex = new ContainerFileIndex(containerSignatures);
         
         for (final FileFormatMapping fmt : defs.getFormats()) {
             List<FileFormatMapping> mappings = formats.get(fmt.getSignatureId());
@@ -88,6 +90,22 @@ public class ContainerIdentifierInit {
      */
     public void addContainerSignature(final ContainerSignature containerSignature) {
         containerSignatures.add(containerSignature);
+        fileIndex = null;
+    }
+
+    /**
+     * Get an index of the file entries in the container signatures, which is built once for all the
+     * containers identified with them.
+     *
+     * @return the index of the file entries
+     */
+    public ContainerFileIndex getFileIndex() {
+        ContainerFileIndex index = fileIndex;
+        if (index == null) {
+            index = new ContainerFileIndex(containerSignatures);
+            fileIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -46,20 +46,19 @@ import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureColl
  */
 public class ContainerSignatureMatch {
 
+    private static final FileMatcher FILE_MATCHER = new FileMatcher();
+
     private ContainerSignature signature;
     private long maxBytesToScan = -1;
 
     private Set<String> unmatchedFiles = new HashSet<>();
 
-    private final FileMatcher fileMatcher;
-
     /**
      * Constructs a new Container signature match.
      * @param sig the signature to match against
      * @param maxBytesToScan - the max bytes to binary match on, or negative meaning unlimited.
      */
     public ContainerSignatureMatch(ContainerSignature sig, long maxBytesToScan) {
-        fileMatcher = new FileMatcher();
         unmatchedFiles.addAll(sig.getFiles().keySet());
         this.signature = sig;
         this.maxBytesToScan = maxBytesToScan;
@@ -91,7 +90,25 @@ public class ContainerSignatureMatch {
     public void matchFileEntry(String entryName, String containerFileName) {
         for (Iterator<String> it = unmatchedFiles.iterator(); it.hasNext();) {
             String unmatchedFile = it.next();
-            if (fileMatcher.fileMatches(unmatchedFile, entryName, containerFileName)) {
+            if (FILE_MATCHER.fileMatches(unmatchedFile, entryName, containerFileName)) {
+                InternalSignatureCollection binSigs = signature.getFiles().get(unmatchedFile).getCompiledBinarySignatures();
+                if (binSigs == null) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Matches a file entry against the signature, given the file paths which match the entry,
+     * as found by a {@link ContainerFileIndex}.
+     * @param matchingPaths the file paths which match the container file entry.
+     */
+    public void matchFileEntry(Set<String> matchingPaths) {
+        for (Iterator<String> it = unmatchedFiles.iterator(); it.hasNext();) {
+            String unmatchedFile = it.next();
+            if (matchingPaths.contains(unmatchedFile)) {
                 InternalSignatureCollection binSigs = signature.getFiles().get(unmatchedFile).getCompiledBinarySignatures();
                 if (binSigs == null) {
                     it.remove();
@@ -32,7 +32,9 @@
 package uk.gov.nationalarchives.droid.container;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author a-mpalmer
@@ -42,6 +44,7 @@ public class ContainerSignatureMatchCollection {
 
     private final List<ContainerSignatureMatch> matches = new ArrayList<ContainerSignatureMatch>();
     private final List<String> allFileEntries; 
+    private final ContainerFileIndex fileIndex;
     
     /**
      * 
@@ -51,11 +54,24 @@ public class ContainerSignatureMatchCollection {
      */
     public ContainerSignatureMatchCollection(final List<ContainerSignature> signatures, 
         final List<String> allFileEntries, final long maxBytesToScan) {
+        this(signatures, allFileEntries, new ContainerFileIndex(signatures), maxBytesToScan);
+    }
+
+    /**
+     *
+     * @param signatures     The signatures from which to contruct our match objects.
+     * @param allFileEntries A list of all the unique file entries used in the signatures.
+     * @param fileIndex      An index of the file entries in the signatures, in the same order.
+     * @param maxBytesToScan - the max bytes to binary match on, or negative meaning unlimited.
+     */
+    public ContainerSignatureMatchCollection(final List<ContainerSignature> signatures,
+        final List<String> allFileEntries, final ContainerFileIndex fileIndex, final long maxBytesToScan) {
         for (ContainerSignature sig : signatures) {
             ContainerSignatureMatch match = new ContainerSignatureMatch(sig, maxBytesToScan);
             matches.add(match);
         }
         this.allFileEntries = allFileEntries;
+        this.fileIndex = fileIndex;
     }
     
     /**
@@ -73,5 +89,37 @@ public class ContainerSignatureMatchCollection {
     public List<ContainerSignatureMatch> getContainerSignatureMatches() {
         return matches;
     }
+
+    /**
+     *
+     * @return The index of the file entries in the signatures.
+     */
+    public ContainerFileIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * Matches a container file entry against only the signatures with a file path which matches it.
+     * @param entryName the name of the container file entry.
+     * @param containerFileName the name of the container file.
+     * @return the signature matches with a file path matching the entry, in the order of all the matches.
+     *         These are the only matches which the entry's content can be matched against.
+     */
+    public List<ContainerSignatureMatch> matchFileEntry(final String entryName, final String containerFileName) {
+        final Set<String> matchingPaths = fileIndex.getMatchingPaths(entryName, containerFileName);
+        final BitSet interested = new BitSet(matches.size());
+        for (String path : matchingPaths) {
+            for (int position : fileIndex.getSignaturePositions(path)) {
+                interested.set(position);
+            }
+        }
+        final List<ContainerSignatureMatch> interestedMatches = new ArrayList<>(interested.cardinality());
+        for (int i = interested.nextSetBit(0); i >= 0; i = interested.nextSetBit(i + 1)) {
+            final ContainerSignatureMatch match = matches.get(i);
+            match.matchFileEntry(matchingPaths);
+            interestedMatches.add(match);
+        }
+        return interestedMatches;
+    }
     
 }
@@ -36,13 +36,31 @@ import org.apache.commons.io.FilenameUtils;
 import java.net.URI;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
 import java.nio.file.PathMatcher;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.PatternSyntaxException;
 
+/**
+ * Matches the names of container entries against the file paths in container signatures.
+ * A path matches an entry if it is the same, if it names the entry using the name of the container
+ * in place of {containerFileName}, or if it is a glob which matches the entry.
+ * <p>
+ * Each glob is compiled once, the first time it is matched.
+ * </p>
+ */
 public class FileMatcher {
 
-    private static final String CONTAINER_NAME_PLACEHOLDER = "{containerFileName}";
+    /**
+     * Stands for the name of the container, without its extension, in a file path.
+     */
+    static final String CONTAINER_NAME_PLACEHOLDER = "{containerFileName}";
+
+    private static final PathMatcher NO_MATCH = path -> false;
 
     private final FileSystem fileSystem;
+    private final Map<String, PathMatcher> globs = new ConcurrentHashMap<>();
 
     public FileMatcher() {
         this.fileSystem = FileSystems.getFileSystem(URI.create("file:///"));
@@ -52,17 +70,58 @@ public class FileMatcher {
         return filePath.equals(toMatch) || matchesContainerName(filePath, toMatch, containerFileName) || globMatches(filePath, toMatch);
     }
 
-    private boolean matchesContainerName(String fileName, String toMatch, String containerFileName) {
+    /**
+     * @param fileName a file path from a container signature.
+     * @param toMatch the name of a container entry.
+     * @param containerFileName the name of the container.
+     * @return whether the path names the entry using the name of the container.
+     */
+    static boolean matchesContainerName(String fileName, String toMatch, String containerFileName) {
         if (fileName != null && toMatch != null && containerFileName != null && fileName.startsWith(CONTAINER_NAME_PLACEHOLDER)) {
             return toMatch.equals(fileName.replace(CONTAINER_NAME_PLACEHOLDER, FilenameUtils.removeExtension(containerFileName)));
         }
         return false;
     }
 
-    private boolean globMatches(String pattern, String toMatch) {
-        PathMatcher pathMatcher = fileSystem.getPathMatcher("glob:" + pattern);
-        return pathMatcher.matches(fileSystem.getPath(toMatch));
+    /**
+     * @param pattern a glob.
+     * @param toMatch the name of a container entry.
+     * @return whether the glob matches the entry.  Names which are not valid paths match no glob.
+     */
+    boolean globMatches(String pattern, String toMatch) {
+        try {
+            return globs.computeIfAbsent(pattern, this::compile).matches(fileSystem.getPath(toMatch));
+        } catch (InvalidPathException e) {
+            return false;
+        }
     }
 
+    /**
+     * @param toMatch the name of a container entry.
+     * @return the name as the file system gives it as a path, which is what globs are matched against,
+     *         or null if it is not a valid path.
+     */
+    String normalise(String toMatch) {
+        try {
+            return fileSystem.getPath(toMatch).toString();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
 
+    /**
+     * @return whether a glob with no special characters only matches a path which gives the same string.
+     *         This holds for file systems whose separator is /, whose globs are case sensitive.
+     */
+    boolean literalGlobsMatchExactly() {
+        return "/".equals(fileSystem.getSeparator());
+    }
+
+    private PathMatcher compile(String pattern) {
+        try {
+            return fileSystem.getPathMatcher("glob:" + pattern);
+        } catch (PatternSyntaxException e) {
+            return NO_MATCH; // a path which is not a valid glob can still match literally.
+        }
+    }
 }
@@ -51,6 +51,7 @@ import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ByteseekWindowFileChannel;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
@@ -75,6 +76,10 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
             if (FileSystemIdentificationRequest.class.isAssignableFrom(request.getClass())) {
                 FileSystemIdentificationRequest req = FileSystemIdentificationRequest.class.cast(request);
                 reader = new POIFSFileSystem(req.getFile().toFile());
+            } else if (request.getWindowReader() != null) {
+                // Only the header, allocation tables, directory and the streams matched are read through the
+                // request's reader, rather than loading the whole compound document into memory.
+                reader = new POIFSFileSystem(new ByteseekWindowFileChannel(request.getWindowReader()), true);
             } else {
                 try {
                     in = request.getSourceInputStream();
@@ -103,8 +108,9 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
 
                 boolean needsBinaryMatch = false;
 
-                for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                    match.matchFileEntry(entryName, request.getFileName());
+                // Only the signatures with a file path matching the entry are interested in it.
+                final List<ContainerSignatureMatch> interested = matches.matchFileEntry(entryName, request.getFileName());
+                for (ContainerSignatureMatch match : interested) {
                     if (match.needsBinaryMatch(entryName)) {
                         needsBinaryMatch = true;
                     }
@@ -115,8 +121,8 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
                     ByteReader byteReader = null;
                     try {
                         docIn = parent.createDocumentInputStream(entry.getName());
-                        byteReader = newByteReader(docIn);
-                        for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
+                        byteReader = newByteReader(docIn, interested, entryName);
+                        for (ContainerSignatureMatch match : interested) {
                             match.matchBinaryContent(entryName, byteReader);
                         }
                     } finally {
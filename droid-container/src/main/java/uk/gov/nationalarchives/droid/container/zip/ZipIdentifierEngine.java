@@ -39,15 +39,16 @@ import org.slf4j.LoggerFactory;
 import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
-import uk.gov.nationalarchives.droid.container.FileMatcher;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ByteseekWindowWrapper;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ParsedZipFile;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipException;
 
 /**
@@ -56,17 +57,28 @@ import java.util.zip.ZipException;
  */
 public class ZipIdentifierEngine extends AbstractIdentifierEngine {
 
-    private static final FileMatcher FILE_MATCHER = new FileMatcher();
-
     private static final Logger LOG = LoggerFactory.getLogger(ZipIdentifierEngine.class);
 
     @Override
     public void process(IdentificationRequest<InputStream> request, ContainerSignatureMatchCollection matches) throws IOException {
 
-        try (ZipFile zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()), ZipFile.DEFAULT_CHARSET, true, false)) {
+        // A file request keeps the central directory, in case it is also expanded as an archive.
+        ParsedZipFile parsedZip = ParsedZipFile.forRequest(request);
+        try {
+            ZipFile zipFile = parsedZip.getZipFile();
+            Map<String, ZipEntry> matchedEntries = null;
             // For each entry:
             for (String entryName : matches.getAllFileEntries()) {
-                final ZipEntry entry = getEntry(entryName, zipFile, request.getFileName());
+                ZipEntry entry = zipFile.entry(entryName);
+                if (entry == null) {
+                    if (matchedEntries == null) {
+                        // Entries not named exactly are found for all the file paths in one pass over the zip.
+                        matchedEntries = matches.getFileIndex().findFirstEntries(matches.getAllFileEntries(),
+                                zipFile.entries().asIterator(), ZipEntry::getName, ZipEntry::isDirectory,
+                                request.getFileName());
+                    }
+                    entry = matchedEntries.get(entryName);
+                }
                 if (entry != null) {
                     // Get a stream for the entry and a byte reader over the stream:
                     InputStream stream = zipFile.getInputStream(entry.getName());
@@ -76,6 +88,8 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
         } catch (ZipException ze) {
             LOG.warn("Initial zip file parsing failed. Will try again with commons-compress {}", ze.getMessage());
             processFallback(request, matches);
+        } finally {
+            parsedZip.release();
         }
     }
 
@@ -84,9 +98,18 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
                 .setIgnoreLocalFileHeader(true)
                 .setSeekableByteChannel(new ByteseekWindowWrapper(request.getWindowReader()))
                 .get()) {
+            Map<String, ZipArchiveEntry> matchedEntries = null;
             // For each entry:
             for (String entryName : matches.getAllFileEntries()) {
-                final ZipArchiveEntry entry = getFallbackEntry(entryName, zipFile, request.getFileName());
+                ZipArchiveEntry entry = zipFile.getEntry(entryName);
+                if (entry == null) {
+                    if (matchedEntries == null) {
+                        matchedEntries = matches.getFileIndex().findFirstEntries(matches.getAllFileEntries(),
+                                zipFile.getEntries().asIterator(), ZipArchiveEntry::getName,
+                                ZipArchiveEntry::isDirectory, request.getFileName());
+                    }
+                    entry = matchedEntries.get(entryName);
+                }
                 if (entry != null) {
                     // Get a stream for the entry and a byte reader over the stream:
                     InputStream stream = zipFile.getInputStream(entry);
@@ -97,10 +120,14 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
     }
 
     private void matchEntry(ContainerSignatureMatchCollection matches, String entryName, InputStream stream) throws IOException {
-        try (ByteReader reader = newByteReader(stream)) {
-            // For each signature to match:
-            List<ContainerSignatureMatch> matchList = matches.getContainerSignatureMatches();
-            for (ContainerSignatureMatch match : matchList) {
+        // The signatures with the entry as one of their files:
+        List<ContainerSignatureMatch> matchList = matches.getContainerSignatureMatches();
+        List<ContainerSignatureMatch> interested = new ArrayList<>();
+        for (int position : matches.getFileIndex().getSignaturePositions(entryName)) {
+            interested.add(matchList.get(position));
+        }
+        try (ByteReader reader = newByteReader(stream, interested, entryName)) {
+            for (ContainerSignatureMatch match : interested) {
                 match.matchBinaryContent(entryName, reader);
             }
         } finally {
@@ -109,35 +136,4 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
             }
         }
     }
-
-    private static ZipEntry getEntry(String entryName, ZipFile zipFile, String containerFileName) {
-        ZipEntry entry = zipFile.entry(entryName);
-        if (entry == null) {
-            for (Iterator<? extends ZipEntry> it = zipFile.entries().asIterator(); it.hasNext();) {
-                ZipEntry eachEntry = it.next();
-                if (!eachEntry.isDirectory()) {
-                    if (FILE_MATCHER.fileMatches(entryName, eachEntry.getName(), containerFileName)) {
-                        return eachEntry;
-                    }
-
-                }
-            }
-        }
-        return entry;
-    }
-
-    private static ZipArchiveEntry getFallbackEntry(String entryName, org.apache.commons.compress.archivers.zip.ZipFile zipFile, String containerFileName) {
-        ZipArchiveEntry entry = zipFile.getEntry(entryName);
-        if (entry == null) {
-            for (Iterator<? extends ZipArchiveEntry> it = zipFile.getEntries().asIterator(); it.hasNext();) {
-                ZipArchiveEntry eachEntry = it.next();
-                if (!eachEntry.isDirectory()) {
-                    if (FILE_MATCHER.fileMatches(entryName, eachEntry.getName(), containerFileName)) {
-                        return eachEntry;
-                    }
-                }
-            }
-        }
-        return entry;
-    }
 }
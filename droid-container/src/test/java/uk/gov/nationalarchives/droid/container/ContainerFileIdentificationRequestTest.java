@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
+
+public class ContainerFileIdentificationRequestTest {
+
+    private static final String XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <ContainerSignatureMapping>
+              <ContainerSignatures>
+                <ContainerSignature Id="1" ContainerType="ZIP">
+                  <Files>
+                    <File>
+                      <Path>bounded</Path>
+                      <BinarySignatures>
+                        <InternalSignatureCollection>
+                          <InternalSignature ID="1">
+                            <ByteSequence Reference="BOFoffset">
+                              <SubSequence Position="1" SubSeqMinOffset="0" SubSeqMaxOffset="10">
+                                <Sequence>'top'</Sequence>
+                              </SubSequence>
+                            </ByteSequence>
+                            <ByteSequence Reference="EOFoffset">
+                              <SubSequence Position="1" SubSeqMinOffset="0" SubSeqMaxOffset="20">
+                                <Sequence>'tail'</Sequence>
+                              </SubSequence>
+                            </ByteSequence>
+                          </InternalSignature>
+                        </InternalSignatureCollection>
+                      </BinarySignatures>
+                    </File>
+                    <File>
+                      <Path>unbounded</Path>
+                      <BinarySignatures>
+                        <InternalSignatureCollection>
+                          <InternalSignature ID="2">
+                            <ByteSequence Reference="Variable">
+                              <SubSequence Position="1">
+                                <Sequence>'anywhere'</Sequence>
+                              </SubSequence>
+                            </ByteSequence>
+                          </InternalSignature>
+                        </InternalSignatureCollection>
+                      </BinarySignatures>
+                    </File>
+                    <File>
+                      <Path>name-only</Path>
+                    </File>
+                  </Files>
+                </ContainerSignature>
+              </ContainerSignatures>
+            </ContainerSignatureMapping>
+            """;
+
+    @Test
+    public void testBinaryExtentOfContainerFiles() throws Exception {
+        Map<String, ContainerFile> files = parseFiles();
+
+        TopAndTailExtent extent = files.get("bounded").getBinaryExtent();
+        assertEquals(13, extent.getTopBytes());
+        assertEquals(24, extent.getTailBytes());
+        assertNull(files.get("unbounded").getBinaryExtent());
+        assertNull(files.get("name-only").getBinaryExtent());
+    }
+
+    @Test
+    public void testOpenOnlyReadsTopOfEntry() throws Exception {
+        byte[] entry = new byte[10000];
+        ByteArrayInputStream in = new ByteArrayInputStream(entry);
+
+        ContainerFileIdentificationRequest request = new ContainerFileIdentificationRequest(null);
+        request.setBinaryExtent(new TopAndTailExtent(100, 0));
+        request.open(in);
+
+        assertEquals(100, request.size());
+        assertEquals(entry.length - 100, in.available());
+        request.close();
+    }
+
+    @Test
+    public void testOpenReadsWholeEntryShorterThanTop() throws Exception {
+        ContainerFileIdentificationRequest request = new ContainerFileIdentificationRequest(null);
+        request.setBinaryExtent(new TopAndTailExtent(100, 0));
+        request.open(new ByteArrayInputStream(new byte[50]));
+
+        assertEquals(50, request.size());
+        request.close();
+    }
+
+    @Test
+    public void testSignaturesMatchTopAndTailOfEntry() throws Exception {
+        ContainerFile file = parseFiles().get("bounded");
+        byte[] entry = new byte[100000];
+        Arrays.fill(entry, (byte) 'x');
+        System.arraycopy("top".getBytes(StandardCharsets.US_ASCII), 0, entry, 5, 3);
+        System.arraycopy("tail".getBytes(StandardCharsets.US_ASCII), 0, entry, entry.length - 14, 4);
+
+        ContainerFileIdentificationRequest request = new ContainerFileIdentificationRequest(null);
+        request.setBinaryExtent(file.getBinaryExtent());
+        request.open(new ByteArrayInputStream(entry));
+
+        assertEquals(entry.length, request.size());
+        assertEquals('x', request.getByte(entry.length - 1));
+        IdentificationRequestByteReaderAdapter reader = new IdentificationRequestByteReaderAdapter(request);
+        assertFalse(file.getCompiledBinarySignatures().getMatchingSignatures(reader, -1).isEmpty());
+        reader.close();
+    }
+
+    private static Map<String, ContainerFile> parseFiles() throws Exception {
+        InputStream in = new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8));
+        return new ContainerSignatureSaxParser().parse(in).getContainerSignatures().get(0).getFiles();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ContainerFileIndexTest {
+
+    private static final List<String> LITERAL_PATHS = List.of("[Content_Types].xml", "word/document.xml",
+            "header/siardversion/2.1/", "mimetype", "a/b");
+
+    @Test
+    public void testMatchingPathsAreThoseTheFileMatcherMatches() {
+        final List<ContainerMatchUtils.ContainerTestData> testData =
+                ContainerMatchUtils.getContainerTestData().collect(Collectors.toList());
+        final List<String> paths = new ArrayList<>(LITERAL_PATHS);
+        final Set<String> entries = new HashSet<>(List.of("[Content_Types].xml", "C.xml", "word/document.xml",
+                "word//document.xml", "header/siardversion/2.1/", "header/siardversion/2.1", "mimetype", "a/b/",
+                "a//b", "word/styles.xml"));
+        for (ContainerMatchUtils.ContainerTestData data : testData) {
+            paths.add(data.pattern());
+            entries.addAll(data.willMatch());
+            entries.addAll(data.willNotMatch());
+        }
+        final ContainerFileIndex index = new ContainerFileIndex(List.of(signature(1, paths)));
+        final FileMatcher matcher = new FileMatcher();
+        for (String containerName : List.of("test.zip", "test2.7z", "test3", "test3.tar.zip")) {
+            for (String entry : entries) {
+                final Set<String> expected = paths.stream()
+                        .filter(path -> matcher.fileMatches(path, entry, containerName))
+                        .collect(Collectors.toSet());
+                assertEquals(entry + " in " + containerName, expected, index.getMatchingPaths(entry, containerName));
+            }
+        }
+    }
+
+    @Test
+    public void testSignaturePositionsOfEachPath() {
+        final ContainerFileIndex index = new ContainerFileIndex(List.of(
+                signature(1, List.of("mimetype", "content.xml")),
+                signature(2, List.of("mimetype")),
+                signature(3, List.of("*.xml"))));
+        assertArrayEquals(new int[] {0, 1}, index.getSignaturePositions("mimetype"));
+        assertArrayEquals(new int[] {2}, index.getSignaturePositions("*.xml"));
+        assertArrayEquals(new int[0], index.getSignaturePositions("unknown"));
+    }
+
+    @Test
+    public void testFirstEntriesAreFoundInOnePass() {
+        final ContainerFileIndex index = new ContainerFileIndex(List.of(
+                signature(1, List.of("*.xml", "word/document.xml", "missing"))));
+        final List<String> entries = List.of("word/", "word//document.xml", "styles.xml", "other.xml");
+        final Map<String, String> found = index.findFirstEntries(List.of("*.xml", "word/document.xml", "missing"),
+                entries.iterator(), name -> name, name -> name.endsWith("/"), "test.docx");
+        assertEquals("word//document.xml", found.get("word/document.xml"));
+        assertEquals("styles.xml", found.get("*.xml"));
+        assertFalse(found.containsKey("missing"));
+    }
+
+    @Test
+    public void testCollectionOnlyRoutesEntriesToInterestedSignatures() {
+        final ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(List.of(
+                signature(1, List.of("mimetype")),
+                signature(2, List.of("content.xml")),
+                signature(3, List.of("*.xml"))), List.of("mimetype", "content.xml", "*.xml"), -1);
+        final List<ContainerSignatureMatch> interested = matches.matchFileEntry("content.xml", "test.odt");
+        assertEquals(2, interested.size());
+        assertEquals(2, interested.get(0).getSignature().getId());
+        assertEquals(3, interested.get(1).getSignature().getId());
+        assertTrue(interested.get(0).isMatch());
+        assertTrue(interested.get(1).isMatch());
+        assertFalse(matches.getContainerSignatureMatches().get(0).isMatch());
+    }
+
+    private static ContainerSignature signature(int id, List<String> paths) {
+        final ContainerSignature signature = new ContainerSignature();
+        signature.setId(id);
+        final List<ContainerFile> files = new ArrayList<>();
+        for (String path : paths) {
+            final ContainerFile file = new ContainerFile();
+            file.setPath(path);
+            files.add(file);
+        }
+        signature.setFiles(files);
+        return signature;
+    }
+}
@@ -44,6 +44,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +52,8 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
 import uk.gov.nationalarchives.droid.container.ContainerFile;
 import uk.gov.nationalarchives.droid.container.ContainerSignature;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureFileReader;
@@ -117,6 +120,43 @@ public class Ole2RootFileTest {
         assertEquals("fmt/666", results.getResults().iterator().next().getPuid());
     }
 
+    @Test
+    public void testIdentifyWordDocumentThroughWindowReader() throws Exception {
+
+        ContainerSignature sig = new ContainerSignature();
+        sig.setId(100);
+        sig.setDescription("Word 97 OLE2");
+
+        ContainerFile containerFile = new ContainerFile();
+        containerFile.setPath("WordDocument");
+        sig.setFiles(Arrays.asList(new ContainerFile[] {containerFile}));
+
+        Map<Integer, List<FileFormatMapping>> formats = new HashMap<Integer, List<FileFormatMapping>>();
+        FileFormatMapping fileFormat = new FileFormatMapping();
+        fileFormat.setPuid("fmt/666");
+        List<FileFormatMapping> formatMapping = new ArrayList<FileFormatMapping>();
+        formatMapping.add(fileFormat);
+        formats.put(100, formatMapping);
+
+        ole2Identifier.addContainerSignature(sig);
+        ole2Identifier.setFormats(formats);
+
+        Path word97 = Paths.get(getClass().getClassLoader().getResource("word97.doc").toURI());
+        try (WindowReader windowReader = new FileReader(word97.toFile())) {
+            RequestMetaData metaData = mock(RequestMetaData.class);
+            IdentificationRequest request = mock(IdentificationRequest.class);
+            when(request.getWindowReader()).thenReturn(windowReader);
+            when(request.getRequestMetaData()).thenReturn(metaData);
+            RequestIdentifier requestIdentifier = mock(RequestIdentifier.class);
+            when(request.getIdentifier()).thenReturn(requestIdentifier);
+
+            IdentificationResultCollection results = ole2Identifier.submit(request);
+
+            assertEquals("fmt/666", results.getResults().iterator().next().getPuid());
+            verify(request, never()).getSourceInputStream();
+        }
+    }
+
     @Test
     public void testIdentifyWordDocumentFromRootFileAndCompObj() throws IOException {
         
@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -43,6 +44,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * @author rflitcroft
  * Executor service which which will block new tasks until a thread is available to service a task.
+ * <p>
+ * Each pool built by this factory is one stage of the identification pipeline, with its own
+ * sized pool of threads and a bounded work queue.  When a stage is saturated, a thread from
+ * outside the pipeline (e.g. the file walker) blocks until there is room in the queue, so a slow
+ * stage applies backpressure upstream.  A thread which already belongs to a pipeline stage runs the
+ * task itself instead, as blocking it could deadlock stages which submit work to each other.
+ * </p>
  */
 public class BlockingThreadPoolExecutorFactory {
 
@@ -53,10 +61,15 @@ public class BlockingThreadPoolExecutorFactory {
     //private static final int DEFAULT_MAX_CORE_POOL_SIZE = 4;
     
     private static final int DEFAULT_KEEP_ALIVE_TIME_MILLIS = 1000;
-    
+    private static final long SHUTDOWN_POLL_MILLIS = 100;
+    private static final String DEFAULT_THREAD_NAME_PREFIX = "core-thread-";
+    private static final String SHUT_DOWN = "Executor has been shut down.";
+
     private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
     private int maxPoolSize = DEFAULT_MAX_CORE_POOL_SIZE;
     private long keepAliveTimeMillis = DEFAULT_KEEP_ALIVE_TIME_MILLIS;
+    private int workQueueSize;
+    private String threadNamePrefix = DEFAULT_THREAD_NAME_PREFIX;
     
     /**
      * Returns a new instance of a BlockingThreadPoolExecutor.
@@ -64,10 +77,11 @@ public class BlockingThreadPoolExecutorFactory {
      */
     public ThreadPoolExecutor newInstance() {
         
-        final BlockingQueue<Runnable> workQueue = new SynchronousQueue<Runnable>();
-        RejectedExecutionHandler rejectedExecutionHandler = new CallerRunsUnlessPoolShutdownPolicy();
+        final BlockingQueue<Runnable> workQueue = workQueueSize > 0
+                ? new ArrayBlockingQueue<Runnable>(workQueueSize) : new SynchronousQueue<Runnable>();
+        RejectedExecutionHandler rejectedExecutionHandler = new BlockUnlessPipelineThreadPolicy();
         
-        ThreadFactory tf = new MyThreadFactory();
+        ThreadFactory tf = new MyThreadFactory(threadNamePrefix);
         
         ThreadPoolExecutor executor = new ThreadPoolExecutor(
                 corePoolSize, maxPoolSize, keepAliveTimeMillis, TimeUnit.MILLISECONDS, 
@@ -75,15 +89,44 @@ public class BlockingThreadPoolExecutorFactory {
         return executor;
     }
     
-    private static final class CallerRunsUnlessPoolShutdownPolicy implements RejectedExecutionHandler {
+    /**
+     * Returns true if the current thread belongs to a pool built by this factory.
+     * @return true if the current thread is a pipeline stage thread.
+     */
+    public static boolean isPipelineThread() {
+        return Thread.currentThread() instanceof PipelineThread;
+    }
+
+    private static final class BlockUnlessPipelineThreadPolicy implements RejectedExecutionHandler {
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
             
             if (executor.isShutdown()) {
-                throw new RejectedExecutionException("Executor has been shut down.");
+                throw new RejectedExecutionException(SHUT_DOWN);
             } 
             
-            r.run();
+            if (isPipelineThread()) {
+                r.run();
+                return;
+            }
+            
+            try {
+                // Poll so a caller blocked on a full queue does not wait forever if the pool shuts down.
+                while (!executor.getQueue().offer(r, SHUTDOWN_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException(SHUT_DOWN);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for space in the work queue.", e);
+            }
+        }
+    }
+    
+    private static final class PipelineThread extends Thread {
+        private PipelineThread(ThreadGroup group, Runnable r, String name) {
+            super(group, r, name, 0);
         }
     }
     
@@ -93,16 +136,15 @@ public class BlockingThreadPoolExecutorFactory {
         private final AtomicInteger threadNumber = new AtomicInteger(1);
         private final String namePrefix;
 
-        private MyThreadFactory() {
+        private MyThreadFactory(String namePrefix) {
             SecurityManager s = System.getSecurityManager();
             group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-            namePrefix = "core-thread-";
+            this.namePrefix = namePrefix;
         }
 
         public Thread newThread(Runnable r) {
-            Thread t = new Thread(group, r,
-                                  namePrefix + threadNumber.getAndIncrement(),
-                                  0);
+            Thread t = new PipelineThread(group, r,
+                                  namePrefix + threadNumber.getAndIncrement());
             
             if (t.isDaemon()) {
                 t.setDaemon(false);
@@ -136,8 +178,17 @@ public class BlockingThreadPoolExecutorFactory {
     }
 
     /**
-     * @param workQueueSize the workQueueSize to set
+     * @param workQueueSize the number of tasks which can wait for a thread, or zero to hand tasks
+     *                      directly to a waiting thread.
      */
     public void setWorkQueueSize(int workQueueSize) {
+        this.workQueueSize = workQueueSize;
+    }
+
+    /**
+     * @param threadNamePrefix the prefix given to the names of threads in the pool.
+     */
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
     }
 }
@@ -31,7 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces;
 
-
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 
 /**
  * DROID core API.
@@ -98,6 +98,13 @@ public interface DroidCore {
      * @param string a puid
      */
     void removeSignatureForPuid(String string);
+
+    /**
+     * Ensures binary signature hits for the PUID specified are always reported,
+     * even if a format with priority over it is also identified.
+     * @param puid a puid whose hits are needed, for example to trigger container identification.
+     */
+    void retainMatchesForPuid(String puid);
     
     /**
      * Sets the maximum number of bytes to scan from the
@@ -106,6 +113,13 @@ public interface DroidCore {
      * @param maxBytes The number of bytes to scan, or negative meaning unlimited.
      */
     void setMaxBytesToScan(long maxBytes);
+
+    /**
+     * Returns how many bytes at the top and tail of a file the binary signatures can match in,
+     * given the maximum number of bytes to scan.
+     * @return how many bytes at the top and tail of a file are worth buffering.
+     */
+    TopAndTailExtent getTopAndTailExtent();
     
     
     /**
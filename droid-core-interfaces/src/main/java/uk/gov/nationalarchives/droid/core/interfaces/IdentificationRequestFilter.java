@@ -44,6 +44,8 @@ import uk.gov.nationalarchives.droid.core.interfaces.filter.BasicFilter;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.FilterCriterion;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
 import static uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator.ANY_OF;
 
 
@@ -55,6 +57,8 @@ import static uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOper
  * file, and the filter would remove the result anyway, there is no point in running the actual identification
  * on it, so we can avoid submitting it for identification.
  * This should be set on any handler that processes identification requests - files, but also archive content handlers.
+ * Walkers which already know the name, size and last modified date of a resource can test those directly,
+ * so that resources which will be filtered out never become requests at all.
  */
 public class IdentificationRequestFilter {
 
@@ -85,11 +89,39 @@ public class IdentificationRequestFilter {
      */
     public boolean passesFilter(final IdentificationRequest<?> request) {
         boolean result = true; // default to passing filter unless something fails it:
-        if (filter != null) {
+        if (isFiltering()) {
+            final RequestMetaData metaData = request.getRequestMetaData();
+            result = passesFilter(metaData.getName(), metaData.getSize(), metaData.getTime(), request);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a resource with the given name, size and last modified time meets the filter criteria,
+     * before any request has been created for it.  File extensions are taken from the end of the name.
+     * @param name The name of the resource.
+     * @param size The size of the resource in bytes.
+     * @param lastModified The time the resource was last modified, in milliseconds since the epoch.
+     * @return true if the resource meets the filter criteria.
+     */
+    public boolean passesFilter(final String name, final long size, final long lastModified) {
+        return passesFilter(name, size, lastModified, null);
+    }
+
+    /**
+     * @return true if this filter has any criteria which could filter out a resource.
+     */
+    public boolean isFiltering() {
+        return filter != null && filter.getCriteria().size() > 0;
+    }
+
+    private boolean passesFilter(final String name, final Long size, final Long time,
+                                 final IdentificationRequest<?> request) {
+        boolean result = true; // default to passing filter unless something fails it:
+        if (isFiltering()) { // a filter with no criteria will not filter anything.
             List<FilterCriterion> criteria = filter.getCriteria();
-            if (criteria.size() > 0) { // a filter with no criteria will not filter anything.
-                result = filter.isNarrowed() ? isFilteredNarrowed(request, criteria) : isFilteredWidened(request, criteria);
-            }
+            result = filter.isNarrowed() ? isFilteredNarrowed(name, size, time, request, criteria)
+                    : isFilteredWidened(name, size, time, request, criteria);
         }
         return result;
     }
@@ -104,13 +136,17 @@ public class IdentificationRequestFilter {
 
     /**
      * Is filtered if the node meets ANY of the filter criteria.
-     * @param request The node to filter
+     * @param name The name of the node to filter.
+     * @param size The size of the node, or null if not known.
+     * @param time The last modified time of the node, or null if not known.
+     * @param request The node to filter, or null if there is no request for it yet.
      * @param criteria The list of filter criterions.
      * @return true if the node meets ANY of the filter criteria.
      */
-    private boolean isFilteredWidened(final IdentificationRequest<?> request, final List<FilterCriterion> criteria) {
+    private boolean isFilteredWidened(final String name, final Long size, final Long time,
+                                      final IdentificationRequest<?> request, final List<FilterCriterion> criteria) {
         for (FilterCriterion criterion : criteria) {
-            if (meetsCriterion(request, criterion)) {
+            if (meetsCriterion(name, size, time, request, criterion)) {
                 return true;
             }
         }
@@ -119,38 +155,44 @@ public class IdentificationRequestFilter {
 
     /**
      * Is filtered if the node meets ALL of the filter criteria.
-     * @param request The node to filter.
+     * @param name The name of the node to filter.
+     * @param size The size of the node, or null if not known.
+     * @param time The last modified time of the node, or null if not known.
+     * @param request The node to filter, or null if there is no request for it yet.
      * @param criteria The list of filter criteria.
      * @return true if the node meets ALL of the filter criteria.
      */
-    private boolean isFilteredNarrowed(final IdentificationRequest<?> request, final List<FilterCriterion> criteria) {
+    private boolean isFilteredNarrowed(final String name, final Long size, final Long time,
+                                       final IdentificationRequest<?> request, final List<FilterCriterion> criteria) {
         for (FilterCriterion criterion : criteria) {
-            if (!meetsCriterion(request, criterion)) {
+            if (!meetsCriterion(name, size, time, request, criterion)) {
                 return false;
             }
         }
         return true;
     }
 
-    private boolean meetsCriterion(final IdentificationRequest<?> request, final FilterCriterion criterion) {
+    private boolean meetsCriterion(final String name, final Long size, final Long time,
+                                   final IdentificationRequest<?> request, final FilterCriterion criterion) {
         boolean result;
         CriterionOperator operator = criterion.getOperator();
         Object criterionValue = criterion.getValue();
         switch (criterion.getField()) {
             case FILE_NAME: {
-                result = compareCaseInsensitiveStrings(request.getRequestMetaData().getName(), operator, criterionValue);
+                result = compareCaseInsensitiveStrings(name, operator, criterionValue);
                 break;
             }
             case FILE_SIZE: {
-                result = compareLongs(request.getRequestMetaData().getSize(), operator, criterionValue);
+                result = compareLongs(size, operator, criterionValue);
                 break;
             }
             case LAST_MODIFIED_DATE: {
-                result = compareDates(request.getRequestMetaData().getTime(), operator, criterionValue);
+                result = compareDates(time, operator, criterionValue);
                 break;
             }
             case FILE_EXTENSION: {
-                result = compareCaseInsensitiveStrings(request.getExtension(), operator, criterionValue);
+                result = request == null ? compareNameExtension(name, operator, criterionValue)
+                        : compareCaseInsensitiveStrings(request.getExtension(), operator, criterionValue);
                 break;
             }
             default : {
@@ -239,6 +281,38 @@ public class IdentificationRequestFilter {
         return result;
     }
 
+    // Compares the extension at the end of a name, as a request for a resource of that name would give it.
+    // Lists of extensions are compared in place, without creating a string for the extension.
+    private boolean compareNameExtension(String name, CriterionOperator operator, Object criterionValue) {
+        boolean result;
+        if (name != null && (operator == ANY_OF || operator == CriterionOperator.NONE_OF)) {
+            final boolean matched = endsWithAnyExtension(name, (Object[]) criterionValue);
+            result = operator == ANY_OF ? matched : !matched;
+        } else {
+            result = compareCaseInsensitiveStrings(name == null ? null : ResourceUtils.getExtension(name),
+                    operator, criterionValue);
+        }
+        return result;
+    }
+
+    // Follows ResourceUtils.getExtension(): any query string is ignored, and a leading dot is not an extension.
+    private boolean endsWithAnyExtension(String name, Object[] extensions) {
+        final int queryPos = name.indexOf('?');
+        final int end = queryPos > -1 ? queryPos : name.length();
+        final int nameStart = Math.max(name.lastIndexOf('/', end - 1), name.lastIndexOf('\\', end - 1)) + 1;
+        final int dotPos = name.lastIndexOf('.', end - 1);
+        final int extensionStart = dotPos > nameStart ? dotPos + 1 : end;
+        final int extensionLength = end - extensionStart;
+        for (Object value : extensions) {
+            final String extension = (String) value;
+            if (extension.length() == extensionLength
+                    && name.regionMatches(true, extensionStart, extension, 0, extensionLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //CHECKSTYLE:OFF - can't have more than 4 boolean expressions... weird rule, this is the clearest way to express.
     private boolean isOperatorInverted(CriterionOperator operator) {
         return (operator == CriterionOperator.NE
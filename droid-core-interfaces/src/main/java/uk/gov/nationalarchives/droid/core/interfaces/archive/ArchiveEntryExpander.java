@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+
+/**
+ * Expands the file entries of an archive on several threads at once, for archives whose entries can be
+ * read in any order, such as the entries listed in a zip central directory or an ISO image.
+ * <p>
+ * The archive is still walked on one thread, so directories are submitted in order and every file entry knows
+ * the resource id of its parent before it is expanded.  The file entries are then split into chunks, which the
+ * walking thread and up to threads - 1 other workers take in turn.  Each worker opens its own view of the
+ * archive once, and expands the entries of every chunk it takes through it, unless the archive has a view
+ * which all the workers can read at once.
+ * <p>
+ * The walking thread expands chunks itself rather than only waiting for the workers, so an archive nested in
+ * another archive being expanded cannot deadlock waiting on workers which are all busy.
+ */
+public class ArchiveEntryExpander implements Closeable {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64;
+    private static final String THREAD_NAME_PREFIX = "archive-entry-thread-";
+
+    private int threads;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private ThreadPoolExecutor executorService;
+
+    /**
+     * Opens a worker's own view of an archive.
+     *
+     * @param <S> The type of view of the archive.
+     */
+    @FunctionalInterface
+    public interface ArchiveOpener<S extends Closeable> {
+
+        /**
+         * @return A new view of the archive, which is closed by the worker which opened it.
+         * @throws IOException If the archive could not be opened.
+         */
+        S open() throws IOException;
+    }
+
+    /**
+     * Expands a single entry of an archive.
+     *
+     * @param <S> The type of view of the archive.
+     * @param <E> The type of archive entry.
+     */
+    @FunctionalInterface
+    public interface EntryExpansion<S, E> {
+
+        /**
+         * @param archive The worker's own view of the archive.
+         * @param entry The entry to expand.
+         * @throws IOException If the entry could not be expanded.
+         */
+        void expand(S archive, E entry) throws IOException;
+    }
+
+    /**
+     * Sets how many threads expand the entries of each archive, including the thread which walks it.
+     * Entries are expanded on the walking thread alone if this is one or less, which is the default.
+     *
+     * @param threads The number of threads to expand the entries of an archive with.
+     */
+    public void setThreads(int threads) {
+        close();
+        this.threads = threads;
+        if (threads > 1) {
+            BlockingThreadPoolExecutorFactory factory = new BlockingThreadPoolExecutorFactory();
+            factory.setCorePoolSize(threads - 1);
+            factory.setMaxPoolSize(threads - 1);
+            factory.setWorkQueueSize(threads);
+            factory.setThreadNamePrefix(THREAD_NAME_PREFIX);
+            executorService = factory.newInstance();
+            executorService.allowCoreThreadTimeOut(true); // idle workers must not keep the JVM running.
+        }
+    }
+
+    /**
+     * @param chunkSize The number of entries a worker takes at a time.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * @return Whether entries are expanded by more than one thread.
+     */
+    public boolean isParallel() {
+        return executorService != null;
+    }
+
+    /**
+     * Expands all the entries given, returning once they have all been expanded.
+     *
+     * @param entries The entries to expand.
+     * @param opener Opens a view of the archive for each worker which expands entries.
+     * @param expansion Expands each entry through the view of the archive of the worker which took it.
+     * @param <S> The type of view of the archive.
+     * @param <E> The type of archive entry.
+     * @throws IOException The first error raised opening the archive or expanding an entry.
+     */
+    public <S extends Closeable, E> void expand(List<E> entries, ArchiveOpener<S> opener,
+                                                EntryExpansion<S, E> expansion) throws IOException {
+        expandAll(new ChunkedExpansion<>(entries, chunkSize, opener, true, expansion));
+    }
+
+    /**
+     * Expands all the entries given through one view of the archive which every worker reads at once,
+     * returning once they have all been expanded.  The view is left open for the caller to close.
+     *
+     * @param entries The entries to expand.
+     * @param archive A view of the archive which can be read by several threads at once.
+     * @param expansion Expands each entry through the shared view of the archive.
+     * @param <S> The type of view of the archive.
+     * @param <E> The type of archive entry.
+     * @throws IOException The first error raised expanding an entry.
+     */
+    public <S extends Closeable, E> void expandShared(List<E> entries, S archive,
+                                                      EntryExpansion<S, E> expansion) throws IOException {
+        expandAll(new ChunkedExpansion<>(entries, chunkSize, () -> archive, false, expansion));
+    }
+
+    private void expandAll(ChunkedExpansion<?, ?> work) throws IOException {
+        final ThreadPoolExecutor executor = executorService;
+        if (executor != null) {
+            final int helpers = Math.min(threads - 1, work.numChunks - 1);
+            try {
+                for (int helper = 0; helper < helpers; helper++) {
+                    executor.execute(work::expandChunks);
+                }
+            } catch (RejectedExecutionException e) {
+                // Shutting down - the chunks not taken by a worker are expanded on this thread.
+            }
+        }
+        work.expandChunks();
+        work.awaitCompletion();
+    }
+
+    /**
+     * Stops the worker threads once they have finished expanding the archives they are working on.
+     */
+    @Override
+    public void close() {
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService = null;
+        }
+    }
+
+    /**
+     * The entries of one archive, which each worker takes a chunk at a time from.
+     */
+    private static final class ChunkedExpansion<S extends Closeable, E> {
+
+        private final List<E> entries;
+        private final int chunkSize;
+        private final int numChunks;
+        private final ArchiveOpener<S> opener;
+        private final boolean closesViews;
+        private final EntryExpansion<S, E> expansion;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicReference<Exception> error = new AtomicReference<>();
+        private final CountDownLatch chunksDone;
+
+        ChunkedExpansion(List<E> entries, int chunkSize, ArchiveOpener<S> opener, boolean closesViews,
+                         EntryExpansion<S, E> expansion) {
+            this.entries = entries;
+            this.chunkSize = chunkSize;
+            this.numChunks = (entries.size() + chunkSize - 1) / chunkSize;
+            this.opener = opener;
+            this.closesViews = closesViews;
+            this.expansion = expansion;
+            this.chunksDone = new CountDownLatch(numChunks);
+        }
+
+        // Takes chunks until there are none left, opening this worker's view of the archive for the first one.
+        // Chunks taken after an error are not expanded, but are still counted as done so nobody waits on them.
+        // They are only counted once the view is closed, so no view is left open, or its error lost, on completion.
+        void expandChunks() {
+            S archive = null;
+            int chunksTaken = 0;
+            try {
+                for (int chunk = nextChunk.getAndIncrement(); chunk < numChunks; chunk = nextChunk.getAndIncrement()) {
+                    chunksTaken++;
+                    if (error.get() == null) {
+                        archive = archive == null ? opener.open() : archive;
+                        expandChunk(archive, chunk);
+                    }
+                }
+            //CHECKSTYLE:OFF - any failure must be passed back to the thread walking the archive.
+            } catch (IOException | RuntimeException e) {
+            //CHECKSTYLE:ON
+                error.compareAndSet(null, e);
+                chunksTaken += takeRemainingChunks();
+            } finally {
+                closeArchive(archive);
+                for (int i = 0; i < chunksTaken; i++) {
+                    chunksDone.countDown();
+                }
+            }
+        }
+
+        // Takes the chunks nobody has taken yet without expanding them, once an error has stopped this worker.
+        private int takeRemainingChunks() {
+            int taken = 0;
+            while (nextChunk.getAndIncrement() < numChunks) {
+                taken++;
+            }
+            return taken;
+        }
+
+        private void expandChunk(S archive, int chunk) throws IOException {
+            final int end = Math.min(entries.size(), (chunk + 1) * chunkSize);
+            for (int index = chunk * chunkSize; index < end; index++) {
+                expansion.expand(archive, entries.get(index));
+            }
+        }
+
+        private void closeArchive(S archive) {
+            if (archive != null && closesViews) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    error.compareAndSet(null, e);
+                }
+            }
+        }
+
+        // Waits for the chunks taken by other workers, then throws the first error any worker raised.
+        void awaitCompletion() throws IOException {
+            try {
+                chunksDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for archive entries to be expanded", e);
+            }
+            final Exception firstError = error.get();
+            if (firstError instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (firstError != null) {
+                throw (RuntimeException) firstError;
+            }
+        }
+    }
+}
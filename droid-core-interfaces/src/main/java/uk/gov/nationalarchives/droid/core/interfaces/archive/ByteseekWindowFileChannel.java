@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import net.byteseek.io.reader.WindowReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read only FileChannel backed by a WindowReader, for libraries which can only read random access data
+ * through a FileChannel, such as the POIFS OLE2 library.
+ * <p>
+ * Like the {@link ByteseekWindowWrapper}, this lets us use an existing WindowReader, which will already have cached
+ * much of the underlying data, so the library only reads the parts of it which it needs, rather than loading
+ * all of it into memory.  Closing the channel does not close the backing WindowReader.
+ */
+public final class ByteseekWindowFileChannel extends FileChannel {
+
+    private static final String NOT_IMPLEMENTED = "This method from the FileChannel class is not implemented";
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+
+    private final WindowReader reader;
+    private long currentPosition;
+
+    /**
+     * Constructs a ByteseekWindowFileChannel backed by a WindowReader.
+     *
+     * @param reader The WindowReader backing this channel.
+     */
+    public ByteseekWindowFileChannel(final WindowReader reader) {
+        super();
+        this.reader = reader;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        final int bytesCopied = read(dst, currentPosition);
+        if (bytesCopied > 0) {
+            currentPosition += bytesCopied;
+        }
+        return bytesCopied;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long totalCopied = 0;
+        for (int index = offset; index < offset + length; index++) {
+            final int bytesCopied = read(dsts[index]);
+            if (bytesCopied < 0) {
+                return totalCopied == 0 ? -1 : totalCopied;
+            }
+            totalCopied += bytesCopied;
+        }
+        return totalCopied;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position >= size()) {
+            return -1;
+        }
+        return ArchiveFileUtils.copyToBuffer(reader, position, dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return currentPosition;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position cannot be negative: " + newPosition);
+        }
+        currentPosition = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return reader.length();
+    }
+
+    @Override
+    public FileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        ensureOpen(); // nothing is ever written, so there is nothing to force.
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+        long transferred = 0;
+        while (transferred < count) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), count - transferred));
+            final int bytesCopied = read(buffer, position + transferred);
+            if (bytesCopied <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            transferred += bytesCopied;
+        }
+        return transferred;
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        throw new IOException(NOT_IMPLEMENTED);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        throw new IOException(NOT_IMPLEMENTED);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        throw new IOException(NOT_IMPLEMENTED);
+    }
+
+    @Override
+    protected void implCloseChannel() {
+        // The backing WindowReader belongs to whoever supplied it.
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -31,12 +31,15 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
@@ -67,6 +70,7 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
     private AsynchDroid droid;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;
+    private ArchiveEntryExpander entryExpander;
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     /**
@@ -107,7 +111,11 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
 
             ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler,
                     fileSystem, request.getIdentifier());
+            if (entryExpander != null && entryExpander.isParallel()) {
+                walker.expandFilesWith(entryExpander, req.getFile().toFile());
+            }
             walker.walk(fileSystem);
+            walker.expandPendingFiles();
         } else {
             log.info("Identification request for ISO image ignored due to limited support.");
         }
@@ -131,6 +139,10 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+        private ArchiveEntryExpander entryExpander;
+        private File isoFile;
+        private List<PendingFile> pendingFiles;
+
 
         /**
          * Create instance.
@@ -154,6 +166,31 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
             directories.put("", rootParentId);  //Rood directory
         }
 
+        /**
+         * Defers the file entries found while walking, to be expanded in parallel by expandPendingFiles().
+         * Each worker expanding them reads the iso image through its own file system.
+         * @param expander Expands the file entries in parallel.
+         * @param imageFile The iso image file.
+         */
+        public void expandFilesWith(ArchiveEntryExpander expander, File imageFile) {
+            this.entryExpander = expander;
+            this.isoFile = imageFile;
+            this.pendingFiles = new ArrayList<>();
+        }
+
+        /**
+         * Expands any file entries deferred while walking.  Their directories have all been submitted by now,
+         * so each file already has the resource id of its parent.
+         * @throws IOException If the iso image could not be read.
+         */
+        public void expandPendingFiles() throws IOException {
+            if (pendingFiles != null) {
+                entryExpander.expand(pendingFiles, () -> new Iso9660FileSystem(isoFile, true),
+                    (isoFileSystem, pending) -> expandFile(isoFileSystem, pending.entry(), pending.correlationId()));
+                pendingFiles.clear();
+            }
+        }
+
 
         private void submitFile(Iso9660FileEntry entry) throws IOException, URISyntaxException {
             String path = FilenameUtils.getPath(entry.getPath());
@@ -165,8 +202,19 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
                 correlationId = submitDirectory(path, entry.getLastModifiedTime());
             }
 
+            if (pendingFiles != null) {
+                pendingFiles.add(new PendingFile(entry, correlationId));
+            } else {
+                expandFile(fileSystem, entry, correlationId);
+            }
+        }
+
+        private void expandFile(Iso9660FileSystem isoFileSystem, Iso9660FileEntry entry, ResourceId correlationId)
+            throws IOException {
+            String path = FilenameUtils.getPath(entry.getPath());
+            String name = entry.getName();
 
-            InputStream entryInputStream = fileSystem.getInputStream(entry);
+            InputStream entryInputStream = isoFileSystem.getInputStream(entry);
             try {
                 RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toIsoImageUri(isoFileUri, path + name));
                 identifier.setAncestorId(originatorNodeId);
@@ -241,6 +289,12 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
 
     }
 
+    /**
+     * A file entry waiting to be expanded, with the resource id of the directory it is in.
+     */
+    private record PendingFile(Iso9660FileEntry entry, ResourceId correlationId) {
+    }
+
     /**
      * Set factory.
      * @param factory f.
@@ -264,4 +318,12 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
     public void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }
+
+    /**
+     * Set the expander of file entries in parallel.
+     * @param entryExpander e.
+     */
+    public void setEntryExpander(ArchiveEntryExpander entryExpander) {
+        this.entryExpander = entryExpander;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import net.java.truevfs.comp.zip.ZipFile;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The zip file parsed from the bytes of a request, so its central directory is only parsed once.
+ * <p>
+ * A zip based file which is also a container is matched against container signatures, and then expanded
+ * as an archive if archives are being processed.  Parsing the central directory of a zip with many thousands
+ * of entries is expensive, so a file request keeps the entry table parsed for one step for the other.
+ * It is closed when the request is closed.
+ */
+public final class ParsedZipFile implements Closeable {
+
+    private final IdentificationRequest<?> request;
+    private final boolean keptByRequest;
+    private ZipFile zipFile;
+    private IOException error;
+
+    /**
+     * @param request The request whose bytes the zip file is parsed from.
+     * @param keptByRequest Whether the request keeps this and closes it, so {@link #release()} leaves it open.
+     */
+    public ParsedZipFile(final IdentificationRequest<?> request, final boolean keptByRequest) {
+        this.request = request;
+        this.keptByRequest = keptByRequest;
+    }
+
+    /**
+     * Returns the zip file, parsing its central directory the first time it is asked for.
+     * If the central directory could not be parsed, the same error is thrown again rather than parsing it again.
+     * <p>
+     * The zip file must not be closed by the caller; it is closed when this is closed or released.
+     *
+     * @return The zip file parsed from the bytes of the request.
+     * @throws IOException If the central directory of the zip file could not be parsed.
+     */
+    public synchronized ZipFile getZipFile() throws IOException {
+        if (zipFile == null && error == null) {
+            try {
+                zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()),
+                        ZipFile.DEFAULT_CHARSET, true, false);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return zipFile;
+    }
+
+    /**
+     * Closes the zip file, if it was parsed.
+     *
+     * @throws IOException If there was a problem closing the zip file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+            zipFile = null;
+        }
+    }
+
+    /**
+     * Closes the zip file once a step has finished with it, unless the request keeps it for another step.
+     *
+     * @throws IOException If there was a problem closing the zip file.
+     */
+    public void release() throws IOException {
+        if (!keptByRequest) {
+            close();
+        }
+    }
+
+    /**
+     * Returns the parsed zip file kept by a request, or a new one for a request which does not keep one.
+     * Either way, it should be released when the caller has finished with it.
+     *
+     * @param request The request to get the parsed zip file of.
+     * @return The parsed zip file for the request.
+     */
+    public static ParsedZipFile forRequest(final IdentificationRequest<?> request) {
+        return request instanceof FileSystemIdentificationRequest fileRequest
+                ? fileRequest.getParsedZipFile() : new ParsedZipFile(request, false);
+    }
+}
@@ -33,18 +33,24 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 import net.java.truevfs.comp.zip.ZipEntry;
 import net.java.truevfs.comp.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.function.IOSupplier;
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -59,6 +65,7 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
     private AsynchDroid droidCore;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;
+    private ArchiveEntryExpander entryExpander;
 
     /**
      * Empty bean constructor.
@@ -82,7 +89,16 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
 
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        ZipFile zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()), ZipFile.DEFAULT_CHARSET, true, false);
+        // Entries of zips on disk can be expanded in parallel, from one entry table all the workers read at once.
+        final Path archiveFile = getParallelArchiveFile(request);
+        if (archiveFile != null) {
+            handleOnDisk(request.getIdentifier(), archiveFile);
+            return;
+        }
+
+        // The central directory may already have been parsed to match container signatures.
+        ParsedZipFile parsedZip = ParsedZipFile.forRequest(request);
+        ZipFile zipFile = parsedZip.getZipFile();
         try {
             Iterable<ZipEntry> iterable = new Iterable<ZipEntry>() {
                 @Override
@@ -90,16 +106,36 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
                     return new ZipFileIterator(zipFile);
                 }
             };
-    
-            ZipArchiveWalker walker = new ZipArchiveWalker(request.getIdentifier(), zipFile);  
-            walker.walk(iterable);
+            new TrueVfsZipWalker(request.getIdentifier(), zipFile).walk(iterable);
         } finally {
-            if (zipFile != null) {
-                zipFile.close();
-            }
+            parsedZip.release();
+        }
+    }
+
+    /**
+     * Walks a zip on disk in the physical order of its entries, then expands its file entries in parallel.
+     * <p>
+     * The walk and the expansion both use one commons-compress entry table.  The local header of every entry
+     * is read when the table is, so opening an entry only reads its data with positional reads of the file,
+     * and the workers can all read entries from the table at once without a lock.
+     * @param identifier the identifier of the zip file.
+     * @param archiveFile the zip file on disk.
+     * @throws IOException if the zip file could not be read.
+     */
+    private void handleOnDisk(RequestIdentifier identifier, Path archiveFile) throws IOException {
+        try (org.apache.commons.compress.archivers.zip.ZipFile zipFile =
+                     org.apache.commons.compress.archivers.zip.ZipFile.builder().setPath(archiveFile).get()) {
+            OnDiskZipWalker walker = new OnDiskZipWalker(identifier);
+            walker.walk(Collections.list(zipFile.getEntriesInPhysicalOrder()));
+            walker.expandPendingEntries(zipFile);
         }
     }
 
+    private Path getParallelArchiveFile(IdentificationRequest request) {
+        return entryExpander != null && entryExpander.isParallel()
+                && request instanceof FileSystemIdentificationRequest fileRequest ? fileRequest.getFile() : null;
+    }
+
     /**
      * @param parentName
      * @param entry
@@ -111,13 +147,7 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
             ZipEntry entry, String entryName, ResourceId correlationId) {
         IdentificationResultImpl result = new IdentificationResultImpl();
         
-        long size = entry.getSize();
-        long time = entry.getTime();
-        
-        RequestMetaData metaData = new RequestMetaData(
-                size != -1 ? size : null, 
-                time != -1 ? time : null,
-                entryName);
+        RequestMetaData metaData = newMetaData(entry.getSize(), entry.getTime(), entryName);
         
         RequestIdentifier identifier = new RequestIdentifier(
                 ArchiveFileUtils.toZipUri(parentName, entry.getName()));
@@ -127,29 +157,28 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         return resultHandler.handleDirectory(result, correlationId, false);
     }
     
+    private static RequestMetaData newMetaData(long size, long time, String entryName) {
+        return new RequestMetaData(
+                size != -1 ? size : null, 
+                time != -1 ? time : null,
+                entryName);
+    }
+
     /**
      * Submits a request to droid.
-     * @param entry the zip entry to submit
+     * @param entryPath the full name of the zip entry to submit
+     * @param metaData the size, time and name of the Zip entry
      * @param parentName the name of the parent file
-     * @param entryName the name of the Zip entry
-     * @param file the TrueVfs zipFile
+     * @param entryStream opens a stream over the bytes of the entry
      * @param correlationId an ID to correlate this submission to
      * @param originatorNodeId the ID of the originator node
      * @throws IOException if there was an error accessing the input stream 'in'
      */
-    final void submit(ZipEntry entry, String entryName, URI parentName, 
-            ZipFile file, ResourceId correlationId, long originatorNodeId)
+    final void submit(String entryPath, RequestMetaData metaData, URI parentName, 
+            IOSupplier<InputStream> entryStream, ResourceId correlationId, long originatorNodeId)
         throws IOException {
         
-        long size = entry.getSize();
-        long time = entry.getTime();
-        
-        RequestMetaData metaData = new RequestMetaData(
-                size != -1 ? size : null, 
-                time != -1 ? time : null,
-                entryName);
-        
-        RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toZipUri(parentName, entry.getName()));
+        RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toZipUri(parentName, entryPath));
         identifier.setAncestorId(originatorNodeId);
         identifier.setParentResourceId(correlationId);
 
@@ -157,7 +186,7 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         if (droidCore.passesIdentificationFilter(request)) {
             InputStream in = null;
             try {
-                in = file.getInputStream(entry.getName());
+                in = entryStream.get();
                 request.open(in);
             } finally {
                 if (in != null) {
@@ -222,24 +251,51 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
     
     /**
      * Archive walker for zip files.
+     * @param <E> the type of zip entry walked
      * @author rflitcroft
      *
      */
-    private final class ZipArchiveWalker extends ArchiveFileWalker<ZipEntry> {
+    private abstract class ZipArchiveWalker<E> extends ArchiveFileWalker<E> {
         
-        private final ZipFile zipFile;
         private final ResourceId parentId;
         private final long originatorNodeId;
         private final URI parentName;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         
-        ZipArchiveWalker(RequestIdentifier identifier, ZipFile zipFile) {
-            this.zipFile = zipFile;
+        ZipArchiveWalker(RequestIdentifier identifier) {
             this.parentId = identifier.getResourceId();
             this.parentName = identifier.getUri();
             this.originatorNodeId = identifier.getAncestorId();
         }
 
+        /**
+         * @param entry a zip entry
+         * @return the full name of the entry
+         */
+        protected abstract String getEntryPath(E entry);
+
+        /**
+         * Submits a file entry, once the directories it is in have been submitted.
+         * @param entry the zip entry to submit
+         * @param entryName the name of the file, without the directories it is in
+         * @param correlationId the resource id of the directory the file is in
+         * @throws IOException if the entry could not be read
+         */
+        protected abstract void submitFile(E entry, String entryName, ResourceId correlationId) throws IOException;
+
+        /**
+         * Submits the bytes of a file entry to droid.
+         * @param entryPath the full name of the zip entry
+         * @param metaData the size, time and name of the zip entry
+         * @param entryStream opens a stream over the bytes of the entry
+         * @param correlationId the resource id of the directory the file is in
+         * @throws IOException if the entry could not be read
+         */
+        protected final void submitEntry(String entryPath, RequestMetaData metaData,
+                IOSupplier<InputStream> entryStream, ResourceId correlationId) throws IOException {
+            submit(entryPath, metaData, parentName, entryStream, correlationId, originatorNodeId);
+        }
+
         
         /**
          * Finds the longest path which has been seen before (if any),
@@ -279,8 +335,8 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         
         
         @Override
-        protected void handleEntry(ZipEntry entry) throws IOException {
-            String entryName = entry.getName();
+        protected void handleEntry(E entry) throws IOException {
+            String entryName = getEntryPath(entry);
             final String prefixPath = FilenameUtils.getPath(entryName);
             ResourceId correlationId = parentId; // by default, files are correlated to the parent.
 
@@ -297,16 +353,89 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
             entryName = (entryName == null) ? null : entryName.trim();
             entryName = FilenameUtils.getName(entryName);
             if (!entryName.isEmpty()) {
-                submit(entry, entryName, parentName, zipFile, correlationId, originatorNodeId);
+                submitFile(entry, entryName, correlationId);
             }
         }
     }
 
+    /**
+     * Walks a TrueVfs zip file, submitting each file entry as it is found.
+     */
+    private final class TrueVfsZipWalker extends ZipArchiveWalker<ZipEntry> {
+
+        private final ZipFile zipFile;
+
+        TrueVfsZipWalker(RequestIdentifier identifier, ZipFile zipFile) {
+            super(identifier);
+            this.zipFile = zipFile;
+        }
+
+        @Override
+        protected String getEntryPath(ZipEntry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        protected void submitFile(ZipEntry entry, String entryName, ResourceId correlationId) throws IOException {
+            submitEntry(entry.getName(), newMetaData(entry.getSize(), entry.getTime(), entryName),
+                () -> zipFile.getInputStream(entry.getName()), correlationId);
+        }
+    }
+
+    /**
+     * Walks the entry table of a zip on disk, deferring its file entries until the walk is over.
+     */
+    private final class OnDiskZipWalker extends ZipArchiveWalker<ZipArchiveEntry> {
+
+        private final List<PendingEntry> pendingEntries = new ArrayList<>();
+
+        OnDiskZipWalker(RequestIdentifier identifier) {
+            super(identifier);
+        }
+
+        @Override
+        protected String getEntryPath(ZipArchiveEntry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        protected void submitFile(ZipArchiveEntry entry, String entryName, ResourceId correlationId) {
+            pendingEntries.add(new PendingEntry(entry, entryName, correlationId));
+        }
+
+        /**
+         * Submits the file entries deferred while walking, on several threads which share the entry table.
+         * Their parent directories have all been submitted by now, so each entry already has its parent id.
+         * @param zipFile the entry table the entries were walked from.
+         * @throws IOException if the zip file could not be read.
+         */
+        void expandPendingEntries(org.apache.commons.compress.archivers.zip.ZipFile zipFile) throws IOException {
+            entryExpander.expandShared(pendingEntries, zipFile, (zip, pending) -> {
+                ZipArchiveEntry entry = pending.entry();
+                submitEntry(entry.getName(), newMetaData(entry.getSize(), entry.getTime(), pending.entryName()),
+                    () -> zip.getInputStream(entry), pending.correlationId());
+            });
+        }
+    }
+
+    /**
+     * A file entry waiting to be submitted, with the resource id of the directory it is in.
+     */
+    private record PendingEntry(ZipArchiveEntry entry, String entryName, ResourceId correlationId) {
+    }
+
     /**
      * @param resultHandler the resultHandler to set
      */
     public final void setResultHandler(ResultHandler resultHandler) {
         this.resultHandler = resultHandler;
     }    
+
+    /**
+     * @param entryExpander expands the file entries of zips on disk in parallel, if set.
+     */
+    public final void setEntryExpander(ArchiveEntryExpander entryExpander) {
+        this.entryExpander = entryExpander;
+    }
     
 }
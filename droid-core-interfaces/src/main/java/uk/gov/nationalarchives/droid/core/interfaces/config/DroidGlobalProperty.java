@@ -119,7 +119,7 @@ public enum DroidGlobalProperty {
     /** Generate hashes for each file analysed?. */
     GENERATE_HASH("profile.generateHash", PropertyType.BOOLEAN, true),
 
-    /** Default hash algorithm to use (currently only md5, sha1, sha256 available). */
+    /** Default hash algorithm to use: md5, sha1, sha256 or sha512, or several of them separated by commas. */
     HASH_ALGORITHM("profile.hashAlgorithm", PropertyType.TEXT, true),
 
     /** CSV Export one row per format. */
@@ -165,7 +165,76 @@ public enum DroidGlobalProperty {
     DATABASE_DURABILITY("database.durability", PropertyType.BOOLEAN, true),
 
     /** Whether to allow loading files from S3. */
-    FILES_FROM_S3("profile.s3", PropertyType.BOOLEAN, true);
+    FILES_FROM_S3("profile.s3", PropertyType.BOOLEAN, true),
+
+    /** A directory to write the cost of evaluating each binary signature to when a profile is closed.
+     * If not set, signature costs are not recorded.
+     */
+    SIGNATURE_COST_REPORT_DIR("profile.signatureCostReportDir", PropertyType.TEXT, false),
+
+    /** The engine used to match binary signature byte sequences: fragments (the default) or automaton.
+     * The automaton engine matches each byte sequence in a single pass over the bounded gaps in it.
+     */
+    SEQUENCE_MATCHING_ENGINE("profile.sequenceMatchingEngine", PropertyType.TEXT, false),
+
+    /** The number of threads which list directories ahead of a recursive walk.
+     * Zero or one lists directories on the walking thread.
+     */
+    DIRECTORY_LISTING_THREADS("profile.directoryListingThreads", PropertyType.INTEGER, false),
+
+    /** Whether the children of each directory are walked in the order of their inode numbers,
+     * to reduce seeking on spinning disks and tape-backed storage.
+     */
+    INODE_ORDERED_WALK("profile.inodeOrderedWalk", PropertyType.BOOLEAN, false),
+
+    /** The average time in milliseconds to read and identify a file above which fewer files are processed at once.
+     * Zero does not adapt to latency.
+     */
+    THROTTLE_TARGET_LATENCY("profile.throttleTargetLatencyMillis", PropertyType.INTEGER, false),
+
+    /** The number of files a second above which fewer files are processed at once.
+     * Zero does not adapt to the rate.
+     */
+    THROTTLE_MAX_REQUESTS_PER_SECOND("profile.throttleMaxRequestsPerSecond", PropertyType.INTEGER, false),
+
+    /** The most files which an adaptive throttle allows to be processed at once. */
+    THROTTLE_MAX_CONCURRENCY("profile.throttleMaxConcurrency", PropertyType.INTEGER, false),
+
+    /** The number of threads reading files on each file store (mount), each store having its own pool.
+     * Zero reads files on all stores with the shared identification pool.
+     */
+    FILE_STORE_THREADS("profile.fileStoreThreads", PropertyType.INTEGER, false),
+
+    /** The number of opened files which can wait to be read on each file store. */
+    FILE_STORE_READ_AHEAD("profile.fileStoreReadAhead", PropertyType.INTEGER, false),
+
+    /** The threads and read-ahead of particular file stores, by name or type, e.g. nfs=16:32,/dev/sdb1=1:2. */
+    FILE_STORE_LIMITS("profile.fileStoreLimits", PropertyType.TEXT, false),
+
+    /** The most files whose top and tail are read ahead of identification at once.
+     * Zero reads files only when they are opened and identified.
+     */
+    PREFETCHED_FILES("profile.prefetchedFiles", PropertyType.INTEGER, false),
+
+    /** The threads which expand the entries of each zip file or iso image on disk.
+     * One or less expands the entries on the thread which found the archive.
+     */
+    ARCHIVE_ENTRY_THREADS("profile.archiveEntryThreads", PropertyType.INTEGER, false),
+
+    /** The most files waiting to be identified before the file walker blocks. */
+    CORE_QUEUE_SIZE("profile.coreQueueSize", PropertyType.INTEGER, false),
+
+    /** The threads which handle the results of identification, e.g. writing them to the database. */
+    POST_PROCESS_THREADS("profile.postProcessThreads", PropertyType.INTEGER, false),
+
+    /** The most identified files waiting for their results to be handled before the stages before them block. */
+    POST_PROCESS_QUEUE_SIZE("profile.postProcessQueueSize", PropertyType.INTEGER, false),
+
+    /** The threads which expand archives. */
+    ARCHIVE_THREADS("profile.archiveThreads", PropertyType.INTEGER, false),
+
+    /** The most archives waiting to be expanded before the stages before them block. */
+    ARCHIVE_QUEUE_SIZE("profile.archiveQueueSize", PropertyType.INTEGER, false);
     
     private static Map<String, DroidGlobalProperty> allValues = new HashMap<String, DroidGlobalProperty>(); 
     
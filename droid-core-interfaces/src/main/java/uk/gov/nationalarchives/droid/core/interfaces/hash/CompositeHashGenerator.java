@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import net.byteseek.io.reader.windows.Window;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileChannelReader;
+
+/**
+ * Calculates the hashes of several algorithms at once, updating a message digest for each algorithm
+ * from a single read of the bytes.
+ * <p>
+ * The hashes are returned as a single string, in the order the algorithms were given,
+ * separated by {@link #HASH_SEPARATOR}.  Streams and files are read into a large direct buffer,
+ * which is reused by each thread.  Files which were not read whole to identify them are hashed from
+ * the top and tail windows already read, and only the bytes between them are read from the file.
+ */
+public final class CompositeHashGenerator implements HashGenerator {
+
+    /**
+     * The separator between the names of algorithms, and between the hashes they calculate.
+     */
+    public static final String HASH_SEPARATOR = ",";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final List<String> algorithms;
+    private final List<String> digestNames;
+
+    /**
+     * Constructs a generator for the algorithms given.
+     *
+     * @param algorithms the names of the algorithms, separated by commas: md5, sha1, sha256 or sha512.
+     * @throws IllegalArgumentException if no algorithm is given, or an algorithm is not recognised.
+     */
+    public CompositeHashGenerator(final String algorithms) {
+        final List<String> names = parseAlgorithms(algorithms);
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("No hash algorithm was given: " + algorithms);
+        }
+        final List<String> digests = new ArrayList<>(names.size());
+        for (String algorithm : names) {
+            digests.add(getDigestName(algorithm));
+        }
+        this.algorithms = Collections.unmodifiableList(names);
+        this.digestNames = digests;
+    }
+
+    /**
+     * Parses a list of algorithm names, so lists which differ only in case, spacing or repeated names are equal.
+     *
+     * @param algorithms the names of the algorithms, separated by commas, or null.
+     * @return the distinct names of the algorithms, trimmed and in lower case, in the order they were given.
+     */
+    public static List<String> parseAlgorithms(final String algorithms) {
+        final List<String> names = new ArrayList<>();
+        if (algorithms != null) {
+            for (String name : algorithms.split(HASH_SEPARATOR)) {
+                final String algorithm = name.trim().toLowerCase(Locale.ROOT);
+                if (!algorithm.isEmpty() && !names.contains(algorithm)) {
+                    names.add(algorithm);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the names of the algorithms, in the order their hashes are returned.
+     */
+    public List<String> getAlgorithms() {
+        return algorithms;
+    }
+
+    /**
+     * Pairs each of the hashes returned by this generator with the algorithm which calculated it.
+     *
+     * @param hash the hashes returned by this generator.
+     * @return the hash of each algorithm, by the name of the algorithm, in the order the algorithms were given.
+     */
+    public Map<String, String> getHashes(final String hash) {
+        final String[] hashes = hash.split(HASH_SEPARATOR);
+        final Map<String, String> byAlgorithm = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.size() && i < hashes.length; i++) {
+            byAlgorithm.put(algorithms.get(i), hashes[i]);
+        }
+        return byAlgorithm;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String hash(final InputStream in) throws IOException {
+        return hash(Channels.newChannel(in));
+    }
+
+    /**
+     * Calculates the hashes of a file, read with a file channel into a direct buffer.
+     *
+     * @param file the file to hash.
+     * @return the hashes of the file.
+     * @throws IOException if there was an error reading the file.
+     */
+    public String hash(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return hash(channel);
+        }
+    }
+
+    /**
+     * Calculates the hashes of an identification request.  Requests for files which were not read whole
+     * to identify them are hashed from the windows cached when they were identified, and the bytes between
+     * those are read in one sequential pass.  Any other request is hashed from the bytes it has already
+     * read, or from its source input stream.
+     *
+     * @param request the identification request
+     * @return the hashes of the request.
+     * @throws IOException if there was an error reading the request.
+     */
+    @Override
+    public String hash(final IdentificationRequest<?> request) throws IOException {
+        if (request.getWindowReader() instanceof FileChannelReader reader) {
+            return hash(reader);
+        }
+        return HashGenerator.super.hash(request);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IncrementalHash newHash() {
+        return new CompositeHash(newDigests());
+    }
+
+    private String hash(final ReadableByteChannel channel) throws IOException {
+        final MessageDigest[] digests = newDigests();
+        final ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            for (MessageDigest digest : digests) {
+                buffer.mark();
+                digest.update(buffer);
+                buffer.reset();
+            }
+            buffer.clear();
+        }
+        return toHash(digests);
+    }
+
+    private String hash(final FileChannelReader reader) throws IOException {
+        final MessageDigest[] digests = newDigests();
+        final long length = reader.length();
+        final long topEnd = updateFromCache(reader, digests, 0, length);
+        final long tailStart = getCachedTailStart(reader, topEnd, length);
+        final long readEnd = updateFromFile(reader, digests, topEnd, tailStart);
+        if (readEnd == tailStart) { // the file may have been truncated since it was identified.
+            updateFromCache(reader, digests, tailStart, length);
+        }
+        return toHash(digests);
+    }
+
+    // Updates the digests from the contiguous windows the reader has cached from a position, returning where they end.
+    private static long updateFromCache(final FileChannelReader reader, final MessageDigest[] digests,
+                                        final long from, final long to) throws IOException {
+        long position = from;
+        Window window = reader.getCachedWindow(position);
+        while (window != null && position < to) {
+            final int offset = (int) (position - window.getWindowPosition());
+            final int length = window.length() - offset;
+            for (MessageDigest digest : digests) {
+                digest.update(window.getArray(), offset, length);
+            }
+            position += length;
+            window = reader.getCachedWindow(position);
+        }
+        return position;
+    }
+
+    // Finds where the contiguous windows the reader has cached at the end of the file start, after a position.
+    private static long getCachedTailStart(final FileChannelReader reader, final long from, final long length)
+            throws IOException {
+        long start = length;
+        Window window = reader.getCachedWindow(start - 1);
+        while (window != null && window.getWindowPosition() > from) {
+            start = window.getWindowPosition();
+            window = reader.getCachedWindow(start - 1);
+        }
+        return Math.max(start, from);
+    }
+
+    // Updates the digests from the file between two positions, in one pass, returning where reading ended.
+    private static long updateFromFile(final FileChannelReader reader, final MessageDigest[] digests,
+                                       final long from, final long to) throws IOException {
+        final ByteBuffer buffer = BUFFERS.get();
+        long position = from;
+        int bytesRead = 0;
+        while (position < to && bytesRead >= 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            bytesRead = reader.read(position, buffer);
+            if (bytesRead > 0) {
+                buffer.flip();
+                for (MessageDigest digest : digests) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                position += bytesRead;
+            }
+        }
+        return position;
+    }
+
+    private MessageDigest[] newDigests() {
+        final MessageDigest[] digests = new MessageDigest[digestNames.size()];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = DigestUtils.getDigest(digestNames.get(i));
+        }
+        return digests;
+    }
+
+    private static String toHash(final MessageDigest[] digests) {
+        final StringBuilder hashes = new StringBuilder();
+        for (MessageDigest digest : digests) {
+            if (hashes.length() > 0) {
+                hashes.append(HASH_SEPARATOR);
+            }
+            hashes.append(Hex.encodeHexString(digest.digest()));
+        }
+        return hashes.toString();
+    }
+
+    private static String getDigestName(final String algorithm) {
+        switch (algorithm) {
+            case "md5":
+                return "MD5";
+            case "sha1":
+                return "SHA-1";
+            case "sha256":
+                return "SHA-256";
+            case "sha512":
+                return "SHA-512";
+            default:
+                throw new IllegalArgumentException("Unknown hash algorithm: " + algorithm);
+        }
+    }
+
+    /*
+     * Updates every digest with the same bytes.
+     */
+    private static final class CompositeHash implements IncrementalHash {
+        private final MessageDigest[] digests;
+
+        CompositeHash(final MessageDigest[] digests) {
+            this.digests = digests;
+        }
+
+        @Override
+        public void update(final byte[] bytes, final int offset, final int length) {
+            for (MessageDigest digest : digests) {
+                digest.update(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public String getHash() {
+            return toHash(digests);
+        }
+    }
+}
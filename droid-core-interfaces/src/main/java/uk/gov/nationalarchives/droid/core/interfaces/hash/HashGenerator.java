@@ -34,6 +34,10 @@ package uk.gov.nationalarchives.droid.core.interfaces.hash;
 import java.io.IOException;
 import java.io.InputStream;
 
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+
 /**
  * @author rflitcroft
  *
@@ -48,4 +52,51 @@ public interface HashGenerator {
      */
     String hash(InputStream in) throws IOException;
 
+    /**
+     * Starts a new hash, which is given the bytes to hash incrementally as they become available.
+     * @return a new incremental hash.
+     */
+    IncrementalHash newHash();
+
+    /**
+     * Calculates the hash of the bytes of a window reader, directly from its windows.
+     * <p>
+     * Windows the reader has already cached, for example when it was used to identify
+     * the resource, are not read again.  Any other windows are read in a single sequential pass.
+     *
+     * @param reader the window reader
+     * @return the hash.
+     * @throws IOException if there was an error reading a window.
+     */
+    default String hash(WindowReader reader) throws IOException {
+        final IncrementalHash hash = newHash();
+        long position = 0;
+        Window window = reader.getWindow(position);
+        while (window != null) {
+            final int length = window.length();
+            hash.update(window.getArray(), 0, length);
+            position += length;
+            window = reader.getWindow(position);
+        }
+        return hash.getHash();
+    }
+
+    /**
+     * Calculates the hash of an identification request, from the windows of its reader if it has one,
+     * or from its source input stream if not.
+     *
+     * @param request the identification request
+     * @return the hash.
+     * @throws IOException if there was an error reading the request.
+     */
+    default String hash(IdentificationRequest<?> request) throws IOException {
+        final WindowReader reader = request.getWindowReader();
+        if (reader != null) {
+            return hash(reader);
+        }
+        try (InputStream in = request.getSourceInputStream()) {
+            return hash(in);
+        }
+    }
+
 }
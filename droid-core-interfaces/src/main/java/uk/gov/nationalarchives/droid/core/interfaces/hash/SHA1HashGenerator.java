@@ -51,4 +51,12 @@ public class SHA1HashGenerator implements HashGenerator {
         return DigestUtils.sha1Hex(in);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IncrementalHash newHash() {
+        return new MessageDigestHash(DigestUtils.getSha1Digest());
+    }
+
 }
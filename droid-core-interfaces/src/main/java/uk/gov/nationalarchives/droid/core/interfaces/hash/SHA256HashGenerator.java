@@ -50,4 +50,13 @@ public class SHA256HashGenerator implements HashGenerator {
     public String hash(InputStream in) throws IOException {
         return DigestUtils.sha256Hex(in);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IncrementalHash newHash() {
+        return new MessageDigestHash(DigestUtils.getSha256Digest());
+    }
+
 }
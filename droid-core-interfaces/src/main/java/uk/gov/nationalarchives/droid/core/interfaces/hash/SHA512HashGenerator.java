@@ -46,4 +46,13 @@ public class SHA512HashGenerator implements HashGenerator {
     public String hash(InputStream in) throws IOException {
         return DigestUtils.sha512Hex(in);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IncrementalHash newHash() {
+        return new MessageDigestHash(DigestUtils.getSha512Digest());
+    }
+
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A WindowReader over a file whose length is already known, so the file is not asked for its length again.
+ *
+ * <p>It otherwise reads the file like a byteseek FileReader using soft windows, but with positional reads
+ * on a FileChannel, so no seek is needed before each window is read.  The reader must not be used
+ * by more than one thread.</p>
+ */
+public final class FileChannelReader extends AbstractReader implements SoftWindowRecovery {
+
+    private final Path file;
+    private final long length;
+    private final FileChannel channel;
+
+    /**
+     * Opens a file to read.
+     *
+     * @param file The file to read.
+     * @param length The length of the file.
+     * @param cache The cache of windows to use.
+     * @throws IOException If the file could not be opened.
+     */
+    public FileChannelReader(final Path file, final long length, final WindowCache cache) throws IOException {
+        super(cache);
+        this.file = file;
+        this.length = length;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        if (windowStart < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[windowSize];
+        final int bytesRead = read(windowStart, bytes);
+        return bytesRead > 0 ? new SoftWindow(bytes, windowStart, bytesRead, this) : null;
+    }
+
+    @Override
+    public byte[] reloadWindowBytes(final Window window) throws IOException {
+        final byte[] bytes = new byte[windowSize];
+        read(window.getWindowPosition(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the window containing a position only if the cache already holds it, without reading the file.
+     * @param position The position of a byte in the window.
+     * @return The cached window containing the position, or null if it is not cached.
+     * @throws IOException If the cache could not be read.
+     */
+    public Window getCachedWindow(final long position) throws IOException {
+        return position < 0 || position >= length ? null : cache.getWindow(position - position % windowSize);
+    }
+
+    /**
+     * Reads bytes from a position in the file into a buffer, bypassing the cache.
+     * @param position The position in the file to read from.
+     * @param buffer The buffer to read into.
+     * @return The number of bytes read, or -1 if the position is at or past the end of the file.
+     * @throws IOException If the file could not be read.
+     */
+    public int read(final long position, final ByteBuffer buffer) throws IOException {
+        return channel.read(buffer, position);
+    }
+
+    /**
+     * Reads the whole file in one read, bypassing the cache.
+     * @return The bytes of the file, which are fewer than its length if it has been truncated since.
+     * @throws IOException If the file could not be read.
+     */
+    byte[] readAll() throws IOException {
+        final byte[] bytes = new byte[(int) length];
+        final int bytesRead = read(0, bytes);
+        return bytesRead < bytes.length ? Arrays.copyOf(bytes, bytesRead) : bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            super.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[file:" + file + " length: " + length + ']';
+    }
+
+    private int read(final long position, final byte[] bytes) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            continue; // a positional read can return fewer bytes than asked for.
+        }
+        return buffer.position();
+    }
+}
@@ -33,8 +33,13 @@ package uk.gov.nationalarchives.droid.core.interfaces.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
+import net.byteseek.io.reader.ByteArrayReader;
 import net.byteseek.io.reader.ReaderInputStream;
 import net.byteseek.io.reader.WindowReader;
 import net.byteseek.io.reader.FileReader;
@@ -43,6 +48,7 @@ import net.byteseek.io.reader.cache.WindowCache;
 import org.apache.commons.lang3.StringUtils;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ParsedZipFile;
 
 /**
  * Encapsulated the binary data for a file system identification request.
@@ -51,8 +57,6 @@ import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
  */
 public class FileSystemIdentificationRequest implements IdentificationRequest<Path> {
 
-    private static final int TOP_TAIL_BUFFER_CAPACITY = 8 * 1024 * 1024; // buffer 8Mb on the top and tail of files.
-
     private String extension;
     private final String fileName;
     private final long size;
@@ -60,6 +64,10 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
     private final RequestIdentifier identifier;
     private RequestMetaData requestMetaData;
     private Path file;
+    private final TopAndTailExtent extent;
+    private boolean deferReads;
+    private long readNanos;
+    private final ParsedZipFile parsedZipFile = new ParsedZipFile(this, true);
 
     /**
      * Constructs a new identification request.
@@ -67,10 +75,23 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
      * @param identifier the request's identifier
      */
     public FileSystemIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier) {
+        this(metaData, identifier, TopAndTailExtent.DEFAULT);
+    }
+
+    /**
+     * Constructs a new identification request, buffering only the top and tail of the file
+     * the signatures can match in.
+     * @param metaData the metaData about the binary.
+     * @param identifier the request's identifier
+     * @param extent how many bytes to buffer at the top and tail of the file.
+     */
+    public FileSystemIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier,
+                                           final TopAndTailExtent extent) {
         this.identifier = identifier;
         requestMetaData = metaData;
         size = metaData.getSize();
         fileName = metaData.getName();
+        this.extent = extent;
     }
     
     /**
@@ -78,13 +99,97 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
      */
     @Override
     public final void open(final Path theFile) throws IOException {
+        // If the walker has already read the file attributes, don't read them again.
+        final boolean knownLength = requestMetaData.getAttributes() != null;
+        final long length = knownLength ? size : theFile.toFile().length();
+        if (deferReads && knownLength && length > 0) {
+            // Only open the file now, so files which can't be found or opened are still reported as such.
+            fileReader = newTopAndTailReader(theFile, length, true);
+        } else {
+            final long start = System.nanoTime();
+            fileReader = openAndRead(theFile, length, knownLength);
+            readNanos += System.nanoTime() - start;
+        }
+        this.file = theFile;
+    }
+
+    private WindowReader openAndRead(final Path theFile, final long length, final boolean knownLength)
+            throws IOException {
+        // Files no bigger than the top and tail are read whole, in a single read.
+        final byte[] contents = length > 0 && extent.covers(length) ? readFile(theFile, (int) length) : null;
+        if (contents != null && contents.length > 0) {
+            return new ByteArrayReader(contents);
+        }
+        final WindowReader reader = newTopAndTailReader(theFile, length, knownLength);
+        reader.getWindow(0); // force read of first block to generate any IO exceptions.
+        return reader;
+    }
+
+    private WindowReader newTopAndTailReader(final Path theFile, final long length, final boolean knownLength)
+            throws IOException {
         // Use a caching strategy that uses soft references, to allow the GC to reclaim
         // cached file bytes in low memory conditions.
-        final WindowCache cache = new TopAndTailFixedLengthCache(theFile.toFile().length(), TOP_TAIL_BUFFER_CAPACITY);
-        fileReader = new FileReader(theFile.toFile(), cache);
-        ((FileReader) fileReader).useSoftWindows(true);
-        this.file = theFile;
-        fileReader.getWindow(0); // force read of first block to generate any IO exceptions.
+        final WindowCache cache = new TopAndTailFixedLengthCache(length, extent.getTopBytes(), extent.getTailBytes());
+        if (knownLength) {
+            return new FileChannelReader(theFile, length, cache);
+        }
+        final FileReader reader = new FileReader(theFile.toFile(), cache);
+        reader.useSoftWindows(true);
+        return reader;
+    }
+
+    private static byte[] readFile(final Path theFile, final int length) throws IOException {
+        final byte[] contents = new byte[length];
+        final ByteBuffer buffer = ByteBuffer.wrap(contents);
+        try (FileChannel channel = FileChannel.open(theFile, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                continue; // a positional read can return fewer bytes than asked for.
+            }
+        }
+        // The file may have been truncated since its length was read.
+        return buffer.hasRemaining() ? Arrays.copyOf(contents, buffer.position()) : contents;
+    }
+
+    /**
+     * Reads the bytes the signatures will look at, if they have not already been read: the whole file if it is no
+     * bigger than the top and tail, or else its first and last windows.  Reading them ahead of identification
+     * lets another thread wait on the disk while the thread which will identify the file is matching others.
+     * It must not be called while the request is being identified.
+     * @throws IOException if the file could not be read.
+     */
+    public final void prefetch() throws IOException {
+        if (fileReader instanceof FileChannelReader) {
+            final long start = System.nanoTime();
+            final long length = fileReader.length();
+            if (extent.covers(length)) {
+                final byte[] contents = ((FileChannelReader) fileReader).readAll();
+                if (contents.length > 0) {
+                    fileReader.close();
+                    fileReader = new ByteArrayReader(contents);
+                }
+            } else {
+                fileReader.getWindow(0);
+                fileReader.getWindow(length - 1); // the window containing the last byte.
+            }
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return the time spent reading the file when it was opened or prefetched, in nanoseconds.
+     */
+    public final long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Sets whether opening the file only opens it, leaving its bytes to be read by {@link #prefetch()} or
+     * when it is identified.  Files of unknown length are always read when they are opened.
+     * It must be set before the file is opened.
+     * @param deferReads whether reading the file is left until after it is opened.
+     */
+    public final void setDeferReads(final boolean deferReads) {
+        this.deferReads = deferReads;
     }
 
     /**
@@ -126,7 +231,11 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
     @Override
     public final void close() throws IOException {
         file = null;
-        fileReader.close();
+        try {
+            parsedZipFile.close();
+        } finally {
+            fileReader.close();
+        }
     }
 
     //TODO:MP: can we return something backed by the file reader, which has already cached a lot of the file?
@@ -169,6 +278,15 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
         return fileReader;
     }
 
+    /**
+     * Returns the zip file parsed from the bytes of this request, which is kept until the request is closed,
+     * so a zip which is matched against container signatures and then expanded is only parsed once.
+     * @return the parsed zip file of this request.
+     */
+    public final ParsedZipFile getParsedZipFile() {
+        return parsedZipFile;
+    }
+
     /**
      * Return file associate with identification reques.
      * @return File
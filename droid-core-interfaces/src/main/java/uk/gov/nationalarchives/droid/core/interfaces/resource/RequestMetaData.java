@@ -31,6 +31,8 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.resource;
 
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
 
 /**
  * @author rflitcroft
@@ -41,7 +43,9 @@ public class RequestMetaData {
     private final Long size;
     private final Long time;
     private final String name;
+    private final BasicFileAttributes attributes;
     private String hash;
+    private Map<String, String> hashes;
 
     /**
      * @param size - the size in bytes of the request data
@@ -52,6 +56,18 @@ public class RequestMetaData {
         this.size = size;
         this.time = time;
         this.name = entryName;
+        this.attributes = null;
+    }
+
+    /**
+     * @param attributes - the attributes of a file, already read, from which the size and time are taken.
+     * @param entryName the name of the request data
+     */
+    public RequestMetaData(BasicFileAttributes attributes, String entryName) {
+        this.size = attributes.size();
+        this.time = attributes.lastModifiedTime().toMillis();
+        this.name = entryName;
+        this.attributes = attributes;
     }
 
     /**
@@ -75,6 +91,13 @@ public class RequestMetaData {
         return name;
     }
 
+    /**
+     * @return the attributes of the file the request data came from, or null if they were not read.
+     */
+    public final BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
     /**
      * @param hash the hash to set
      */
@@ -88,4 +111,18 @@ public class RequestMetaData {
     public final String getHash() {
         return hash;
     }
+
+    /**
+     * @param hashes the hash of each algorithm, by algorithm name, when several algorithms were used.
+     */
+    public final void setHashes(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * @return the hash of each algorithm, by algorithm name, or null if only one algorithm was used.
+     */
+    public final Map<String, String> getHashes() {
+        return hashes;
+    }
 }
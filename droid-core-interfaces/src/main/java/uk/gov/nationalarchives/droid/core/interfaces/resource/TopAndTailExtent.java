@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+/**
+ * How many bytes at the top and tail of a file are worth buffering when identifying it.
+ *
+ * <p>Binary signatures only look at the bytes near the start and end of most files.  A file which is no
+ * longer than the top and tail together can be read in a single read; larger files only need
+ * their top and tail buffered.  No more than {@link #MAX_BYTES} are buffered at either end.</p>
+ */
+public final class TopAndTailExtent {
+
+    /**
+     * The most bytes buffered at the top or tail of a file: 8Mb.
+     */
+    public static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Buffers the most bytes at the top and tail of a file.
+     */
+    public static final TopAndTailExtent DEFAULT = new TopAndTailExtent(MAX_BYTES, MAX_BYTES);
+
+    private final long topBytes;
+    private final long tailBytes;
+
+    /**
+     * @param topBytes The number of bytes to buffer at the top of a file.
+     * @param tailBytes The number of bytes to buffer at the tail of a file.
+     */
+    public TopAndTailExtent(final long topBytes, final long tailBytes) {
+        this.topBytes = Math.max(0, Math.min(topBytes, MAX_BYTES));
+        this.tailBytes = Math.max(0, Math.min(tailBytes, MAX_BYTES));
+    }
+
+    /**
+     * @return The number of bytes to buffer at the top of a file.
+     */
+    public long getTopBytes() {
+        return topBytes;
+    }
+
+    /**
+     * @return The number of bytes to buffer at the tail of a file.
+     */
+    public long getTailBytes() {
+        return tailBytes;
+    }
+
+    /**
+     * @param fileLength The length of a file.
+     * @return Whether the top and tail cover the whole of a file of that length.
+     */
+    public boolean covers(final long fileLength) {
+        return fileLength <= topBytes + tailBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TopAndTailExtent[top=" + topBytes + ", tail=" + tailBytes + "]";
+    }
+}
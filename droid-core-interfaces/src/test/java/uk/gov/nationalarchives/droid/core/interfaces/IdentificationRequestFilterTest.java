@@ -49,6 +49,7 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Date;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -777,6 +778,44 @@ public class IdentificationRequestFilterTest {
         assertTrue(filter.passesFilter(request));
     }
 
+    @Test
+    public void testNameExtensionsFilteredWithoutARequest() {
+        IdentificationRequestFilter filter = createExtensionFilter(CriterionOperator.ANY_OF, "bmp", "JPG");
+        assertTrue(filter.passesFilter("test.jpg", 1000L, 0L));
+        assertTrue(filter.passesFilter("test.BMP", 1000L, 0L));
+        assertTrue(filter.passesFilter("dir.pdf/test.bmp?query.pdf", 1000L, 0L));
+        assertFalse(filter.passesFilter("test.jpeg", 1000L, 0L));
+        assertFalse(filter.passesFilter("test.jpg.pdf", 1000L, 0L));
+        assertFalse(filter.passesFilter(".bmp", 1000L, 0L));
+        assertFalse(filter.passesFilter("dir.bmp/test", 1000L, 0L));
+
+        filter = createExtensionFilter(CriterionOperator.NONE_OF, "bmp", "jpg");
+        assertFalse(filter.passesFilter("test.Jpg", 1000L, 0L));
+        assertTrue(filter.passesFilter("test", 1000L, 0L));
+
+        filter = createExtensionFilter(CriterionOperator.STARTS_WITH, "jp");
+        assertTrue(filter.passesFilter("test.jpeg", 1000L, 0L));
+        assertFalse(filter.passesFilter("test.bmp", 1000L, 0L));
+    }
+
+    @Test
+    public void testNameFilteredTheSameAsARequest() {
+        FilterCriterion extBmp = new BasicFilterCriterion(CriterionFieldEnum.FILE_EXTENSION, CriterionOperator.EQ, "bmp");
+        FilterCriterion sizeCritGTE = new BasicFilterCriterion(CriterionFieldEnum.FILE_SIZE, CriterionOperator.GTE, 1000L);
+        FilterCriterion nameCrit = new BasicFilterCriterion(CriterionFieldEnum.FILE_NAME, CriterionOperator.STARTS_WITH, "TE");
+        IdentificationRequestFilter narrowed = createMultiFilter(true, extBmp, sizeCritGTE, nameCrit);
+        IdentificationRequestFilter widened = createMultiFilter(false, extBmp, sizeCritGTE, nameCrit);
+        String[] names = {"test.bmp", "test.jpg", "other.bmp", "other.jpg"};
+        long[] sizes = {999L, 1000L};
+        for (String name : names) {
+            for (long size : sizes) {
+                IdentificationRequest request = new TestIdentificationRequest(name, size, 0L);
+                assertEquals(narrowed.passesFilter(request), narrowed.passesFilter(name, size, 0L));
+                assertEquals(widened.passesFilter(request), widened.passesFilter(name, size, 0L));
+            }
+        }
+    }
+
     /*
      * Helper methods to construct requests with metadata and filters.
      */
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveEntryExpanderTest {
+
+    private final ArchiveEntryExpander expander = new ArchiveEntryExpander();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @AfterEach
+    public void tearDown() {
+        expander.close();
+    }
+
+    @Test
+    public void should_expand_every_entry_once_on_several_threads() throws IOException {
+        expander.setThreads(4);
+        expander.setChunkSize(3);
+        assertTrue(expander.isParallel());
+
+        List<Integer> entries = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        Map<Integer, String> expandedOn = new ConcurrentHashMap<>();
+        Map<String, Closeable> archivesOpenedOn = new ConcurrentHashMap<>();
+        expander.expand(entries, this::openArchive, (archive, entry) -> {
+            String thread = Thread.currentThread().getName();
+            assertSame(archive, archivesOpenedOn.computeIfAbsent(thread, name -> archive));
+            assertEquals(null, expandedOn.put(entry, thread));
+        });
+
+        assertEquals(Set.copyOf(entries), expandedOn.keySet());
+        assertEquals(archivesOpenedOn.size(), opened.get());
+        assertTrue(opened.get() <= 4);
+    }
+
+    @Test
+    public void should_expand_on_the_calling_thread_if_not_parallel() throws IOException {
+        assertFalse(expander.isParallel());
+        List<String> expandedOn = new ArrayList<>();
+        expander.expand(List.of(1, 2, 3), this::openArchive,
+                (archive, entry) -> expandedOn.add(Thread.currentThread().getName()));
+
+        assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName(),
+                Thread.currentThread().getName()), expandedOn);
+        assertEquals(1, opened.get());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void should_not_open_the_archive_if_there_are_no_entries() throws IOException {
+        expander.setThreads(2);
+        expander.expand(List.of(), this::openArchive, (archive, entry) -> { });
+        assertEquals(0, opened.get());
+    }
+
+    @Test
+    public void should_throw_the_error_raised_expanding_an_entry() throws IOException {
+        expander.setThreads(3);
+        expander.setChunkSize(1);
+        IOException error = new IOException("bad entry");
+        List<Integer> entries = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+        assertSame(error, assertThrows(IOException.class, () -> expander.expand(entries, this::openArchive,
+            (archive, entry) -> {
+                if (entry == 5) {
+                    throw error;
+                }
+            })));
+    }
+
+    @Test
+    public void should_expand_nested_archives_without_waiting_on_busy_workers() throws IOException {
+        expander.setThreads(2);
+        expander.setChunkSize(1);
+        AtomicInteger innerEntries = new AtomicInteger();
+        List<Integer> entries = IntStream.range(0, 8).boxed().collect(Collectors.toList());
+
+        expander.expand(entries, this::openArchive, (archive, entry) ->
+                expander.expand(entries, this::openArchive, (inner, innerEntry) -> innerEntries.incrementAndGet()));
+
+        assertEquals(64, innerEntries.get());
+    }
+
+    @Test
+    public void should_close_every_view_of_the_archive_before_returning() throws IOException {
+        expander.setThreads(4);
+        expander.setChunkSize(1);
+        List<Integer> entries = IntStream.range(0, 40).boxed().collect(Collectors.toList());
+
+        expander.expand(entries, () -> {
+            opened.incrementAndGet();
+            return () -> {
+                sleep(20);
+                closed.incrementAndGet();
+            };
+        }, (archive, entry) -> sleep(1));
+
+        assertEquals(opened.get(), closed.get());
+    }
+
+    @Test
+    public void should_throw_the_error_raised_closing_a_view_of_the_archive() {
+        expander.setThreads(3);
+        expander.setChunkSize(1);
+        IOException error = new IOException("bad close");
+        List<Integer> entries = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+        assertSame(error, assertThrows(IOException.class, () -> expander.expand(entries,
+            () -> () -> {
+                sleep(20);
+                throw error;
+            }, (archive, entry) -> { })));
+    }
+
+    @Test
+    public void should_expand_every_entry_through_a_shared_view_and_leave_it_open() throws IOException {
+        expander.setThreads(4);
+        expander.setChunkSize(3);
+        Closeable shared = openArchive();
+
+        List<Integer> entries = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        Map<Integer, String> expandedOn = new ConcurrentHashMap<>();
+        expander.expandShared(entries, shared, (archive, entry) -> {
+            assertSame(shared, archive);
+            assertEquals(null, expandedOn.put(entry, Thread.currentThread().getName()));
+        });
+
+        assertEquals(Set.copyOf(entries), expandedOn.keySet());
+        assertEquals(1, opened.get());
+        assertEquals(0, closed.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Closeable openArchive() {
+        opened.incrementAndGet();
+        return closed::incrementAndGet;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ByteseekWindowFileChannelTest {
+    private static final Path RESOURCE = Paths.get("./src/test/resources/saved.zip");
+    private WindowReader reader;
+    private ByteseekWindowFileChannel channel;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        reader = new FileReader(RESOURCE.toFile(), 127); // use a small window.
+        channel = new ByteseekWindowFileChannel(reader);
+    }
+
+    @Test
+    public void should_return_correct_length_from_the_underlying_reader() throws IOException {
+        assertEquals(reader.length(), channel.size());
+    }
+
+    @Test
+    public void should_read_bytes_at_a_position_without_moving_the_channel_position() throws IOException {
+        byte[] expected = Files.readAllBytes(RESOURCE);
+        ByteBuffer buffer = ByteBuffer.allocate(300);
+        assertEquals(300, channel.read(buffer, 200));
+        assertArrayEquals(Arrays.copyOfRange(expected, 200, 500), buffer.array());
+        assertEquals(0, channel.position());
+    }
+
+    @Test
+    public void should_read_from_the_channel_position() throws IOException {
+        byte[] expected = Files.readAllBytes(RESOURCE);
+        channel.position(expected.length - 10);
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        assertEquals(10, channel.read(buffer));
+        assertEquals(expected.length, channel.position());
+        assertEquals(-1, channel.read(buffer));
+    }
+
+    @Test
+    public void should_transfer_all_the_bytes_to_another_channel() throws IOException {
+        byte[] expected = Files.readAllBytes(RESOURCE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expected.length, channel.transferTo(0, channel.size(), Channels.newChannel(out)));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void should_not_allow_writing() {
+        assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(10)));
+        assertThrows(NonWritableChannelException.class, () -> channel.truncate(2));
+    }
+
+    @Test
+    public void should_not_close_the_underlying_reader() throws IOException {
+        channel.close();
+        assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(10)));
+        assertTrue(reader.readByte(0) >= 0);
+    }
+}
@@ -35,6 +35,7 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileEntry;
 import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileSystem;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.junit.MockitoJUnitRunner;
 import uk.gov.nationalarchives.droid.core.interfaces.*;
@@ -49,6 +50,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -228,6 +230,49 @@ public class ISOImageArchiveHandlerTest {
 
     }
 
+    @Test
+    public void testWithIsoFileExpandedInParallel() throws Exception {
+
+        IdentificationRequestFactory<InputStream> factory = new ISOEntryRequestFactory();
+
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(new ResourceId(2L, "2"));
+
+        ArchiveEntryExpander entryExpander = new ArchiveEntryExpander();
+        entryExpander.setThreads(3);
+        entryExpander.setChunkSize(1);
+
+        ISOImageArchiveHandler isoImageArchiveHandler = new ISOImageArchiveHandler();
+        isoImageArchiveHandler.setDroid(droid);
+        isoImageArchiveHandler.setFactory(factory);
+        isoImageArchiveHandler.setResultHandler(resultHandler);
+        isoImageArchiveHandler.setEntryExpander(entryExpander);
+
+        RequestMetaData requestMetaData = new RequestMetaData(393216L, 1L, "testiso.iso");
+        RequestIdentifier identifier = new RequestIdentifier(new URI("file://testiso.iso"));
+        identifier.setNodeId(1L);
+        identifier.setResourceId(new ResourceId(1L, "1"));
+
+        FileSystemIdentificationRequest req = new FileSystemIdentificationRequest(requestMetaData, identifier);
+        req.open(Paths.get("./src/test/resources/testiso.iso"));
+        try {
+            isoImageArchiveHandler.handle(req);
+        } finally {
+            entryExpander.close();
+        }
+
+        ArgumentCaptor<IdentificationRequest> submitted = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droid, times(6)).submit(submitted.capture());
+        for (IdentificationRequest request : submitted.getAllValues()) {
+            assertNotNull(request.getIdentifier().getParentResourceId());
+        }
+
+        verify(resultHandler, times(3)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
+    }
+
     @Test
     public void testIgnoreOtherIdentificationRequest() throws Exception {
 
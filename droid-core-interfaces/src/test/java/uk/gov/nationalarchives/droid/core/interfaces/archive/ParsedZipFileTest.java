@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import net.java.truevfs.comp.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParsedZipFileTest {
+
+    private static final Path SAVED_ZIP = Paths.get("./src/test/resources/saved.zip");
+
+    @Test
+    public void should_parse_the_zip_file_once_until_closed() throws IOException {
+        try (WindowReader reader = new FileReader(SAVED_ZIP.toFile())) {
+            IdentificationRequest<?> request = mock(IdentificationRequest.class);
+            when(request.getWindowReader()).thenReturn(reader);
+
+            ParsedZipFile parsedZip = new ParsedZipFile(request, false);
+            ZipFile zipFile = parsedZip.getZipFile();
+            assertNotNull(zipFile.entries().nextElement());
+            assertSame(zipFile, parsedZip.getZipFile());
+            verify(request, times(1)).getWindowReader();
+
+            parsedZip.close();
+            assertNotSame(zipFile, parsedZip.getZipFile());
+            parsedZip.close();
+        }
+    }
+
+    @Test
+    public void should_not_parse_a_zip_file_again_which_could_not_be_parsed() throws IOException {
+        IdentificationRequest<?> request = mock(IdentificationRequest.class);
+        when(request.getWindowReader()).thenReturn(new ByteArrayReader(new byte[100]));
+
+        ParsedZipFile parsedZip = new ParsedZipFile(request, false);
+        IOException error = assertThrows(IOException.class, parsedZip::getZipFile);
+        assertSame(error, assertThrows(IOException.class, parsedZip::getZipFile));
+        verify(request, times(1)).getWindowReader();
+        parsedZip.close();
+    }
+
+    @Test
+    public void should_keep_the_zip_file_of_a_file_request_until_the_request_is_closed() throws IOException {
+        RequestMetaData metaData = new RequestMetaData(Files.size(SAVED_ZIP), 0L, "saved.zip");
+        FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(
+                metaData, new RequestIdentifier(SAVED_ZIP.toUri()));
+        request.open(SAVED_ZIP);
+
+        ParsedZipFile parsedZip = ParsedZipFile.forRequest(request);
+        ZipFile zipFile = parsedZip.getZipFile();
+        parsedZip.release();
+        assertSame(parsedZip, ParsedZipFile.forRequest(request));
+        assertSame(zipFile, ParsedZipFile.forRequest(request).getZipFile());
+
+        request.close();
+        String entryName = zipFile.entries().nextElement().getName();
+        assertThrows(IOException.class, () -> zipFile.getInputStream(entryName));
+    }
+
+    @Test
+    public void should_release_the_zip_file_of_a_request_which_does_not_keep_one() throws IOException {
+        try (WindowReader reader = new FileReader(SAVED_ZIP.toFile())) {
+            IdentificationRequest<?> request = mock(IdentificationRequest.class);
+            when(request.getWindowReader()).thenReturn(reader);
+
+            ParsedZipFile parsedZip = ParsedZipFile.forRequest(request);
+            ZipFile zipFile = parsedZip.getZipFile();
+            parsedZip.release();
+            assertNotSame(parsedZip, ParsedZipFile.forRequest(request));
+            assertNotSame(zipFile, parsedZip.getZipFile());
+            parsedZip.release();
+        }
+    }
+}
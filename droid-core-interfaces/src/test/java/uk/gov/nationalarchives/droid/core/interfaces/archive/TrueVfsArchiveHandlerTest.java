@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TrueVfsArchiveHandlerTest {
+
+    private static final Path SAVED_ZIP = Paths.get("./src/test/resources/saved.zip");
+
+    @Test
+    public void should_submit_the_same_entries_whether_or_not_they_are_expanded_in_parallel() throws Exception {
+        Map<URI, Long> serial = expand(null);
+
+        ArchiveEntryExpander entryExpander = new ArchiveEntryExpander();
+        entryExpander.setThreads(3);
+        entryExpander.setChunkSize(1);
+        try {
+            assertEquals(serial, expand(entryExpander));
+        } finally {
+            entryExpander.close();
+        }
+        assertEquals(7, serial.size());
+        assertEquals(Long.valueOf(2038), serial.get(new URI("zip:file:/saved.zip!/db/subfolder/log4j.properties")));
+    }
+
+    // Returns the length of the bytes read for each entry submitted, by the URI of the entry.
+    private Map<URI, Long> expand(ArchiveEntryExpander entryExpander) throws IOException {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean()))
+                .thenReturn(new ResourceId(2L, "2"));
+
+        TrueVfsArchiveHandler handler = new TrueVfsArchiveHandler(droid, new ZipEntryRequestFactory(), resultHandler);
+        handler.setEntryExpander(entryExpander);
+
+        RequestIdentifier identifier = new RequestIdentifier(URI.create("file:/saved.zip"));
+        identifier.setNodeId(1L);
+        identifier.setAncestorId(1L);
+        identifier.setResourceId(new ResourceId(1L, "1"));
+        try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(
+                new RequestMetaData(Files.size(SAVED_ZIP), 1L, "saved.zip"), identifier)) {
+            request.open(SAVED_ZIP);
+            handler.handle(request);
+        }
+
+        ArgumentCaptor<IdentificationRequest> submitted = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droid, atLeastOnce()).submit(submitted.capture());
+        Map<URI, Long> lengths = new HashMap<>();
+        for (IdentificationRequest entryRequest : submitted.getAllValues()) {
+            lengths.put(entryRequest.getIdentifier().getUri(), entryRequest.getWindowReader().length());
+            entryRequest.close();
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompositeHashGeneratorTest {
+
+    // Bigger than the buffer, so it is read more than once.
+    private static final byte[] DATA = randomBytes(3 * 1024 * 1024 + 17);
+
+    @Test
+    public void testHashesAreInTheOrderOfTheAlgorithms() throws IOException {
+        final CompositeHashGenerator generator = new CompositeHashGenerator(" SHA256, md5 ,sha256");
+        assertEquals(Arrays.asList("sha256", "md5"), generator.getAlgorithms());
+        assertEquals(expectedHash(new SHA256HashGenerator(), new MD5HashGenerator()),
+                generator.hash(new ByteArrayInputStream(DATA)));
+    }
+
+    @Test
+    public void testEveryWayOfReadingGivesTheSameHashes() throws IOException {
+        final CompositeHashGenerator generator = new CompositeHashGenerator("md5,sha1,sha256,sha512");
+        final String expected = expectedHash(new MD5HashGenerator(), new SHA1HashGenerator(),
+                new SHA256HashGenerator(), new SHA512HashGenerator());
+        assertEquals(expected, generator.hash(new ByteArrayInputStream(DATA)));
+        try (WindowReader reader = new InputStreamReader(new ByteArrayInputStream(DATA))) {
+            assertEquals(expected, generator.hash(reader));
+        }
+        final Path file = Files.createTempFile("hash", ".bin");
+        try {
+            Files.write(file, DATA);
+            assertEquals(expected, generator.hash(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFileRequestsAreHashedWhetherOrNotTheyWereReadWhole() throws IOException {
+        final CompositeHashGenerator generator = new CompositeHashGenerator("md5,sha256");
+        final String expected = expectedHash(new MD5HashGenerator(), new SHA256HashGenerator());
+        final Path file = Files.createTempFile("hash", ".bin");
+        try {
+            Files.write(file, DATA);
+            final RequestMetaData metaData = new RequestMetaData((long) DATA.length, 0L, "hash.bin");
+            final RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+            try (FileSystemIdentificationRequest topAndTail = new FileSystemIdentificationRequest(metaData,
+                    identifier, new TopAndTailExtent(16, 16))) {
+                topAndTail.open(file);
+                assertEquals(expected, generator.hash(topAndTail));
+            }
+            try (FileSystemIdentificationRequest whole = new FileSystemIdentificationRequest(metaData,
+                    identifier, new TopAndTailExtent(DATA.length, 0))) {
+                whole.open(file);
+                assertTrue(whole.getWindowReader() instanceof ByteArrayReader);
+                assertEquals(expected, generator.hash(whole));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBytesReadToIdentifyAFileAreNotReadAgain() throws IOException {
+        final CompositeHashGenerator generator = new CompositeHashGenerator("md5,sha256");
+        final String expected = expectedHash(new MD5HashGenerator(), new SHA256HashGenerator());
+        final Path file = Files.createTempFile("hash", ".bin");
+        try {
+            Files.write(file, DATA);
+            final RequestMetaData metaData = new RequestMetaData(
+                    Files.readAttributes(file, BasicFileAttributes.class), "hash.bin");
+            try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(metaData,
+                    new RequestIdentifier(file.toUri()), new TopAndTailExtent(64 * 1024, 64 * 1024))) {
+                request.setDeferReads(true);
+                request.open(file);
+                request.prefetch(); // caches the first and last windows.
+
+                // If the cached bytes at the top and tail were read again, the changed bytes would be hashed.
+                overwrite(file, 0);
+                overwrite(file, DATA.length - 16);
+                assertEquals(expected, generator.hash(request));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSingleAlgorithmGivesTheSameHashAsItsGenerator() throws IOException {
+        assertEquals(new SHA1HashGenerator().hash(new ByteArrayInputStream(DATA)),
+                new CompositeHashGenerator("sha1").hash(new ByteArrayInputStream(DATA)));
+    }
+
+    @Test
+    public void testUnknownOrMissingAlgorithmsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CompositeHashGenerator("md5,crc32"));
+        assertThrows(IllegalArgumentException.class, () -> new CompositeHashGenerator(" , "));
+        assertThrows(IllegalArgumentException.class, () -> new CompositeHashGenerator(null));
+    }
+
+    @Test
+    public void testAlgorithmListsAreNormalised() {
+        assertEquals(List.of("md5", "sha256"), CompositeHashGenerator.parseAlgorithms(" MD5 ,sha256,, md5"));
+        assertEquals(List.of("sha256", "md5"), CompositeHashGenerator.parseAlgorithms("SHA256,md5"));
+        assertTrue(CompositeHashGenerator.parseAlgorithms(null).isEmpty());
+    }
+
+    @Test
+    public void testHashesAreSplitByAlgorithm() throws IOException {
+        final CompositeHashGenerator generator = new CompositeHashGenerator("md5,sha256");
+        final String md5 = new MD5HashGenerator().hash(new ByteArrayInputStream(DATA));
+        final String sha256 = new SHA256HashGenerator().hash(new ByteArrayInputStream(DATA));
+        assertEquals(Map.of("md5", md5, "sha256", sha256),
+                generator.getHashes(generator.hash(new ByteArrayInputStream(DATA))));
+    }
+
+    private static String expectedHash(HashGenerator... generators) throws IOException {
+        final StringBuilder hashes = new StringBuilder();
+        for (HashGenerator generator : generators) {
+            if (hashes.length() > 0) {
+                hashes.append(CompositeHashGenerator.HASH_SEPARATOR);
+            }
+            hashes.append(generator.hash(new ByteArrayInputStream(DATA)));
+        }
+        return hashes.toString();
+    }
+
+    private static void overwrite(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[16]), position);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
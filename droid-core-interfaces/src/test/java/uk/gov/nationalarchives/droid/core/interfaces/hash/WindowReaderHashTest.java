@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WindowReaderHashTest {
+
+    private static final HashGenerator[] GENERATORS = {
+            new MD5HashGenerator(), new SHA1HashGenerator(), new SHA256HashGenerator(), new SHA512HashGenerator()};
+
+    @Test
+    public void testHashOfSingleWindowIsHashOfStream() throws IOException {
+        final byte[] data = randomBytes(1000);
+        for (HashGenerator generator : GENERATORS) {
+            assertEquals(generator.hash(new ByteArrayInputStream(data)), generator.hash(new ByteArrayReader(data)));
+        }
+    }
+
+    @Test
+    public void testHashOfManyWindowsIsHashOfStream() throws IOException {
+        final byte[] data = randomBytes(100000);
+        for (HashGenerator generator : GENERATORS) {
+            try (WindowReader reader = new InputStreamReader(new ByteArrayInputStream(data), 4096)) {
+                reader.getWindow(65536); // windows already read are hashed from the cache.
+                assertEquals(generator.hash(new ByteArrayInputStream(data)), generator.hash(reader));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalHashIsHashOfStream() throws IOException {
+        final byte[] data = randomBytes(5000);
+        for (HashGenerator generator : GENERATORS) {
+            final IncrementalHash hash = generator.newHash();
+            hash.update(data, 0, 1234);
+            hash.update(data, 1234, data.length - 1234);
+            assertEquals(generator.hash(new ByteArrayInputStream(data)), hash.getHash());
+        }
+    }
+
+    @Test
+    public void testHashOfRequestIsHashOfFile() throws IOException {
+        final byte[] data = randomBytes(50000);
+        final Path file = Files.createTempFile("hash", ".bin");
+        try {
+            Files.write(file, data);
+            final RequestMetaData metaData = new RequestMetaData((long) data.length, 0L, "hash.bin");
+            try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(
+                    metaData, new RequestIdentifier(file.toUri()), new TopAndTailExtent(4096, 4096))) {
+                request.open(file);
+                for (HashGenerator generator : GENERATORS) {
+                    assertEquals(generator.hash(new ByteArrayInputStream(data)), generator.hash(request));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
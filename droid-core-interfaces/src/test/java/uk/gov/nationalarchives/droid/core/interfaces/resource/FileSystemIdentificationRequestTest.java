@@ -36,6 +36,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,6 +45,8 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.FileReader;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 
 public class FileSystemIdentificationRequestTest {
@@ -168,5 +171,93 @@ public class FileSystemIdentificationRequestTest {
         assertEquals(Files.size(file), fileRequest.size());
         
     }
+
+    @Test
+    public void testSmallFileIsReadInOneWindow() throws IOException {
+        assertTrue(fileRequest.getWindowReader() instanceof ByteArrayReader);
+        assertEquals(Files.size(file), fileRequest.getWindowReader().getWindow(0).length());
+    }
+
+    @Test
+    public void testFileBiggerThanTopAndTailIsReadInWindows() throws IOException {
+        final TopAndTailExtent extent = new TopAndTailExtent(16, 16);
+        try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(metaData, identifier, extent)) {
+            request.open(file);
+            assertTrue(request.getWindowReader() instanceof FileReader);
+            final byte[] expected = fileData.getBytes(UTF_8);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], request.getByte(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFileWithAttributesIsReadWithoutAskingItsLengthAgain() throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final RequestMetaData attributeMetaData = new RequestMetaData(attributes, "testXmlFile.xml");
+        assertEquals(Files.size(file), attributeMetaData.getSize().longValue());
+        assertSame(attributes, attributeMetaData.getAttributes());
+
+        final TopAndTailExtent extent = new TopAndTailExtent(16, 16);
+        try (FileSystemIdentificationRequest request =
+                     new FileSystemIdentificationRequest(attributeMetaData, identifier, extent)) {
+            request.open(file);
+            assertTrue(request.getWindowReader() instanceof FileChannelReader);
+            assertEquals(attributes.size(), request.getWindowReader().length());
+            final byte[] expected = fileData.getBytes(UTF_8);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], request.getByte(i));
+            }
+        }
+    }
+
+    @Test
+    public void testDeferredSmallFileIsPrefetchedWhole() throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        try (FileSystemIdentificationRequest request =
+                     new FileSystemIdentificationRequest(new RequestMetaData(attributes, "testXmlFile.xml"), identifier)) {
+            request.setDeferReads(true);
+            request.open(file);
+            assertTrue(request.getWindowReader() instanceof FileChannelReader);
+            request.prefetch();
+            assertTrue(request.getWindowReader() instanceof ByteArrayReader);
+            assertEquals(fileData, new String(request.getWindowReader().getWindow(0).getArray(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testDeferredBigFileHasItsTopAndTailPrefetched() throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final TopAndTailExtent extent = new TopAndTailExtent(16, 16);
+        try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(
+                new RequestMetaData(attributes, "testXmlFile.xml"), identifier, extent)) {
+            request.setDeferReads(true);
+            request.open(file);
+            request.prefetch();
+            assertTrue(request.getWindowReader() instanceof FileChannelReader);
+            final byte[] expected = fileData.getBytes(UTF_8);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], request.getByte(i));
+            }
+        }
+    }
+
+    @Test
+    public void testDeferredOpenStillFailsForMissingFile() throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(new RequestMetaData(attributes, "missing.xml"), identifier);
+        request.setDeferReads(true);
+        assertThrows(IOException.class, () -> request.open(file.resolveSibling("missing.xml")));
+    }
+
+    @Test
+    public void testTopAndTailExtentIsLimited() {
+        final TopAndTailExtent extent = new TopAndTailExtent(-1, Long.MAX_VALUE);
+        assertEquals(0, extent.getTopBytes());
+        assertEquals(TopAndTailExtent.MAX_BYTES, extent.getTailBytes());
+        assertTrue(extent.covers(TopAndTailExtent.MAX_BYTES));
+        assertFalse(extent.covers(TopAndTailExtent.MAX_BYTES + 1));
+    }
     
 }
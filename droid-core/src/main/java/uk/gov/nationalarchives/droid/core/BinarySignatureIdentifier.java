@@ -31,12 +31,19 @@
  */
 package uk.gov.nationalarchives.droid.core;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
@@ -44,11 +51,15 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
-import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 import uk.gov.nationalarchives.droid.core.signature.FileFormat;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
-import uk.gov.nationalarchives.droid.core.signature.FileFormatHit;
 import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FormatPriorities;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+import uk.gov.nationalarchives.droid.core.signature.droid6.MatchContext;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SequenceMatchingEngine;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SignatureProfiler;
 
 /**
  * Implementation of DroidCore which uses the droid binary signatures to identify files. 
@@ -61,6 +72,21 @@ public class BinarySignatureIdentifier implements DroidCore {
     private FFSignatureFile sigFile;
     private SignatureFileParser sigFileParser = new SignatureFileParser();
     private URI signatureFile;
+    private Path signatureSnapshotDir;
+    private Path signatureCostReport;
+    private boolean skipLowerPriorityMatches;
+    private SequenceMatchingEngine sequenceMatchingEngine = SequenceMatchingEngine.FRAGMENTS;
+
+    /*
+     * A binary signature result for each format, shared by every request which matches it.
+     * Binary results only describe the format, so they are never modified once created.
+     */
+    private Map<FileFormat, IdentificationResult> formatResults = new IdentityHashMap<>();
+
+    /*
+     * Working storage for matching signatures, reused for each request a thread identifies.
+     */
+    private final ThreadLocal<IdentificationContext> contexts = ThreadLocal.withInitial(IdentificationContext::new);
     
     /**
      * Default constructor.
@@ -73,8 +99,45 @@ public class BinarySignatureIdentifier implements DroidCore {
      * @throws SignatureParseException When a signature could not be parsed
      */
     public void init() throws SignatureParseException {
-        sigFile = sigFileParser.parseSigFile(Paths.get(signatureFile));
-        sigFile.prepareForUse();
+        if (signatureSnapshotDir == null) {
+            sigFile = sigFileParser.parseSigFile(Paths.get(signatureFile));
+            sigFile.prepareForUse();
+        } else {
+            sigFile = new SignatureFileSnapshot(signatureSnapshotDir, sigFileParser).load(Paths.get(signatureFile));
+        }
+        if (signatureCostReport != null) {
+            sigFile.setSignatureProfiler(new SignatureProfiler());
+        }
+        sigFile.setSkipLowerPriorityMatches(skipLowerPriorityMatches);
+        if (sequenceMatchingEngine != SequenceMatchingEngine.FRAGMENTS) {
+            sigFile.setSequenceMatchingEngine(sequenceMatchingEngine);
+        }
+        formatResults = createFormatResults(sigFile.getFileFormatCollection());
+    }
+
+    /**
+     * Writes out the cost of evaluating each signature, if a signature cost report was set,
+     * and stops recording signature costs.
+     */
+    public void close() {
+        final SignatureProfiler profiler = sigFile == null ? null : sigFile.getSignatureProfiler();
+        if (profiler != null && signatureCostReport != null) {
+            profiler.stop();
+            sigFile.setSignatureProfiler(null);
+            try {
+                Files.createDirectories(signatureCostReport.toAbsolutePath().getParent());
+                try (Writer writer = Files.newBufferedWriter(signatureCostReport, StandardCharsets.UTF_8)) {
+                    if (signatureCostReport.getFileName().toString().endsWith(".json")) {
+                        profiler.writeJson(writer);
+                    } else {
+                        profiler.writeCsv(writer);
+                    }
+                }
+            } catch (IOException e) {
+                LoggerFactory.getLogger(getClass()).warn(String.format(
+                        "Could not write signature costs to %s: %s", signatureCostReport, e.getMessage()), e);
+            }
+        }
     }
     
     /**
@@ -86,6 +149,58 @@ public class BinarySignatureIdentifier implements DroidCore {
         this.signatureFile = Paths.get(signatureFile).toUri();
     }
 
+    /**
+     * Sets a directory to hold a prepared snapshot of the signature file in, so it can be loaded
+     * quickly the next time it is used.  If not set, or empty, the signature file is always parsed.
+     *
+     * @param signatureSnapshotDir the directory to hold signature file snapshots in.
+     */
+    public void setSignatureSnapshotDir(final String signatureSnapshotDir) {
+        this.signatureSnapshotDir = signatureSnapshotDir == null || signatureSnapshotDir.isEmpty()
+                ? null : Paths.get(signatureSnapshotDir);
+    }
+
+    /**
+     * Sets a file to write the cost of evaluating each signature to when this droid core is closed.
+     * The costs are written as JSON if the file name ends with .json, or as CSV otherwise.
+     * If not set, or empty, signature costs are not recorded.
+     *
+     * @param signatureCostReport the file to write signature costs to.
+     */
+    public void setSignatureCostReport(final String signatureCostReport) {
+        this.signatureCostReport = signatureCostReport == null || signatureCostReport.isEmpty()
+                ? null : Paths.get(signatureCostReport);
+    }
+
+    /**
+     * Sets how byte sequences are matched against files: FRAGMENTS (the default) searches for the anchor of
+     * each subsequence and backtracks over the fragments around it, and AUTOMATON matches each byte sequence
+     * as a bounded-gap automaton.  If empty, the default is used.
+     *
+     * @param sequenceMatchingEngine the name of the engine to match byte sequences with.
+     */
+    public void setSequenceMatchingEngine(final String sequenceMatchingEngine) {
+        this.sequenceMatchingEngine = SequenceMatchingEngine.forName(sequenceMatchingEngine);
+        if (sigFile != null) {
+            sigFile.setSequenceMatchingEngine(this.sequenceMatchingEngine);
+        }
+    }
+
+    /**
+     * Sets whether to skip binary signatures whose hits would be removed by
+     * {@link #removeLowerPriorityHits(IdentificationResultCollection)}.  Only set this if lower priority
+     * hits are always removed from the binary results, as they are no longer reported in full.
+     * Hits for puids passed to {@link #retainMatchesForPuid(String)} are always reported.
+     *
+     * @param skipLowerPriorityMatches whether to skip signatures whose hits would be removed.
+     */
+    public void setSkipLowerPriorityMatches(final boolean skipLowerPriorityMatches) {
+        this.skipLowerPriorityMatches = skipLowerPriorityMatches;
+        if (sigFile != null) {
+            sigFile.setSkipLowerPriorityMatches(skipLowerPriorityMatches);
+        }
+    }
+
 
     /**
      * {@inheritDoc}
@@ -95,18 +210,22 @@ public class BinarySignatureIdentifier implements DroidCore {
         //BNO: Called once for each identification request
         IdentificationResultCollection results = new IdentificationResultCollection(request);
         results.setRequestMetaData(request.getRequestMetaData());
-        ByteReader byteReader = new IdentificationRequestByteReaderAdapter(request);
-        sigFile.runFileIdentification(byteReader);
-        final int numHits = byteReader.getNumHits();
-        for (int i = 0; i < numHits; i++) {
-            FileFormatHit hit = byteReader.getHit(i);
-            IdentificationResultImpl result = new IdentificationResultImpl();
-            result.setMimeType(hit.getMimeType());
-            result.setName(hit.getFileFormatName());
-            result.setVersion(hit.getFileFormatVersion());
-            result.setPuid(hit.getFileFormatPUID());
-            result.setMethod(IdentificationMethod.BINARY_SIGNATURE);
-            results.addResult(result);
+        final IdentificationContext context = contexts.get();
+        final IdentificationRequestByteReaderAdapter byteReader = context.byteReader;
+        byteReader.setRequest(request);
+        try {
+            final List<InternalSignature> matchingSigs =
+                    sigFile.getMatchingSignatures(byteReader, context.matchContext);
+            final int numSigs = matchingSigs.size(); // reduce garbage: use indexed loops rather than iterators.
+            for (int i = 0; i < numSigs; i++) {
+                final InternalSignature internalSig = matchingSigs.get(i);
+                final int numFormats = internalSig.getNumFileFormats();
+                for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+                    results.addResult(getFormatResult(internalSig.getFileFormat(formatIndex)));
+                }
+            }
+        } finally {
+            byteReader.setRequest(null); // don't hold on to the request after it has been identified.
         }
         results.setFileLength(request.size());
         results.setRequestMetaData(request.getRequestMetaData());
@@ -114,6 +233,30 @@ public class BinarySignatureIdentifier implements DroidCore {
     }
 
 
+    private IdentificationResult getFormatResult(FileFormat format) {
+        final IdentificationResult result = formatResults.get(format);
+        return result != null ? result : createFormatResult(format);
+    }
+
+    private static Map<FileFormat, IdentificationResult> createFormatResults(FileFormatCollection formats) {
+        final Map<FileFormat, IdentificationResult> results = new IdentityHashMap<>();
+        for (FileFormat format : formats.getFileFormats()) {
+            results.put(format, createFormatResult(format));
+        }
+        return results;
+    }
+
+    private static IdentificationResult createFormatResult(FileFormat format) {
+        IdentificationResultImpl result = new IdentificationResultImpl();
+        result.setMimeType(format.getMimeType());
+        result.setName(format.getName());
+        result.setVersion(format.getVersion());
+        result.setPuid(format.getPUID());
+        result.setMethod(IdentificationMethod.BINARY_SIGNATURE);
+        return result;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -172,41 +315,50 @@ public class BinarySignatureIdentifier implements DroidCore {
         sigFile.setMaxBytesToScan(maxBytes);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TopAndTailExtent getTopAndTailExtent() {
+        return sigFile == null ? TopAndTailExtent.DEFAULT : sigFile.getTopAndTailExtent();
+    }
+
     /**
      * {@inheritDoc}   
      */
     @Override
     public void removeLowerPriorityHits(
             IdentificationResultCollection results) {
-        // Build a set of format ids the results have priority over:
-        FileFormatCollection allFormats = sigFile.getFileFormatCollection();
-        Set<Integer> lowerPriorityIDs = new HashSet<Integer>();
+        if (results.getResults().size() < 2) {
+            return; // a format can't have priority over itself.
+        }
+        // Build a bitset of the formats the results have priority over:
+        final FileFormatCollection allFormats = sigFile.getFileFormatCollection();
+        final FormatPriorities priorities = sigFile.getFormatPriorities();
+        final long[] lowerPriority = contexts.get().getLowerPriorityBits(priorities.getNumWords());
         final List<IdentificationResult> theResults = results.getResults();
-        int numResults = theResults.size();
+        final int numResults = theResults.size();
         for (int i = 0; i < numResults; i++) {
-            final IdentificationResult result = theResults.get(i);
-            final String resultPUID = result.getPuid();
-            final FileFormat format = allFormats.getFormatForPUID(resultPUID);
-            lowerPriorityIDs.addAll(format.getFormatIdsHasPriorityOver());
+            final FileFormat format = allFormats.getFormatForPUID(theResults.get(i).getPuid());
+            priorities.addLowerPriorityFormats(priorities.getPosition(format.getID()), lowerPriority);
         }
-        
-        // If a result has an id in this set, add it to the remove list;
-        List<IdentificationResult> lowerPriorityResults = new ArrayList<IdentificationResult>();
-        for (int i = 0; i < numResults; i++) {
+
+        // Remove any results in the bitset, working backwards so the results left to check don't move:
+        for (int i = numResults - 1; i >= 0; i--) {
             final IdentificationResult result = theResults.get(i);
-            final String resultPUID = result.getPuid();
-            final FileFormat format = allFormats.getFormatForPUID(resultPUID);
-            if (lowerPriorityIDs.contains(format.getID())) {
-                lowerPriorityResults.add(result);
+            final FileFormat format = allFormats.getFormatForPUID(result.getPuid());
+            if (priorities.isLowerPriority(priorities.getPosition(format.getID()), lowerPriority)) {
+                results.removeResult(result);
             }
         }
-         
-        // Now remove any lower priority results from the collection:
-        numResults = lowerPriorityResults.size();
-        for (int i = 0; i < numResults; i++) {
-            final IdentificationResult result = lowerPriorityResults.get(i);
-            results.removeResult(result);
-        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void retainMatchesForPuid(String puid) {
+        sigFile.retainMatchesForPuid(puid);
     }
 
     /**
@@ -265,4 +417,25 @@ public class BinarySignatureIdentifier implements DroidCore {
         FileFormat format = sigFile.getFileFormat(puid);
         return format != null? format.getName() : null;
     }
+
+    /**
+     * The objects a thread needs to identify a request, kept so they can be reused for the next one.
+     */
+    private static final class IdentificationContext {
+        private final IdentificationRequestByteReaderAdapter byteReader = new IdentificationRequestByteReaderAdapter(null);
+        private final MatchContext matchContext = new MatchContext();
+        private long[] lowerPriorityBits = new long[0];
+
+        /*
+         * Returns a cleared bitset with the number of words given.
+         */
+        private long[] getLowerPriorityBits(final int numWords) {
+            if (lowerPriorityBits.length != numWords) {
+                lowerPriorityBits = new long[numWords];
+            } else {
+                Arrays.fill(lowerPriorityBits, 0L);
+            }
+            return lowerPriorityBits;
+        }
+    }
 }
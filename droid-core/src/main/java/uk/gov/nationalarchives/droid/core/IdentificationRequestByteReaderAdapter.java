@@ -42,6 +42,7 @@ import net.byteseek.io.reader.WindowReader;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatHit;
+import uk.gov.nationalarchives.droid.core.signature.WindowCursor;
 
 /**
  * Adapts an IdentificationRequest to the ByteReader interface.
@@ -50,9 +51,10 @@ import uk.gov.nationalarchives.droid.core.signature.FileFormatHit;
  */
 public class IdentificationRequestByteReaderAdapter implements ByteReader {
 
-    private Logger log = LoggerFactory.getLogger(this.getClass());
+    private static final Logger LOG = LoggerFactory.getLogger(IdentificationRequestByteReaderAdapter.class);
     private IdentificationRequest request;
     private long fileMarker;
+    private WindowCursor windowCursor;
     
     private List<FileFormatHit> hits = new ArrayList<FileFormatHit>();
     
@@ -64,6 +66,18 @@ public class IdentificationRequestByteReaderAdapter implements ByteReader {
         this.request = request;
     }
 
+    /**
+     * Wraps another request, so the adapter can be reused.  Any hits are cleared and the file marker is reset.
+     *
+     * @param request the request to wrap, or null to release the current request.
+     */
+    public final void setRequest(IdentificationRequest request) {
+        this.request = request;
+        this.fileMarker = 0;
+        this.windowCursor = null;
+        hits.clear();
+    }
+
     /**
      * @param theHit the hit to add
      */
@@ -80,7 +94,7 @@ public class IdentificationRequestByteReaderAdapter implements ByteReader {
         try {
             request.close();
         } catch (IOException e) {
-            log.error(e.getMessage(), e);
+            LOG.error(e.getMessage(), e);
         }
     }
 
@@ -246,4 +260,15 @@ public class IdentificationRequestByteReaderAdapter implements ByteReader {
     public WindowReader getWindowReader() {
         return request.getWindowReader();
     }
+
+    /**
+     * @return a cursor over the windows of the request, created when first needed.
+     */
+    @Override
+    public WindowCursor getWindowCursor() {
+        if (windowCursor == null) {
+            windowCursor = new WindowCursor(request.getWindowReader());
+        }
+        return windowCursor;
+    }
 }
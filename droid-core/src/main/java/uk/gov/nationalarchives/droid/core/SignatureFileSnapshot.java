@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SignatureSnapshotCodec;
+
+/**
+ * Loads a prepared signature file from a binary snapshot, if one exists for it,
+ * or parses the signature file and writes a snapshot of it for the next time it is loaded.
+ *
+ * <p>Snapshots are held in a directory of their own, named after the signature file they were written from.
+ * Each snapshot records a checksum of the signature file, so a snapshot is ignored and rewritten
+ * if the signature file changes.  Any problem reading or writing a snapshot is logged, and the
+ * signature file is parsed as normal.</p>
+ */
+public class SignatureFileSnapshot {
+
+    private static final String SNAPSHOT_EXTENSION = ".snapshot";
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Path snapshotDirectory;
+    private final SignatureFileParser parser;
+
+    /**
+     * Constructs a SignatureFileSnapshot which holds snapshots in the directory given.
+     *
+     * @param snapshotDirectory The directory to read and write snapshots in.  It is created if it doesn't exist.
+     */
+    public SignatureFileSnapshot(final Path snapshotDirectory) {
+        this(snapshotDirectory, new SignatureFileParser());
+    }
+
+    /**
+     * Constructs a SignatureFileSnapshot which holds snapshots in the directory given.
+     *
+     * @param snapshotDirectory The directory to read and write snapshots in.  It is created if it doesn't exist.
+     * @param parser The parser to use if the signature file has no valid snapshot.
+     */
+    public SignatureFileSnapshot(final Path snapshotDirectory, final SignatureFileParser parser) {
+        this.snapshotDirectory = snapshotDirectory;
+        this.parser = parser;
+    }
+
+    /**
+     * Loads a signature file, from its snapshot if it has a valid one.
+     *
+     * @param signatureFile The path of the signature file to load.
+     * @return A signature file which is prepared for use.
+     * @throws SignatureParseException if the signature file had to be parsed and could not be.
+     */
+    public FFSignatureFile load(final Path signatureFile) throws SignatureParseException {
+        final String checksum = getChecksum(signatureFile);
+        final Path snapshot = getSnapshotPath(signatureFile);
+        FFSignatureFile sigFile = checksum == null ? null : readSnapshot(snapshot, checksum);
+        if (sigFile == null) {
+            sigFile = parser.parseSigFile(signatureFile);
+            sigFile.prepareForUse();
+            if (checksum != null) {
+                writeSnapshot(sigFile, snapshot, checksum);
+            }
+        }
+        return sigFile;
+    }
+
+    /**
+     * @param signatureFile The path of a signature file.
+     * @return The path of the snapshot for that signature file.
+     */
+    public Path getSnapshotPath(final Path signatureFile) {
+        return snapshotDirectory.resolve(signatureFile.getFileName().toString() + SNAPSHOT_EXTENSION);
+    }
+
+    private FFSignatureFile readSnapshot(final Path snapshot, final String checksum) {
+        FFSignatureFile sigFile = null;
+        if (Files.isRegularFile(snapshot)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_SIZE))) {
+                sigFile = SignatureSnapshotCodec.read(in, checksum);
+                if (sigFile == null) {
+                    log.debug("Signature snapshot {} is out of date and will be rewritten.", snapshot);
+                }
+            } catch (IOException e) {
+                log.warn("Could not read signature snapshot {}: {}", snapshot, e.getMessage());
+            }
+        }
+        return sigFile;
+    }
+
+    /*
+     * Writes the snapshot to a temporary file first, so a partly written snapshot is never read.
+     */
+    private void writeSnapshot(final FFSignatureFile sigFile, final Path snapshot, final String checksum) {
+        Path tempFile = null;
+        try {
+            Files.createDirectories(snapshotDirectory);
+            tempFile = Files.createTempFile(snapshotDirectory, "snapshot", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+                SignatureSnapshotCodec.write(sigFile, checksum, out);
+            }
+            Files.move(tempFile, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+        } catch (IOException e) {
+            log.warn("Could not write signature snapshot {}: {}", snapshot, e.getMessage());
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private void deleteQuietly(final Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.debug("Could not delete temporary signature snapshot {}", file);
+            }
+        }
+    }
+
+    /*
+     * Returns a checksum of the signature file, or null if it can't be calculated,
+     * in which case snapshots are not used at all.
+     */
+    private String getChecksum(final Path signatureFile) {
+        String checksum = null;
+        try (InputStream in = Files.newInputStream(signatureFile)) {
+            final MessageDigest digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read = in.read(buffer);
+            while (read >= 0) {
+                digest.update(buffer, 0, read);
+                read = in.read(buffer);
+            }
+            checksum = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.debug("Could not calculate a checksum for signature file {}: {}", signatureFile, e.getMessage());
+        }
+        return checksum;
+    }
+
+}
@@ -198,6 +198,13 @@ public interface ByteReader extends AutoCloseable {
      * @return a Byteseek2 WindowReader.
      */
     WindowReader getWindowReader();
+
+    /**
+     * Gets a cursor giving direct access to the windows of the WindowReader, for matching
+     * bytes without looking up a window for every byte.
+     * @return a cursor over the windows of the WindowReader.
+     */
+    WindowCursor getWindowCursor();
     
     /**
      * Returns the number of bytes in the file.
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature;
+
+import java.io.IOException;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+/**
+ * Gives direct access to the array backing the window of a {@link WindowReader} a file position is in.
+ *
+ * <p>Reading a byte or matching a sequence through a WindowReader looks up the window for
+ * every call.  A cursor remembers the last window it moved to, so bytes and matches inside it are read
+ * straight from its array, and a new window is only looked up when a position falls outside it.
+ * Sequences which cross the end of a window are matched through the reader.</p>
+ *
+ * <p>A cursor is not thread-safe, and should only be used by the thread matching the file.</p>
+ */
+public final class WindowCursor {
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final WindowReader reader;
+    private byte[] array;
+    private long windowStart;
+    private long windowEnd = -1; // exclusive; no window yet.
+
+    /**
+     * @param reader The reader to access windows of.
+     */
+    public WindowCursor(final WindowReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Moves the cursor to the window containing a file position, if it is not already in it.
+     *
+     * @param position The file position to move to.
+     * @return Whether the position is in the file.
+     * @throws IOException If the window could not be read.
+     */
+    public boolean moveTo(final long position) throws IOException {
+        if (position >= windowStart && position < windowEnd) {
+            return true;
+        }
+        final Window window = position < 0 ? null : reader.getWindow(position);
+        if (window == null) {
+            return false;
+        }
+        array = window.getArray();
+        windowStart = window.getWindowPosition();
+        windowEnd = windowStart + window.length();
+        return true;
+    }
+
+    /**
+     * @return The array backing the window the cursor is in.
+     */
+    public byte[] getArray() {
+        return array;
+    }
+
+    /**
+     * @return The file position of the first byte in the window the cursor is in.
+     */
+    public long getWindowStart() {
+        return windowStart;
+    }
+
+    /**
+     * @return The file position after the last byte in the window the cursor is in.
+     */
+    public long getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * Reads a byte from the file.
+     *
+     * @param position The file position to read.
+     * @return The byte value from 0 to 255, or -1 if the position is not in the file.
+     * @throws IOException If the window could not be read.
+     */
+    public int readByte(final long position) throws IOException {
+        return moveTo(position) ? array[(int) (position - windowStart)] & BYTE_MASK : -1;
+    }
+
+    /**
+     * Returns whether a sequence matches the file at a position, comparing it directly against the
+     * window array if it fits inside the window.
+     *
+     * @param matcher The sequence to match.
+     * @param position The file position to match at.
+     * @return Whether the sequence matches at the position.
+     * @throws IOException If the file could not be read.
+     */
+    public boolean matches(final SequenceMatcher matcher, final long position) throws IOException {
+        if (!moveTo(position)) {
+            return false;
+        }
+        if (position + matcher.length() <= windowEnd) {
+            return matcher.matchesNoBoundsCheck(array, (int) (position - windowStart));
+        }
+        return matcher.matches(reader, position); // crosses the end of the window.
+    }
+}
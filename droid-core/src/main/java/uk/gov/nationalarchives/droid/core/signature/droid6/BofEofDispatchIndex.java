@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+import uk.gov.nationalarchives.droid.core.signature.WindowCursor;
+
+/**
+ * An index of the signatures which can match given the first and last few bytes of a file.
+ *
+ * <p>Most signatures begin by matching a sequence at a fixed offset from the start or end of a file.
+ * Where that sequence covers any of the first or last few bytes of a file, the byte values it can
+ * accept there are recorded for each position.  Reading those few bytes of a file then selects
+ * the signatures which could possibly match it, without evaluating any of them.
+ * Signatures which don't have a sequence at a fixed position there are always candidates.</p>
+ *
+ * <p>The index is immutable once built, and can be shared between threads.</p>
+ */
+public final class BofEofDispatchIndex {
+
+    /**
+     * The number of bytes at the start and end of a file which are indexed.
+     */
+    private static final int INDEXED_BYTES = 4;
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_BITS = 64;
+
+    private final int numSignatures;
+    private final int numConstrained;
+
+    /*
+     * For each indexed position and byte value, a bitset of the signatures which can match with that value there.
+     * Positions with no constraints at all are null.
+     */
+    private final long[][][] headAllowed;
+    private final long[][][] tailAllowed;
+
+    private BofEofDispatchIndex(final List<InternalSignature> signatures) {
+        this.numSignatures = signatures.size();
+        this.headAllowed = new long[INDEXED_BYTES][][];
+        this.tailAllowed = new long[INDEXED_BYTES][][];
+        int constrained = 0;
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            boolean isConstrained = false;
+            for (final ByteSequence sequence : signatures.get(sigIndex).getByteSequences()) {
+                isConstrained |= addConstraints(sigIndex, sequence);
+            }
+            if (isConstrained) {
+                constrained++;
+            }
+        }
+        this.numConstrained = constrained;
+    }
+
+    /**
+     * Builds an index for a list of prepared signatures.
+     *
+     * @param signatures The list of signatures, which must already be prepared for use.
+     * @return An index of the signatures which can match the first and last bytes of a file.
+     */
+    public static BofEofDispatchIndex build(final List<InternalSignature> signatures) {
+        return new BofEofDispatchIndex(signatures);
+    }
+
+    /**
+     * @return The number of signatures indexed, constrained or not.
+     */
+    public int getNumSignatures() {
+        return numSignatures;
+    }
+
+    /**
+     * @return The number of signatures which are constrained by the first or last bytes of a file.
+     */
+    public int getNumConstrainedSignatures() {
+        return numConstrained;
+    }
+
+    /**
+     * Reads the first and last few bytes of the target file, and returns which signatures could match it.
+     *
+     * @param targetFile The file to select signatures for.
+     * @return An array of flags indexed by signature position; true if the signature must be evaluated.
+     */
+    public boolean[] findCandidates(final WindowReader targetFile) {
+        final boolean[] candidates = new boolean[numSignatures];
+        findCandidates(targetFile, candidates, newBitSet(numSignatures));
+        return candidates;
+    }
+
+    /**
+     * Reads the first and last few bytes of the target file, and flags which signatures could match it,
+     * using working storage supplied by the caller.
+     *
+     * @param targetFile The file to select signatures for.
+     * @param candidates An array of at least one flag per signature, set true if the signature must be evaluated.
+     * @param bits A bitset with exactly enough words for one bit per signature, used as working storage.
+     */
+    void findCandidates(final WindowReader targetFile, final boolean[] candidates, final long[] bits) {
+        getCandidateBits(targetFile, bits);
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            candidates[sigIndex] = (bits[sigIndex >>> WORD_SHIFT] & (1L << sigIndex)) != 0;
+        }
+    }
+
+    private void getCandidateBits(final WindowReader targetFile, final long[] bits) {
+        Arrays.fill(bits, -1L);
+        if (numConstrained > 0) {
+            try {
+                final long fileLength = targetFile.length();
+                final int indexedLength = (int) Math.min(INDEXED_BYTES, fileLength);
+                final WindowCursor head = new WindowCursor(targetFile);
+                final WindowCursor tail = new WindowCursor(targetFile);
+                for (int position = 0; position < indexedLength; position++) {
+                    intersect(bits, headAllowed[position], head.readByte(position));
+                    intersect(bits, tailAllowed[position], tail.readByte(fileLength - 1 - position));
+                }
+            } catch (IOException ex) {
+                // We can't read the file here - so let the signatures report on it normally.
+                Arrays.fill(bits, -1L);
+            }
+        }
+    }
+
+    private static void intersect(final long[] bits, final long[][] allowed, final int byteValue) {
+        if (allowed != null && byteValue >= 0) {
+            final long[] allowedForByte = allowed[byteValue];
+            for (int word = 0; word < bits.length; word++) {
+                bits[word] &= allowedForByte[word];
+            }
+        }
+    }
+
+    /*
+     * Records the byte values the first sequence evaluated in a byte sequence can have in the indexed positions,
+     * if it must match at a fixed offset from the start or end of the file.
+     */
+    private boolean addConstraints(final int sigIndex, final ByteSequence sequence) {
+        boolean constrained = false;
+        final List<SubSequence> subSequences = sequence.getSubSequences();
+        final boolean fromEnd = sequence.isAnchoredToEOF();
+        if ((fromEnd || sequence.isAnchoredToBOF()) && !sequence.hasIndirectOffset() && !subSequences.isEmpty()) {
+            final SubSequence subSequence = subSequences.get(fromEnd ? subSequences.size() - 1 : 0);
+            if (subSequence.getAnchorMatcher() != null && isFixedPosition(subSequence, fromEnd)) {
+                constrained = addConstraints(sigIndex, subSequence, fromEnd ? tailAllowed : headAllowed, fromEnd);
+            }
+        }
+        return constrained;
+    }
+
+    private boolean addConstraints(final int sigIndex, final SubSequence subSequence,
+                                   final long[][][] allowed, final boolean fromEnd) {
+        boolean constrained = false;
+        final SequenceMatcher matcher = subSequence.getAnchorMatcher();
+        final int length = matcher.length();
+        final int offset = subSequence.getMinSeqOffset();
+        for (int matchPos = 0; matchPos < length; matchPos++) {
+            // positions from the end count back from the last byte, which is position zero.
+            final long filePos = fromEnd ? offset + length - 1 - matchPos : offset + matchPos;
+            if (filePos >= 0 && filePos < INDEXED_BYTES) {
+                allowOnly(getAllowed(allowed, (int) filePos), sigIndex, matcher.getMatcherForPosition(matchPos));
+                constrained = true;
+            }
+        }
+        return constrained;
+    }
+
+    private static boolean isFixedPosition(final SubSequence subSequence, final boolean fromEnd) {
+        return !subSequence.isFullFileScan()
+                && subSequence.getMinSeqOffset() == subSequence.getMaxSeqOffset()
+                && subSequence.getMaxFragmentLength(!fromEnd) == 0;
+    }
+
+    private long[][] getAllowed(final long[][][] allowed, final int position) {
+        long[][] allowedAtPosition = allowed[position];
+        if (allowedAtPosition == null) {
+            allowedAtPosition = new long[BYTE_VALUES][];
+            for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+                allowedAtPosition[byteValue] = newBitSet(numSignatures);
+            }
+            allowed[position] = allowedAtPosition;
+        }
+        return allowedAtPosition;
+    }
+
+    private static void allowOnly(final long[][] allowedAtPosition, final int sigIndex, final ByteMatcher matcher) {
+        final int word = sigIndex >>> WORD_SHIFT;
+        final long clearBit = ~(1L << sigIndex);
+        for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+            if (!matcher.matches((byte) byteValue)) {
+                allowedAtPosition[byteValue][word] &= clearBit;
+            }
+        }
+    }
+
+    private static long[] newBitSet(final int numBits) {
+        final long[] bits = new long[(numBits + WORD_BITS - 1) >>> WORD_SHIFT];
+        final int remainder = numBits & (WORD_BITS - 1);
+        Arrays.fill(bits, -1L);
+        if (remainder != 0) {
+            bits[bits.length - 1] = (1L << remainder) - 1;
+        }
+        return bits;
+    }
+
+}
@@ -90,8 +90,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.byteseek.compiler.CompileException;
-import net.byteseek.io.reader.WindowReader;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.WindowCursor;
 import uk.gov.nationalarchives.droid.core.signature.compiler.ByteSequenceAnchor;
 import uk.gov.nationalarchives.droid.core.signature.compiler.ByteSequenceCompiler;
 
@@ -175,7 +175,7 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
     /**
     *Use static log for optimal performance..
      */
-    private final Logger log = LoggerFactory.getLogger(ByteSequence.class);
+    private static final Logger LOG = LoggerFactory.getLogger(ByteSequence.class);
     
     private List<SubSequence> subSequences = new ArrayList<SubSequence>();
     private SubSequence[] sequences = new SubSequence[0];
@@ -193,6 +193,12 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
 
     private boolean isInvalidByteSequence;
 
+    /**
+     * How the byte sequence is matched, and the automaton to match it with if one is used.
+     */
+    private SequenceMatchingEngine matchingEngine = SequenceMatchingEngine.FRAGMENTS;
+    private volatile ByteSequenceAutomaton automaton;
+
     /**
      * The signature sequence in PRONOM or container compatible syntax.
      * It won't be set for most ByteSequences, but can be set from the signature XML
@@ -224,6 +230,38 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
         return anchoredToEOF;
     }
 
+    /**
+     *
+     * @return Whether an indirect offset is read as big-endian.
+     */
+    public final boolean isBigEndian() {
+        return bigEndian;
+    }
+
+    /**
+     *
+     * @return The length of the indirect offset.
+     */
+    public final int getIndirectOffsetLength() {
+        return indirectOffsetLength;
+    }
+
+    /**
+     *
+     * @return The location of the indirect offset.
+     */
+    public final int getIndirectOffsetLocation() {
+        return indirectOffsetLocation;
+    }
+
+    /**
+     *
+     * @return Whether the offset of the byte sequence is read from the file itself.
+     */
+    public final boolean hasIndirectOffset() {
+        return hasIndirectOffset;
+    }
+
     /**
      * 
      * @return The sort order of this byte sequence.
@@ -370,6 +408,53 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
             }
         }
         preparedForUse = true;
+        compileAutomaton();
+    }
+
+    /**
+     * Sets how the byte sequence is matched against files.
+     *
+     * @param engine The engine to match the byte sequence with.
+     */
+    public final void setMatchingEngine(final SequenceMatchingEngine engine) {
+        this.matchingEngine = engine;
+        compileAutomaton();
+    }
+
+    /**
+     *
+     * @return How the byte sequence is matched against files.
+     */
+    public final SequenceMatchingEngine getMatchingEngine() {
+        return matchingEngine;
+    }
+
+    /**
+     * Returns how far into a file from the start or end the byte sequence can match, if it is matched
+     * at a bounded offset from there.  Only valid once prepared for use.
+     *
+     * @return The furthest number of bytes from the start or end of a file the byte sequence can match in,
+     *         or -1 if it can match further into a file than its offsets allow for.
+     */
+    public final long getMaxExtent() {
+        if (isInvalidByteSequence) {
+            return 0; // it never matches.
+        }
+        if (!isFixedStart || hasIndirectOffset || subSequences.size() != 1) {
+            return -1;
+        }
+        final SubSequence subSequence = subSequences.get(0);
+        return (long) subSequence.getMaxSeqOffset() + subSequence.getAnchorMatcher().length()
+                + subSequence.getMaxFragmentLength(true) + subSequence.getMaxFragmentLength(false);
+    }
+
+    /*
+     * Compiles an automaton if the automaton engine is selected and the sequence is ready to match.
+     */
+    private void compileAutomaton() {
+        automaton = matchingEngine == SequenceMatchingEngine.AUTOMATON && preparedForUse
+                && !isInvalidByteSequence && !hasIndirectOffset
+                ? ByteSequenceAutomaton.compile(subSequences, reverseOrder, isFixedStart) : null;
     }
 
     /**
@@ -378,12 +463,12 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
     private void compileSequence() {
         try {
             if (!subSequences.isEmpty()) {
-                log.warn("A sequence is defined - ByteSequence is clearing any sub-objects (probably from XML parsing) before compiling: " + sequence);
+                LOG.warn("A sequence is defined - ByteSequence is clearing any sub-objects (probably from XML parsing) before compiling: " + sequence);
                 subSequences.clear();
             }
             ByteSequenceCompiler.COMPILER.compile(this, sequence, getAnchor());
         } catch (CompileException e) {
-            log.warn("Compilation error in signature for sequence: " + sequence + "\n" + e.getMessage(), e);
+            LOG.warn("Compilation error in signature for sequence: " + sequence + "\n" + e.getMessage(), e);
             isInvalidByteSequence = true;
         }
     }
@@ -469,7 +554,7 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
                 offsetLocation = targetFile.getNumBytes() - offsetLocation - 1;
             }
 
-            final WindowReader reader = targetFile.getWindowReader();
+            final WindowCursor reader = targetFile.getWindowCursor();
 
             // In the case of indirect BOF or indirect EOF bytesequences,
             // We need to read the file to get the offset.
@@ -517,6 +602,10 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
      * @return boolean
      */
     public final boolean matches(final ByteReader targetFile, final long maxBytesToScan) {
+        final ByteSequenceAutomaton compiled = automaton;
+        if (compiled != null) {
+            return compiled.matches(targetFile, maxBytesToScan);
+        }
         boolean matchResult = true;
 
         // Use a local reference to the sequence list for better performance:
@@ -554,7 +643,7 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
                     fixedSubsequence = false;
                 }
             } catch (IOException io) {
-                log.error(String.format("Error processing file: %s. for byte sequence match",
+                LOG.error(String.format("Error processing file: %s. for byte sequence match",
                         targetFile.getFileName()), io);
                 return false;
             }
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.searcher.SearchResult;
+import net.byteseek.searcher.Searcher;
+import net.byteseek.searcher.bytes.ByteMatcherSearcher;
+import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
+
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.WindowCursor;
+
+/**
+ * Matches a whole {@link ByteSequence} as a bounded-gap automaton, rather than by searching for the
+ * anchor of each subsequence and backtracking over its fragments.
+ *
+ * <p>A byte sequence is a chain of fixed length elements with bounded gaps between them, as given by
+ * {@link ByteSequence#toRegularExpression(boolean)}: the fragments and anchor of each subsequence
+ * in turn, with each subsequence a gap after the one before.  Each element is a state of the automaton,
+ * with a transition for each alternative which can match there.  Rather than tracking each position
+ * in a gap as a separate state, the automaton tracks the intervals of file positions the next element
+ * can start in, so gaps of any size cost the same.  Each element is matched once at every position
+ * it can start at, scanning forwards from the start of the file, or backwards from the end of the file for
+ * sequences anchored to the end of a file.  Where the gap after an element is unbounded, only its first
+ * match is needed.</p>
+ *
+ * <p>The maximum bytes to scan limits where the anchor of each subsequence can end, as it does when
+ * searching for anchors.  Byte sequences with an indirect offset are not compiled.</p>
+ *
+ * <p>An automaton is immutable once compiled, and can be shared between threads.</p>
+ */
+public final class ByteSequenceAutomaton {
+
+    /**
+     * A gap with no maximum.  It leaves room to add file positions to it without overflowing.
+     */
+    static final long UNBOUNDED = Long.MAX_VALUE >>> 2;
+
+    /*
+     * Intervals of start positions wider than this are searched for matches, rather than
+     * testing each position in turn.
+     */
+    private static final int SEARCH_WIDTH = 16;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ByteSequenceAutomaton.class);
+
+    private final Element[] elements;
+    private final boolean reversed;
+
+    private ByteSequenceAutomaton(final List<Element> elements, final boolean reversed) {
+        this.elements = elements.toArray(new Element[0]);
+        this.reversed = reversed;
+    }
+
+    /**
+     * Compiles the subsequences of a byte sequence into an automaton.
+     * The subsequences must already be prepared for use.
+     *
+     * @param subSequences The subsequences of the byte sequence, in the order they appear in a file.
+     * @param reverseOrder Whether the byte sequence is matched backwards from the end of a file.
+     * @param fixedStart Whether the first subsequence to match is at a bounded offset from the start or end.
+     * @return An automaton matching the byte sequence.
+     */
+    static ByteSequenceAutomaton compile(final List<SubSequence> subSequences,
+                                         final boolean reverseOrder, final boolean fixedStart) {
+        final List<Element> elements = new ArrayList<>();
+        final int numSubSequences = subSequences.size();
+        final int boundedSubSequence = reverseOrder ? numSubSequences - 1 : 0;
+        for (int subIndex = 0; subIndex < numSubSequences; subIndex++) {
+            final SubSequence subSequence = subSequences.get(subIndex);
+            final long maxGap = fixedStart && subIndex == boundedSubSequence
+                    ? subSequence.getMaxSeqOffset() : UNBOUNDED;
+            final int firstElement = elements.size();
+            addSubSequence(subSequence, elements);
+            if (reverseOrder) {
+                elements.get(elements.size() - 1).addGapAfter(subSequence.getMinSeqOffset(), maxGap);
+            } else {
+                elements.get(firstElement).addGapBefore(subSequence.getMinSeqOffset(), maxGap);
+            }
+        }
+        if (reverseOrder) {
+            Collections.reverse(elements);
+            for (Element element : elements) {
+                element.reverse();
+            }
+        }
+        return new ByteSequenceAutomaton(elements, reverseOrder);
+    }
+
+    /**
+     * @return The number of elements in the automaton.
+     */
+    public int getNumElements() {
+        return elements.length;
+    }
+
+    /**
+     * Returns whether the byte sequence matches the target file.
+     *
+     * @param targetFile The file to match.
+     * @param maxBytesToScan The maximum bytes to scan from the start or end of a file, or negative if unlimited.
+     * @return Whether the byte sequence matches the file.
+     */
+    public boolean matches(final ByteReader targetFile, final long maxBytesToScan) {
+        final Scan scan = new Scan(targetFile.getWindowReader(), targetFile.getWindowCursor(),
+                targetFile.getNumBytes(), maxBytesToScan, reversed);
+        Intervals origins = new Intervals();
+        origins.add(0, 0);
+        try {
+            for (int elementIndex = 0; elementIndex < elements.length && !origins.isEmpty(); elementIndex++) {
+                origins = elements[elementIndex].advance(scan, origins);
+            }
+        } catch (IOException e) {
+            LOG.error(String.format("Error processing file: %s. for byte sequence match", targetFile.getFileName()), e);
+            return false;
+        }
+        return !origins.isEmpty();
+    }
+
+    private static void addSubSequence(final SubSequence subSequence, final List<Element> elements) {
+        final List<List<SideFragment>> leftFragments = subSequence.getLeftFragments();
+        for (int position = leftFragments.size() - 1; position >= 0; position--) {
+            elements.add(Element.fromFragments(leftFragments.get(position), true));
+        }
+        elements.add(Element.fromAnchor(subSequence.getAnchorMatcher()));
+        for (List<SideFragment> fragments : subSequence.getRightFragments()) {
+            elements.add(Element.fromFragments(fragments, false));
+        }
+    }
+
+    private static long addGap(final long position, final long gap) {
+        return gap >= UNBOUNDED ? UNBOUNDED : Math.min(UNBOUNDED, position + gap);
+    }
+
+    /*
+     * The file being matched, and the direction positions in the automaton are counted in.
+     */
+    private static final class Scan {
+        private final WindowReader reader;
+        private final WindowCursor cursor;
+        private final long length;
+        private final long maxBytesToScan;
+        private final boolean reversed;
+
+        Scan(final WindowReader reader, final WindowCursor cursor, final long length,
+             final long maxBytesToScan, final boolean reversed) {
+            this.reader = reader;
+            this.cursor = cursor;
+            this.length = length;
+            this.maxBytesToScan = maxBytesToScan;
+            this.reversed = reversed;
+        }
+
+        /*
+         * Returns the file position an alternative starting at an automaton position begins at.
+         */
+        long toFile(final long position, final int altLength) {
+            return reversed ? length - position - altLength : position;
+        }
+    }
+
+    /*
+     * A set of disjoint intervals of positions, added in ascending order or normalised afterwards.
+     */
+    private static final class Intervals {
+        private long[] starts = new long[2];
+        private long[] ends = new long[2];
+        private int size;
+        private long unboundedFrom = UNBOUNDED;
+
+        void add(final long start, final long end) {
+            if (start >= unboundedFrom) {
+                return; // already covered.
+            }
+            if (size > 0 && start >= starts[size - 1] && start <= ends[size - 1] + 1) {
+                ends[size - 1] = Math.max(ends[size - 1], end);
+            } else {
+                if (size == starts.length) {
+                    starts = Arrays.copyOf(starts, size * 2);
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                starts[size] = start;
+                ends[size] = end;
+                size++;
+            }
+            if (end >= UNBOUNDED) {
+                unboundedFrom = Math.min(unboundedFrom, start);
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /*
+         * Sorts the intervals and merges any which overlap or touch.
+         */
+        Intervals normalise() {
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (first, second) -> Long.compare(starts[first], starts[second]));
+            final Intervals result = new Intervals();
+            for (Integer index : order) {
+                result.add(starts[index], ends[index]);
+            }
+            return result;
+        }
+    }
+
+    /*
+     * One fixed length element of the byte sequence, with the alternatives which can match there.
+     */
+    private static final class Element {
+        private final Alternative[] alternatives;
+        private final boolean anchor;
+
+        Element(final List<Alternative> alternatives, final boolean anchor) {
+            this.alternatives = alternatives.toArray(new Alternative[0]);
+            this.anchor = anchor;
+        }
+
+        static Element fromAnchor(final SequenceMatcher matcher) {
+            return new Element(Collections.singletonList(new Alternative(matcher, 0, 0, 0, 0)), true);
+        }
+
+        static Element fromFragments(final List<SideFragment> fragments, final boolean gapAfter) {
+            final List<Alternative> alternatives = new ArrayList<>();
+            for (SideFragment fragment : fragments) {
+                final int min = fragment.getMinOffset();
+                final int max = fragment.getMaxOffset();
+                alternatives.add(gapAfter ? new Alternative(fragment.getMatcher(), 0, 0, min, max)
+                                          : new Alternative(fragment.getMatcher(), min, max, 0, 0));
+            }
+            return new Element(alternatives, false);
+        }
+
+        void addGapBefore(final long min, final long max) {
+            for (Alternative alternative : alternatives) {
+                alternative.minBefore += min;
+                alternative.maxBefore = addGap(alternative.maxBefore, max);
+            }
+        }
+
+        void addGapAfter(final long min, final long max) {
+            for (Alternative alternative : alternatives) {
+                alternative.minAfter += min;
+                alternative.maxAfter = addGap(alternative.maxAfter, max);
+            }
+        }
+
+        void reverse() {
+            for (Alternative alternative : alternatives) {
+                alternative.reverse();
+            }
+        }
+
+        /*
+         * Given the intervals the gap before this element starts in, returns the intervals the gap
+         * after it ends in, for every match of an alternative.
+         */
+        Intervals advance(final Scan scan, final Intervals origins) throws IOException {
+            final Intervals next = new Intervals();
+            for (Alternative alternative : alternatives) {
+                alternative.advance(scan, origins, anchor, next);
+            }
+            return next.normalise();
+        }
+    }
+
+    /*
+     * An alternative sequence which can match at an element, with the gaps allowed before and after it.
+     */
+    private static final class Alternative {
+        private final SequenceMatcher matcher;
+        private final Searcher<SequenceMatcher> searcher;
+        private final int length;
+        private long minBefore;
+        private long maxBefore;
+        private long minAfter;
+        private long maxAfter;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Alternative(final SequenceMatcher matcher, final long minBefore, final long maxBefore,
+                    final long minAfter, final long maxAfter) {
+            this.matcher = matcher;
+            this.length = matcher.length();
+            this.searcher = length == 1 ? (Searcher) new ByteMatcherSearcher(matcher.getMatcherForPosition(0))
+                                        : new HorspoolFinalFlagSearcher(matcher);
+            this.minBefore = minBefore;
+            this.maxBefore = maxBefore;
+            this.minAfter = minAfter;
+            this.maxAfter = maxAfter;
+        }
+
+        void reverse() {
+            final long min = minBefore;
+            final long max = maxBefore;
+            minBefore = minAfter;
+            maxBefore = maxAfter;
+            minAfter = min;
+            maxAfter = max;
+        }
+
+        /*
+         * Adds the intervals the gap after this alternative ends in, for each match of it which can
+         * follow one of the origins.
+         */
+        void advance(final Scan scan, final Intervals origins, final boolean anchor,
+                     final Intervals next) throws IOException {
+            long lastStart = scan.length - length;
+            if (anchor && scan.maxBytesToScan > 0) {
+                lastStart = Math.min(lastStart, scan.maxBytesToScan - length + 1);
+            }
+            long from = -1;
+            for (int i = 0; i < origins.size; i++) {
+                final long start = Math.max(origins.starts[i] + minBefore, from);
+                final long end = Math.min(addGap(origins.ends[i], maxBefore), lastStart);
+                if (start <= end) {
+                    from = scanInterval(scan, start, end, next);
+                    if (from > lastStart) {
+                        break; // no more matches can add anything.
+                    }
+                }
+            }
+        }
+
+        /*
+         * Adds the gaps after every match starting in an interval of positions, and returns
+         * the next position worth scanning from.
+         */
+        private long scanInterval(final Scan scan, final long start, final long end,
+                                  final Intervals next) throws IOException {
+            long position = start;
+            while (position <= end) {
+                final long matchPosition = findMatch(scan, position, end);
+                final long afterMatch = matchPosition + length;
+                if (matchPosition < 0 || afterMatch + minAfter >= next.unboundedFrom) {
+                    return matchPosition < 0 ? end + 1 : UNBOUNDED;
+                }
+                next.add(afterMatch + minAfter, addGap(afterMatch, maxAfter));
+                position = matchPosition + 1;
+            }
+            return position;
+        }
+
+        /*
+         * Returns the first position from start to end where the alternative matches, or -1 if there is none.
+         */
+        private long findMatch(final Scan scan, final long start, final long end) throws IOException {
+            if (end - start < SEARCH_WIDTH) {
+                for (long position = start; position <= end; position++) {
+                    if (scan.cursor.matches(matcher, scan.toFile(position, length))) {
+                        return position;
+                    }
+                }
+                return -1;
+            }
+            final List<SearchResult<SequenceMatcher>> results = scan.reversed
+                    ? searcher.searchBackwards(scan.reader, scan.toFile(start, length), scan.toFile(end, length))
+                    : searcher.searchForwards(scan.reader, start, end);
+            return results.isEmpty() ? -1 : toPosition(scan, results.get(0).getMatchPosition());
+        }
+
+        private long toPosition(final Scan scan, final long filePosition) {
+            return scan.reversed ? scan.length - filePosition - length : filePosition;
+        }
+    }
+}
@@ -102,6 +102,7 @@ import java.util.List;
 import java.util.Map;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 import uk.gov.nationalarchives.droid.core.signature.FileFormat;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
@@ -139,6 +140,8 @@ public class FFSignatureFile extends SimpleElement {
         new HashMap<String, List<FileFormat>>(DEFAULT_ALL_EXTENSION_SIZE);
     
     private long maxBytesToScan = -1; // default to scanning all bytes.
+    private FormatPriorities formatPriorities;
+    private volatile TopAndTailExtent topAndTailExtent;
 
     /* setters */
     /**
@@ -253,6 +256,7 @@ public class FFSignatureFile extends SimpleElement {
     public final void prepareForUse() {
         //BNO: Called when profile initialised.
         this.prepareInternalSignatures();
+        topAndTailExtent = null;
     }
 
     
@@ -292,6 +296,8 @@ public class FFSignatureFile extends SimpleElement {
                     }
                 }
             }
+            intSigs.refreshPriorityIndex(); // signatures may no longer identify the format.
+            topAndTailExtent = null;
 
             // 4. The file format no longer has any internal signatures.
             //    It is possible that it never had any, and was a 
@@ -325,6 +331,8 @@ public class FFSignatureFile extends SimpleElement {
     private void prepareInternalSignatures() {
         //BNO: Called when profile initialised
         this.setAllSignatureFileFormats();
+        formatPriorities = FormatPriorities.build(formatCollection.getFileFormats());
+        intSigs.setFormatPriorities(formatPriorities);
         this.intSigs.prepareForUse();
         intSigs.sortSignatures(new InternalSignatureComparator());
         buildFileExtensions();
@@ -475,9 +483,122 @@ public class FFSignatureFile extends SimpleElement {
      */
     public void setMaxBytesToScan(final long maxBytesToScan) {
         this.maxBytesToScan = maxBytesToScan;
+        topAndTailExtent = null;
+    }
+
+    /**
+     * Returns how many bytes at the top and tail of a file the signatures can match in.
+     * Byte sequences at a bounded offset from the start or end of a file only reach so far into it.
+     * Other byte sequences can match as far as the maximum bytes to scan from the start or end of a file.
+     *
+     * @return How many bytes at the top and tail of a file are worth buffering.
+     */
+    public TopAndTailExtent getTopAndTailExtent() {
+        TopAndTailExtent extent = topAndTailExtent;
+        if (extent == null) {
+            extent = calculateTopAndTailExtent();
+            topAndTailExtent = extent;
+        }
+        return extent;
+    }
+
+    private TopAndTailExtent calculateTopAndTailExtent() {
+        final long scanned = maxBytesToScan > 0 ? maxBytesToScan : TopAndTailExtent.MAX_BYTES;
+        long top = 0;
+        long tail = 0;
+        for (InternalSignature signature : getSignatures()) {
+            for (ByteSequence sequence : signature.getByteSequences()) {
+                final long sequenceExtent = sequence.getMaxExtent();
+                final long reach = sequenceExtent < 0 ? scanned : sequenceExtent;
+                if (sequence.isAnchoredToEOF()) {
+                    tail = Math.max(tail, reach);
+                } else {
+                    top = Math.max(top, reach);
+                }
+            }
+        }
+        return new TopAndTailExtent(top, tail);
+    }
+
+
+    /**
+     * Sets a profiler to record the cost of evaluating each signature during identification.
+     *
+     * @param profiler The profiler to record costs with, or null to stop recording them.
+     */
+    public void setSignatureProfiler(final SignatureProfiler profiler) {
+        intSigs.setSignatureProfiler(profiler);
+    }
+
+
+    /**
+     *
+     * @return The profiler recording the cost of each signature, or null if costs are not being recorded.
+     */
+    public SignatureProfiler getSignatureProfiler() {
+        return intSigs.getSignatureProfiler();
+    }
+
+
+    /**
+     * Sets how the byte sequences of every signature are matched against files.
+     *
+     * @param engine The engine to match byte sequences with.
+     */
+    public void setSequenceMatchingEngine(final SequenceMatchingEngine engine) {
+        final List<InternalSignature> signatures = intSigs.getInternalSignatures();
+        final int numSignatures = signatures.size();
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            signatures.get(sigIndex).setMatchingEngine(engine);
+        }
+    }
+
+
+    /**
+     * Sets whether to skip evaluating signatures whose matches would be removed as lower priority hits.
+     * Only the hits which remain once lower priority hits are removed are then reported in full.
+     *
+     * @param skip Whether to skip signatures whose matches would be removed as lower priority hits.
+     */
+    public void setSkipLowerPriorityMatches(final boolean skip) {
+        intSigs.setSkipLowerPriorityMatches(skip);
+    }
+
+
+    /**
+     * Ensures that hits for a puid are always reported, even if a format with priority over it matches.
+     *
+     * @param puid The puid whose hits must always be reported.
+     */
+    public void retainMatchesForPuid(final String puid) {
+        intSigs.retainMatchesForPuid(puid);
+    }
+
+
+    /**
+     *
+     * @return The priorities between file formats, or null if the signature file is not prepared for use.
+     */
+    public FormatPriorities getFormatPriorities() {
+        return formatPriorities;
     }
 
     
+    /**
+     * Returns the signatures which match the target file, using working storage in a context
+     * which can be reused for the next file.
+     *
+     * @param targetFile The binary file to be identified.
+     * @param context The working storage to use, which must not be in use by another thread.
+     * @return The signatures which match, in a list owned by the context.  It is only valid until the
+     *         context is next used.
+     */
+    public final List<InternalSignature> getMatchingSignatures(final ByteReader targetFile,
+                                                               final MatchContext context) {
+        return intSigs.getMatchingSignatures(targetFile, maxBytesToScan, context);
+    }
+
+
     /**
      * Identify the target file using the signatures defined in this signature file.
      *
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.Arrays;
+import java.util.List;
+
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+
+/**
+ * The priority relationships between file formats, held as bitsets.
+ *
+ * <p>A file format can declare that it has priority over other formats.  When both are identified for
+ * a file, the lower priority format is removed from the results.  Formats are given a position, and for
+ * each one the set of formats it has priority over is precomputed as a bitset, so the formats which a set
+ * of results has priority over can be found without building any collections.</p>
+ *
+ * <p>Priority is not transitive: if A has priority over B, and B over C, then A and C can both be reported.
+ * The bitsets hold only the formats each format directly has priority over, as the results would
+ * otherwise change.</p>
+ *
+ * <p>The priorities are immutable once built, and can be shared between threads.</p>
+ */
+public final class FormatPriorities {
+
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_BITS = 64;
+
+    /*
+     * The ids of all the formats, in ascending order.  The position of a format is its index in this array.
+     */
+    private final int[] formatIds;
+
+    /*
+     * For each format position, a bitset of the format positions it has priority over,
+     * or null if it has no priority over any other format.
+     */
+    private final long[][] lowerPriority;
+
+    /*
+     * For each format position, the length of the longest chain of formats which have priority over it.
+     */
+    private final int[] ranks;
+
+    private final int numWords;
+
+    private FormatPriorities(final List<FileFormat> formats) {
+        final int numFormats = formats.size();
+        this.numWords = (numFormats + WORD_BITS - 1) >>> WORD_SHIFT;
+        final int[] ids = new int[numFormats];
+        for (int i = 0; i < numFormats; i++) {
+            ids[i] = formats.get(i).getID();
+        }
+        Arrays.sort(ids);
+        this.formatIds = ids;
+        this.lowerPriority = new long[numFormats][];
+        for (int i = 0; i < numFormats; i++) {
+            final FileFormat format = formats.get(i);
+            final int position = getPosition(format.getID());
+            final int numLower = format.getNumHasPriorityOver();
+            for (int lowerIndex = 0; lowerIndex < numLower; lowerIndex++) {
+                final int lowerPosition = getPosition(format.getHasPriorityOver(lowerIndex));
+                if (lowerPosition >= 0 && lowerPosition != position) {
+                    if (lowerPriority[position] == null) {
+                        lowerPriority[position] = new long[numWords];
+                    }
+                    setBit(lowerPriority[position], lowerPosition);
+                }
+            }
+        }
+        this.ranks = buildRanks();
+    }
+
+    /**
+     * Builds the priorities between a list of file formats.
+     *
+     * @param formats The file formats to build priorities for.
+     * @return The priorities between the formats.
+     */
+    public static FormatPriorities build(final List<FileFormat> formats) {
+        return new FormatPriorities(formats);
+    }
+
+    /**
+     * @return The number of formats which have a position.
+     */
+    public int getNumFormats() {
+        return formatIds.length;
+    }
+
+    /**
+     * @return The number of words needed for a bitset of format positions.
+     */
+    public int getNumWords() {
+        return numWords;
+    }
+
+    /**
+     * @param formatId The id of a file format.
+     * @return The position of the format, or -1 if the format isn't known.
+     */
+    public int getPosition(final int formatId) {
+        final int position = Arrays.binarySearch(formatIds, formatId);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Adds the formats which a format has priority over to a bitset of format positions.
+     *
+     * @param position The position of the format, or -1 if it isn't known.
+     * @param bits The bitset to add the lower priority formats to.
+     */
+    public void addLowerPriorityFormats(final int position, final long[] bits) {
+        final long[] lower = position >= 0 ? lowerPriority[position] : null;
+        if (lower != null) {
+            for (int word = 0; word < numWords; word++) {
+                bits[word] |= lower[word];
+            }
+        }
+    }
+
+    /**
+     * @param position The position of a format, or -1 if it isn't known.
+     * @param bits A bitset of format positions.
+     * @return Whether the format is in the bitset.
+     */
+    public boolean isLowerPriority(final int position, final long[] bits) {
+        return position >= 0 && (bits[position >>> WORD_SHIFT] & (1L << position)) != 0;
+    }
+
+    /**
+     * Returns whether a format is in a bitset of lower priority formats, and all the formats it has
+     * priority over are too.  Adding such a format to results which have priority over the formats
+     * in the bitset makes no difference once lower priority results are removed.
+     *
+     * @param position The position of a format, or -1 if it isn't known.
+     * @param bits A bitset of format positions which results have priority over.
+     * @return Whether the format and all the formats it has priority over are in the bitset.
+     */
+    public boolean isRedundant(final int position, final long[] bits) {
+        if (!isLowerPriority(position, bits)) {
+            return false;
+        }
+        final long[] lower = lowerPriority[position];
+        if (lower != null) {
+            for (int word = 0; word < numWords; word++) {
+                if ((lower[word] & ~bits[word]) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the length of the longest chain of formats which have priority over a format.
+     * Formats which nothing has priority over have a rank of zero.  Where formats have priority over
+     * each other in a cycle, the rank is limited to the number of formats.
+     *
+     * @param position The position of the format, or -1 if it isn't known.
+     * @return The rank of the format.
+     */
+    public int getRank(final int position) {
+        return position >= 0 ? ranks[position] : 0;
+    }
+
+    /*
+     * Relaxes the rank of each format until no rank changes, or until every format could have been visited.
+     */
+    private int[] buildRanks() {
+        final int numFormats = formatIds.length;
+        final int[] result = new int[numFormats];
+        boolean changed = true;
+        for (int pass = 0; changed && pass < numFormats; pass++) {
+            changed = false;
+            for (int position = 0; position < numFormats; position++) {
+                final long[] lower = lowerPriority[position];
+                if (lower != null) {
+                    changed |= raiseRanks(lower, result[position] + 1, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean raiseRanks(final long[] lower, final int rank, final int[] ranks) {
+        boolean changed = false;
+        for (int word = 0; word < lower.length; word++) {
+            long bits = lower[word];
+            while (bits != 0) {
+                final int position = (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+                if (ranks[position] < rank) {
+                    ranks[position] = rank;
+                    changed = true;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return changed;
+    }
+
+    private static void setBit(final long[] bits, final int position) {
+        bits[position >>> WORD_SHIFT] |= 1L << position;
+    }
+}
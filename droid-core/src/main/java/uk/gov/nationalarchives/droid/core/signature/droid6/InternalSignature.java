@@ -163,6 +163,18 @@ public class InternalSignature extends SimpleElement {
         }
     }
     
+    /**
+     * Sets how the byte sequences of this signature are matched against files.
+     *
+     * @param engine The engine to match byte sequences with.
+     */
+    public final void setMatchingEngine(final SequenceMatchingEngine engine) {
+        final int numSequences = byteSequences.size();
+        for (int sequenceIndex = 0; sequenceIndex < numSequences; sequenceIndex++) {
+            byteSequences.get(sequenceIndex).setMatchingEngine(engine);
+        }
+    }
+
     /**
      * 
      * @return Whether the signature is valid or not.
@@ -54,12 +54,15 @@
 package uk.gov.nationalarchives.droid.core.signature.droid6;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 import uk.gov.nationalarchives.droid.core.signature.xml.SimpleElement;
@@ -83,7 +86,51 @@ public class InternalSignatureCollection extends SimpleElement {
     
     private List<InternalSignature> intSigs = new ArrayList<InternalSignature>(DEFAULT_COLLECTION_SIZE);
     private Map<Integer, InternalSignature> sigsByID = new HashMap<Integer, InternalSignature>();
-    
+
+    /**
+     * Searches for the anchors of all signatures which must scan the file in one pass.
+     * It is only built once the signatures are prepared for use, and is rebuilt if the
+     * signatures change afterwards, before it is next used, as it refers to signatures by their position in the list.
+     */
+    private volatile MultiAnchorSearcher anchorSearcher;
+
+    /**
+     * Selects the signatures which can match the first and last few bytes of a file.
+     * Built and rebuilt at the same time as the anchor searcher.
+     */
+    private volatile BofEofDispatchIndex dispatchIndex;
+
+    /**
+     * Records the cost of evaluating each signature, if set.
+     */
+    private volatile SignatureProfiler profiler;
+
+    /**
+     * The priorities between the file formats the signatures identify, if set.
+     */
+    private volatile FormatPriorities formatPriorities;
+
+    /**
+     * The puids of formats whose signatures must always be evaluated, even if a higher priority format matched.
+     */
+    private final Set<String> retainedPuids = new HashSet<String>();
+
+    /**
+     * Skips signatures whose matches would be removed as lower priority hits.
+     * Built with the other indexes, if the format priorities are set.
+     */
+    private volatile SignaturePriorityIndex priorityIndex;
+
+    /**
+     * Whether to skip evaluating signatures whose matches would be removed as lower priority hits.
+     */
+    private volatile boolean skipLowerPriorityMatches;
+
+    /**
+     * Whether the signatures changed after the indexes were built, so they must be rebuilt before they are used.
+     */
+    private volatile boolean indexesStale;
+
     /**
      * Runs all the signatures against the target file,
      * adding a hit for each of them, if any of them match.
@@ -93,19 +140,107 @@ public class InternalSignatureCollection extends SimpleElement {
      * @return A list of the internal signatures which matched. 
      */
     public List<InternalSignature> getMatchingSignatures(ByteReader targetFile, long maxBytesToScan) {
+        return getMatchingSignatures(targetFile, maxBytesToScan, new MatchContext());
+    }
+
+    /**
+     * Runs all the signatures against the target file, using working storage in a context
+     * which can be reused for the next file.
+     *
+     * @param targetFile The file to match the signatures against.
+     * @param maxBytesToScan The maximum bytes to scan.
+     * @param context The working storage to use, which must not be in use by another thread.
+     * @return A list of the internal signatures which matched, owned by the context.
+     *         It is only valid until the context is next used.
+     */
+    public List<InternalSignature> getMatchingSignatures(ByteReader targetFile, long maxBytesToScan,
+                                                         MatchContext context) {
         //BNO: intSigs here represents all the available binary signatures..
-        List<InternalSignature> matchingSigs = new ArrayList<InternalSignature>();
+        if (indexesStale) {
+            rebuildStaleIndexes();
+        }
+        final List<InternalSignature> matchingSigs = context.getMatchingSignatures();
         if (targetFile.getNumBytes() > 0) {
-            final int stop = intSigs.size();
-            for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
-                final InternalSignature internalSig = intSigs.get(sigIndex);
-                if (internalSig.matches(targetFile, maxBytesToScan)) {
-                    matchingSigs.add(internalSig);
-                }
+            final boolean[] candidates = findCandidates(targetFile, maxBytesToScan, context);
+            final SignaturePriorityIndex priorities = skipLowerPriorityMatches ? priorityIndex : null;
+            if (priorities == null || priorities.getNumSignatures() != intSigs.size()) {
+                addMatchingSignatures(targetFile, maxBytesToScan, candidates, matchingSigs);
+            } else {
+                addHigherPriorityMatches(targetFile, maxBytesToScan, candidates, priorities, context, matchingSigs);
             }
         }
         return matchingSigs;
     }
+
+    /*
+     * Evaluates every candidate signature in order, adding those which match.
+     */
+    private void addMatchingSignatures(ByteReader targetFile, long maxBytesToScan, boolean[] candidates,
+                                       List<InternalSignature> matchingSigs) {
+        final SignatureProfiler sigProfiler = profiler;
+        final int stop = intSigs.size();
+        for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
+            final InternalSignature internalSig = intSigs.get(sigIndex);
+            if (isCandidate(candidates, sigIndex) && matches(internalSig, targetFile, maxBytesToScan, sigProfiler)) {
+                matchingSigs.add(internalSig);
+            }
+        }
+    }
+
+    /*
+     * Evaluates candidate signatures in priority order, skipping any whose matches would be removed
+     * as lower priority hits.  Matches are added in the same order as all signatures are evaluated in.
+     */
+    private void addHigherPriorityMatches(ByteReader targetFile, long maxBytesToScan, boolean[] candidates,
+                                          SignaturePriorityIndex priorities, MatchContext context,
+                                          List<InternalSignature> matchingSigs) {
+        final SignatureProfiler sigProfiler = profiler;
+        final int stop = intSigs.size();
+        final boolean[] matched = context.getMatched(stop);
+        Arrays.fill(matched, 0, stop, false);
+        final long[] lowerPriority = context.getLowerPriorityBits(priorities.getNumWords());
+        Arrays.fill(lowerPriority, 0L);
+        for (int sigIndex : priorities.getEvaluationOrder()) {
+            if (isCandidate(candidates, sigIndex) && !priorities.canSkip(sigIndex, lowerPriority)
+                    && matches(intSigs.get(sigIndex), targetFile, maxBytesToScan, sigProfiler)) {
+                matched[sigIndex] = true;
+                priorities.addLowerPriorityFormats(sigIndex, lowerPriority);
+            }
+        }
+        for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
+            if (matched[sigIndex]) {
+                matchingSigs.add(intSigs.get(sigIndex));
+            }
+        }
+    }
+
+    private static boolean isCandidate(boolean[] candidates, int sigIndex) {
+        return candidates == null || sigIndex >= candidates.length || candidates[sigIndex];
+    }
+
+    private static boolean matches(InternalSignature internalSig, ByteReader targetFile, long maxBytesToScan,
+                                   SignatureProfiler sigProfiler) {
+        return sigProfiler == null ? internalSig.matches(targetFile, maxBytesToScan)
+                                   : sigProfiler.matches(internalSig, targetFile, maxBytesToScan);
+    }
+
+    /*
+     * Returns flags for each signature which could match the target file, or null if the indexes aren't built.
+     * The flags are held in the context, so the array may be longer than the number of signatures.
+     */
+    private boolean[] findCandidates(ByteReader targetFile, long maxBytesToScan, MatchContext context) {
+        final BofEofDispatchIndex index = dispatchIndex;
+        final MultiAnchorSearcher searcher = anchorSearcher;
+        boolean[] candidates = null;
+        if (index != null && searcher != null) {
+            final int numSignatures = index.getNumSignatures();
+            candidates = context.getCandidates(numSignatures);
+            index.findCandidates(targetFile.getWindowReader(), candidates, context.getCandidateBits(numSignatures));
+            searcher.findCandidates(targetFile, maxBytesToScan, candidates,
+                    context.getAnchorsFound(searcher.getNumAnchors()));
+        }
+        return candidates;
+    }
     
    
     /**
@@ -122,6 +257,46 @@ public class InternalSignatureCollection extends SimpleElement {
                 sigIterator.remove();
             }
         }
+        buildSearchIndexes();
+    }
+
+    /*
+     * Builds the indexes used to avoid evaluating signatures which can't match a file.
+     * Must be called after the signatures are prepared for use, and again whenever the
+     * position of signatures in the list changes.
+     */
+    private void buildSearchIndexes() {
+        indexesStale = false;
+        dispatchIndex = BofEofDispatchIndex.build(intSigs);
+        anchorSearcher = MultiAnchorSearcher.build(intSigs);
+        buildPriorityIndex();
+    }
+
+    /*
+     * Builds the priority index, if the format priorities are set.
+     */
+    private void buildPriorityIndex() {
+        final FormatPriorities priorities = formatPriorities;
+        priorityIndex = priorities == null ? null : SignaturePriorityIndex.build(intSigs, priorities, retainedPuids);
+    }
+
+    /*
+     * Marks the search indexes as stale if they have already been built, so they are rebuilt once before
+     * they are next used, rather than after every signature added or removed.
+     */
+    private void rebuildSearchIndexes() {
+        if (anchorSearcher != null) {
+            indexesStale = true;
+        }
+    }
+
+    /*
+     * Rebuilds stale search indexes, once only if several threads find them stale at the same time.
+     */
+    private synchronized void rebuildStaleIndexes() {
+        if (indexesStale) {
+            buildSearchIndexes();
+        }
     }
     
     private String getInvalidSignatureWarningMessage(InternalSignature sig) {
@@ -137,6 +312,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void addInternalSignature(final InternalSignature iSig) {
         intSigs.add(iSig);
         sigsByID.put(iSig.getID(), iSig);
+        rebuildSearchIndexes();
     }
     
     
@@ -147,6 +323,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void removeInternalSignature(final InternalSignature iSig) {
         intSigs.remove(iSig);
         sigsByID.remove(iSig.getID());
+        rebuildSearchIndexes();
     }
     
     
@@ -167,12 +344,85 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void setInternalSignatures(final List<InternalSignature> iSigs) {
         intSigs.clear();
         sigsByID.clear();
+        dispatchIndex = null;
+        anchorSearcher = null; // new signatures must be prepared for use before being indexed again.
+        priorityIndex = null;
+        indexesStale = false;
         for (InternalSignature signature : iSigs) {
             addInternalSignature(signature);
         }
     }
 
+    /**
+     * Sets a profiler to record the cost of evaluating each signature, or null to stop recording costs.
+     *
+     * @param profiler The profiler to record costs with, or null.
+     */
+    public final void setSignatureProfiler(final SignatureProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Sets the priorities between the file formats the signatures identify, which are used to skip
+     * signatures whose matches would be removed as lower priority hits.
+     *
+     * @param priorities The priorities between file formats, or null if there are none.
+     */
+    public final void setFormatPriorities(final FormatPriorities priorities) {
+        this.formatPriorities = priorities;
+        refreshPriorityIndex();
+    }
+
+    /**
+     * Sets whether to skip evaluating signatures whose matches would be removed as lower priority hits,
+     * once the format priorities are set.  This changes the matches returned, but not the hits which
+     * remain once lower priority hits are removed.  It is off by default.
+     *
+     * @param skip Whether to skip signatures whose matches would be removed as lower priority hits.
+     */
+    public final void setSkipLowerPriorityMatches(final boolean skip) {
+        this.skipLowerPriorityMatches = skip;
+    }
+
+    /**
+     * Ensures that signatures for the format with the given puid are always evaluated,
+     * even when skipping signatures whose matches would be removed as lower priority hits.
+     *
+     * @param puid The puid of the format whose matches must always be returned.
+     */
+    public final void retainMatchesForPuid(final String puid) {
+        synchronized (retainedPuids) {
+            if (retainedPuids.add(puid)) {
+                refreshPriorityIndex();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the priority index if the indexes have already been built.
+     * Must be called if the file formats of any signature change after the signatures are prepared for use.
+     */
+    public final void refreshPriorityIndex() {
+        if (anchorSearcher != null && !indexesStale) { // stale indexes rebuild the priority index with the others.
+            buildPriorityIndex();
+        }
+    }
+
     /* getters */
+    /**
+     * @return Whether signatures whose matches would be removed as lower priority hits are skipped.
+     */
+    public final boolean isSkipLowerPriorityMatches() {
+        return skipLowerPriorityMatches;
+    }
+
+    /**
+     * @return The profiler recording the cost of evaluating each signature, or null if there isn't one.
+     */
+    public final SignatureProfiler getSignatureProfiler() {
+        return profiler;
+    }
+
     /**
      * A list of internal signatures in the collection.
      * @return A list of internal signatures in the collection.
@@ -187,6 +437,7 @@ public class InternalSignatureCollection extends SimpleElement {
      */
     public void sortSignatures(final Comparator<InternalSignature> compareWith) {
         Collections.sort(intSigs, compareWith);
+        rebuildSearchIndexes();
     }
 
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Working storage for matching signatures against files, which can be reused from one file to the next.
+ *
+ * <p>Matching a file against the signatures needs a few arrays to select candidate signatures and
+ * track the formats already matched, and a list to return the matching signatures in.  Allocating
+ * them afresh for every file adds up when identifying many small files, so a context can be kept
+ * for each thread and passed in instead.</p>
+ *
+ * <p>A context is not thread-safe, and the list of matching signatures it returns is only valid until
+ * the context is next used.</p>
+ */
+public final class MatchContext {
+
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_BITS = 64;
+
+    private final List<InternalSignature> matchingSignatures = new ArrayList<>();
+    private boolean[] candidates = new boolean[0];
+    private long[] candidateBits = new long[0];
+    private boolean[] anchorsFound = new boolean[0];
+    private boolean[] matched = new boolean[0];
+    private long[] lowerPriorityBits = new long[0];
+
+    /**
+     * @return An empty list to add matching signatures to.
+     */
+    List<InternalSignature> getMatchingSignatures() {
+        matchingSignatures.clear();
+        return matchingSignatures;
+    }
+
+    /**
+     * @param numSignatures The number of signatures to flag.
+     * @return An array of at least numSignatures flags, whose contents are undefined.
+     */
+    boolean[] getCandidates(final int numSignatures) {
+        if (candidates.length < numSignatures) {
+            candidates = new boolean[numSignatures];
+        }
+        return candidates;
+    }
+
+    /**
+     * @param numSignatures The number of signatures to hold bits for.
+     * @return A bitset with exactly enough words for numSignatures bits, whose contents are undefined.
+     */
+    long[] getCandidateBits(final int numSignatures) {
+        final int numWords = (numSignatures + WORD_BITS - 1) >>> WORD_SHIFT;
+        if (candidateBits.length != numWords) {
+            candidateBits = new long[numWords];
+        }
+        return candidateBits;
+    }
+
+    /**
+     * @param numAnchors The number of anchors to flag.
+     * @return An array of at least numAnchors flags, whose contents are undefined.
+     */
+    boolean[] getAnchorsFound(final int numAnchors) {
+        if (anchorsFound.length < numAnchors) {
+            anchorsFound = new boolean[numAnchors];
+        }
+        return anchorsFound;
+    }
+
+    /**
+     * @param numSignatures The number of signatures to flag.
+     * @return An array of at least numSignatures flags, whose contents are undefined.
+     */
+    boolean[] getMatched(final int numSignatures) {
+        if (matched.length < numSignatures) {
+            matched = new boolean[numSignatures];
+        }
+        return matched;
+    }
+
+    /**
+     * @param numWords The number of words in a bitset of format positions.
+     * @return A bitset with exactly numWords words, whose contents are undefined.
+     */
+    long[] getLowerPriorityBits(final int numWords) {
+        if (lowerPriorityBits.length != numWords) {
+            lowerPriorityBits = new long[numWords];
+        }
+        return lowerPriorityBits;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Searches a file in a single pass for the anchor sequences of all the signatures
+ * which begin by scanning a wide window of the file, rather than checking a fixed position.
+ *
+ * <p>Each of these signatures would otherwise run its own searcher over the same bytes,
+ * even for files which can't possibly match them.  A signature can only match if the anchor
+ * of the first subsequence it evaluates exists within the window of offsets that subsequence
+ * is allowed to match in, so this searcher looks for the anchors of all of them at once.
+ * Each anchor is keyed on the single position within it which matches the fewest bytes.
+ * As each byte of the file is read, only the anchors keyed on that byte value are verified.</p>
+ *
+ * <p>Signatures whose anchors are not found don't need to be evaluated. Signatures whose
+ * anchors are found are still verified in full by the normal matching code.  Signatures
+ * which start by checking a narrow window are not indexed, as evaluating them directly is
+ * already cheap.</p>
+ *
+ * <p>The searcher is immutable once built, and can be shared between threads.</p>
+ */
+public final class MultiAnchorSearcher {
+
+    /**
+     * Signatures whose first search window is narrower than this are cheaper to evaluate directly.
+     */
+    private static final int MIN_SCAN_WIDTH = 16;
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int COMMON_BYTE_PENALTY = 8;
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final int numSignatures;
+    private final Anchor[] anchors;
+    private final int[][] anchorsForByte;
+    private final long maxForwardEnd;
+    private final long maxReverseDistance;
+    private final boolean hasForwardAnchors;
+    private final boolean hasReverseAnchors;
+
+    private MultiAnchorSearcher(final int numSignatures, final List<Anchor> anchorList) {
+        this.numSignatures = numSignatures;
+        this.anchors = anchorList.toArray(new Anchor[0]);
+        long forwardEnd = 0;
+        long reverseDistance = 0;
+        boolean forward = false;
+        boolean reverse = false;
+        final int[] anchorsPerByte = new int[BYTE_VALUES];
+        for (final Anchor anchor : anchors) {
+            if (anchor.fromEnd) {
+                reverse = true;
+                reverseDistance = Math.max(reverseDistance, anchor.maxStart);
+            } else {
+                forward = true;
+                forwardEnd = anchor.maxStart == UNBOUNDED
+                        ? UNBOUNDED : Math.max(forwardEnd, anchor.maxStart + anchor.matcher.length());
+            }
+            for (final byte value : anchor.getKeyMatcher().getMatchingBytes()) {
+                anchorsPerByte[value & BYTE_MASK]++;
+            }
+        }
+        this.maxForwardEnd = forwardEnd;
+        this.maxReverseDistance = reverseDistance;
+        this.hasForwardAnchors = forward;
+        this.hasReverseAnchors = reverse;
+        this.anchorsForByte = new int[BYTE_VALUES][];
+        for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+            anchorsForByte[byteValue] = anchorsPerByte[byteValue] == 0 ? null : new int[anchorsPerByte[byteValue]];
+        }
+        Arrays.fill(anchorsPerByte, 0);
+        for (int anchorIndex = 0; anchorIndex < anchors.length; anchorIndex++) {
+            for (final byte value : anchors[anchorIndex].getKeyMatcher().getMatchingBytes()) {
+                final int byteValue = value & BYTE_MASK;
+                anchorsForByte[byteValue][anchorsPerByte[byteValue]++] = anchorIndex;
+            }
+        }
+    }
+
+    /**
+     * Builds a searcher for the scanning signatures in a list of prepared signatures.
+     *
+     * @param signatures The list of signatures, which must already be prepared for use.
+     * @return A searcher for the anchors of all signatures which begin by scanning the file.
+     */
+    public static MultiAnchorSearcher build(final List<InternalSignature> signatures) {
+        final List<Anchor> anchorList = new ArrayList<>();
+        final int numSignatures = signatures.size();
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            final Anchor anchor = getScanningAnchor(sigIndex, signatures.get(sigIndex));
+            if (anchor != null) {
+                anchorList.add(anchor);
+            }
+        }
+        return new MultiAnchorSearcher(numSignatures, anchorList);
+    }
+
+    /**
+     * @return The number of signatures which this searcher has anchors for.
+     */
+    public int getNumAnchors() {
+        return anchors.length;
+    }
+
+    /**
+     * Scans the target file once for all anchors, and returns which signatures are
+     * still candidates for matching.  Signatures not indexed by this searcher are
+     * always candidates.
+     *
+     * @param targetFile The file to scan.
+     * @param maxBytesToScan The maximum bytes to scan, or a negative number (or zero) if unlimited.
+     * @return An array of flags indexed by signature position; true if the signature must be evaluated.
+     */
+    public boolean[] findCandidates(final ByteReader targetFile, final long maxBytesToScan) {
+        final boolean[] candidates = new boolean[numSignatures];
+        Arrays.fill(candidates, true);
+        findCandidates(targetFile, maxBytesToScan, candidates);
+        return candidates;
+    }
+
+    /**
+     * Scans the target file once for the anchors of signatures which are still candidates,
+     * and clears the flag for any signature whose anchor isn't found.  The scan stops as soon
+     * as all the anchors still needed have been found.
+     *
+     * @param targetFile The file to scan.
+     * @param maxBytesToScan The maximum bytes to scan, or a negative number (or zero) if unlimited.
+     * @param candidates An array of flags indexed by signature position; true if the signature must be evaluated.
+     */
+    public void findCandidates(final ByteReader targetFile, final long maxBytesToScan, final boolean[] candidates) {
+        findCandidates(targetFile, maxBytesToScan, candidates, new boolean[anchors.length]);
+    }
+
+    /**
+     * Scans the target file once for the anchors of signatures which are still candidates,
+     * using working storage supplied by the caller.
+     *
+     * @param targetFile The file to scan.
+     * @param maxBytesToScan The maximum bytes to scan, or a negative number (or zero) if unlimited.
+     * @param candidates An array of flags indexed by signature position; true if the signature must be evaluated.
+     * @param found An array of at least one flag per anchor, used as working storage.
+     */
+    void findCandidates(final ByteReader targetFile, final long maxBytesToScan, final boolean[] candidates,
+                        final boolean[] found) {
+        final int numAnchors = anchors.length;
+        if (numAnchors > 0 && candidates.length >= numSignatures) {
+            int alreadyExcluded = 0;
+            for (int anchorIndex = 0; anchorIndex < numAnchors; anchorIndex++) {
+                found[anchorIndex] = !candidates[anchors[anchorIndex].signatureIndex];
+                if (found[anchorIndex]) { // no need to look for anchors of signatures already excluded.
+                    alreadyExcluded++;
+                }
+            }
+            final int numFound = alreadyExcluded < numAnchors
+                    ? scanForAnchors(targetFile, maxBytesToScan, found, alreadyExcluded) : numAnchors;
+            if (numFound < numAnchors) {
+                for (int anchorIndex = 0; anchorIndex < numAnchors; anchorIndex++) {
+                    final int sigIndex = anchors[anchorIndex].signatureIndex;
+                    candidates[sigIndex] = candidates[sigIndex] && found[anchorIndex];
+                }
+            }
+        }
+    }
+
+    /*
+     * Scans the bytes at the start of the file which forward anchors can match in, and the
+     * bytes at the end of the file which reverse anchors can match in, reading each byte only once.
+     */
+    private int scanForAnchors(final ByteReader targetFile, final long maxBytesToScan,
+                               final boolean[] found, final int alreadyFound) {
+        final long fileLength = targetFile.getNumBytes();
+        final boolean limited = maxBytesToScan > 0 && maxBytesToScan < fileLength; // don't overflow on huge limits.
+        final long headLimit = limited ? maxBytesToScan + 1 : fileLength;
+        final long tailLimit = limited ? fileLength - 1 - maxBytesToScan : 0;
+        final long headEnd = hasForwardAnchors ? Math.min(headLimit, maxForwardEnd) : 0;
+        final long tailStart = hasReverseAnchors
+                ? Math.max(tailLimit, Math.max(0, fileLength - maxReverseDistance)) : fileLength;
+        final ScanLimits limits = new ScanLimits(fileLength, headLimit, tailLimit);
+        int numFound;
+        try {
+            if (tailStart <= headEnd) {
+                numFound = scanRegion(targetFile.getWindowReader(), 0, fileLength, limits, found, alreadyFound);
+            } else {
+                numFound = scanRegion(targetFile.getWindowReader(), 0, headEnd, limits, found, alreadyFound);
+                numFound = scanRegion(targetFile.getWindowReader(), tailStart, fileLength, limits, found, numFound);
+            }
+        } catch (IOException ex) {
+            // We can't tell what is in the file - so all the signatures must be evaluated normally.
+            Arrays.fill(found, true);
+            numFound = anchors.length;
+        }
+        return numFound;
+    }
+
+    //CHECKSTYLE:OFF - cyclomatic complexity: a single tight loop is the point of this method.
+    private int scanRegion(final WindowReader reader, final long from, final long to,
+                           final ScanLimits limits, final boolean[] found, final int alreadyFound) throws IOException {
+        final int numAnchors = anchors.length;
+        int numFound = alreadyFound;
+        long windowPos = from;
+        while (windowPos < to && numFound < numAnchors) {
+            final Window window = reader.getWindow(windowPos);
+            if (window == null) {
+                break;
+            }
+            final long windowStart = window.getWindowPosition();
+            final byte[] array = window.getArray();
+            final int arrayEnd = (int) Math.min(window.length(), to - windowStart);
+            for (int arrayPos = (int) (windowPos - windowStart); arrayPos < arrayEnd; arrayPos++) {
+                final int[] keyedAnchors = anchorsForByte[array[arrayPos] & BYTE_MASK];
+                if (keyedAnchors != null) {
+                    final long filePos = windowStart + arrayPos;
+                    for (final int anchorIndex : keyedAnchors) {
+                        if (!found[anchorIndex] && anchors[anchorIndex].matchesAt(reader, filePos, limits)) {
+                            found[anchorIndex] = true;
+                            if (++numFound == numAnchors) {
+                                return numFound;
+                            }
+                        }
+                    }
+                }
+            }
+            windowPos = windowStart + window.length();
+        }
+        return numFound;
+    }
+    //CHECKSTYLE:ON
+
+    /**
+     * Returns the anchor of the first subsequence a signature evaluates, if it scans a wide window.
+     *
+     * @param sigIndex The position of the signature in the list of signatures.
+     * @param signature The signature to get an anchor for.
+     * @return The anchor to search for, or null if the signature should be evaluated directly.
+     */
+    private static Anchor getScanningAnchor(final int sigIndex, final InternalSignature signature) {
+        Anchor anchor = null;
+        final List<ByteSequence> sequences = signature.getByteSequences();
+        if (!sequences.isEmpty() && !sequences.get(0).hasIndirectOffset()) {
+            final ByteSequence first = sequences.get(0);
+            final List<SubSequence> subSequences = first.getSubSequences();
+            final boolean fromEnd = first.isAnchoredToEOF();
+            final SubSequence subSequence = subSequences.isEmpty() ? null
+                    : subSequences.get(fromEnd ? subSequences.size() - 1 : 0);
+            if (subSequence != null && subSequence.getAnchorMatcher() != null) {
+                anchor = new Anchor(sigIndex, subSequence, fromEnd);
+                if (anchor.maxStart != UNBOUNDED && anchor.maxStart - anchor.minStart < MIN_SCAN_WIDTH) {
+                    anchor = null;
+                }
+            }
+        }
+        return anchor;
+    }
+
+    /**
+     * The limits on where anchors can match in a particular file.
+     */
+    private static final class ScanLimits {
+        private final long fileLength;
+        private final long headLimit;
+        private final long tailLimit;
+
+        ScanLimits(final long fileLength, final long headLimit, final long tailLimit) {
+            this.fileLength = fileLength;
+            this.headLimit = headLimit;
+            this.tailLimit = tailLimit;
+        }
+    }
+
+    /**
+     * The anchor of the first subsequence of a signature, and the window of offsets it can start at.
+     *
+     * <p>For forward anchors, the start of the anchor is an offset from the start of the file.
+     * For anchors searched backwards from the end of the file, the min and max start are the
+     * distance back from the end of the file the anchor can start at.</p>
+     */
+    private static final class Anchor {
+        private final int signatureIndex;
+        private final SequenceMatcher matcher;
+        private final int keyPosition;
+        private final boolean fromEnd;
+        private final long minStart;
+        private final long maxStart;
+
+        Anchor(final int signatureIndex, final SubSequence subSequence, final boolean fromEnd) {
+            this.signatureIndex = signatureIndex;
+            this.matcher = subSequence.getAnchorMatcher();
+            this.keyPosition = getKeyPosition(matcher);
+            this.fromEnd = fromEnd;
+            if (fromEnd) {
+                final int length = matcher.length();
+                this.minStart = length + subSequence.getMinFragmentLength(false) + subSequence.getMinSeqOffset();
+                this.maxStart = subSequence.isFullFileScan() ? UNBOUNDED
+                        : length + subSequence.getMaxFragmentLength(false) + subSequence.getMaxSeqOffset();
+            } else {
+                this.minStart = subSequence.getMinFragmentLength(true) + subSequence.getMinSeqOffset();
+                this.maxStart = subSequence.isFullFileScan() ? UNBOUNDED
+                        : subSequence.getMaxFragmentLength(true) + subSequence.getMaxSeqOffset();
+            }
+        }
+
+        ByteMatcher getKeyMatcher() {
+            return matcher.getMatcherForPosition(keyPosition);
+        }
+
+        boolean matchesAt(final WindowReader reader, final long keyFilePosition,
+                          final ScanLimits limits) throws IOException {
+            final long start = keyFilePosition - keyPosition;
+            final long end = start + matcher.length();
+            final boolean inWindow;
+            if (fromEnd) {
+                final long distance = limits.fileLength - start;
+                inWindow = start >= limits.tailLimit && distance >= minStart && distance <= maxStart
+                        && end <= limits.fileLength;
+            } else {
+                inWindow = start >= minStart && start <= maxStart && end <= limits.headLimit;
+            }
+            return inWindow && start >= 0 && matcher.matches(reader, start);
+        }
+
+        /**
+         * Finds the position in an anchor which matches the fewest byte values,
+         * avoiding positions that match very common bytes (zero or 0xFF) where possible.
+         *
+         * @param anchor The anchor to find a key position for.
+         * @return The position in the anchor to key the anchor on.
+         */
+        private static int getKeyPosition(final SequenceMatcher anchor) {
+            int bestPosition = 0;
+            int bestCost = Integer.MAX_VALUE;
+            final int length = anchor.length();
+            for (int position = 0; position < length; position++) {
+                final ByteMatcher byteMatcher = anchor.getMatcherForPosition(position);
+                int cost = byteMatcher.getNumberOfMatchingBytes();
+                if (byteMatcher.matches((byte) 0) || byteMatcher.matches((byte) BYTE_MASK)) {
+                    cost += COMMON_BYTE_PENALTY;
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestPosition = position;
+                }
+            }
+            return bestPosition;
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+
+/**
+ * An index of the file format priorities of each signature, used to skip evaluating signatures whose
+ * matches would only be removed again as lower priority hits.
+ *
+ * <p>Once some signatures have matched, a signature can be skipped if every format it identifies is one
+ * the matching formats have priority over, and so is every format those have priority over in turn.
+ * Its hits would then be removed without changing which other hits are removed.  To make that happen as
+ * often as possible, signatures for formats which have priority over others are evaluated first.</p>
+ *
+ * <p>Signatures for formats whose hits must always be reported, for example to trigger container
+ * identification, are never skipped.</p>
+ *
+ * <p>The index is immutable once built, and can be shared between threads.</p>
+ */
+public final class SignaturePriorityIndex {
+
+    private final FormatPriorities priorities;
+
+    /*
+     * For each signature, the positions of the formats it identifies.
+     */
+    private final int[][] formatPositions;
+
+    /*
+     * For each signature, whether it can ever be skipped.
+     */
+    private final boolean[] skippable;
+
+    /*
+     * The order to evaluate signatures in, by their position in the list.
+     */
+    private final int[] evaluationOrder;
+
+    private SignaturePriorityIndex(final List<InternalSignature> signatures, final FormatPriorities priorities,
+                                   final Set<String> retainedPuids) {
+        this.priorities = priorities;
+        final int numSignatures = signatures.size();
+        this.formatPositions = new int[numSignatures][];
+        this.skippable = new boolean[numSignatures];
+        final int[] ranks = new int[numSignatures];
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            final InternalSignature signature = signatures.get(sigIndex);
+            final int numFormats = signature.getNumFileFormats();
+            final int[] positions = new int[numFormats];
+            boolean canSkip = numFormats > 0;
+            int rank = numFormats > 0 ? Integer.MAX_VALUE : 0;
+            for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+                final FileFormat format = signature.getFileFormat(formatIndex);
+                positions[formatIndex] = priorities.getPosition(format.getID());
+                final int formatRank = priorities.getRank(positions[formatIndex]);
+                rank = Math.min(rank, formatRank);
+                canSkip &= formatRank > 0 && !retainedPuids.contains(format.getPUID());
+            }
+            formatPositions[sigIndex] = positions;
+            skippable[sigIndex] = canSkip;
+            ranks[sigIndex] = rank;
+        }
+        this.evaluationOrder = buildEvaluationOrder(ranks);
+    }
+
+    /**
+     * Builds a priority index for a list of signatures, whose file formats have already been set.
+     *
+     * @param signatures The signatures to index.
+     * @param priorities The priorities between the file formats of the signatures.
+     * @param retainedPuids The puids of formats whose signatures must never be skipped.
+     * @return A priority index for the signatures.
+     */
+    public static SignaturePriorityIndex build(final List<InternalSignature> signatures,
+                                               final FormatPriorities priorities,
+                                               final Set<String> retainedPuids) {
+        return new SignaturePriorityIndex(signatures, priorities, retainedPuids);
+    }
+
+    /**
+     * @return The number of signatures indexed.
+     */
+    public int getNumSignatures() {
+        return formatPositions.length;
+    }
+
+    /**
+     * @return The number of words needed for a bitset of lower priority formats.
+     */
+    public int getNumWords() {
+        return priorities.getNumWords();
+    }
+
+    /**
+     * @return The positions of the signatures in the order they should be evaluated.
+     *         The array must not be modified.
+     */
+    int[] getEvaluationOrder() {
+        return evaluationOrder;
+    }
+
+    /**
+     * @param sigIndex The position of a signature.
+     * @param lowerPriority A bitset of the formats which the signatures matched so far have priority over.
+     * @return Whether the signature can be skipped without changing the results once lower
+     *         priority hits are removed.
+     */
+    boolean canSkip(final int sigIndex, final long[] lowerPriority) {
+        if (!skippable[sigIndex]) {
+            return false;
+        }
+        for (int position : formatPositions[sigIndex]) {
+            if (!priorities.isRedundant(position, lowerPriority)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the formats which the formats of a matching signature have priority over to a bitset.
+     *
+     * @param sigIndex The position of a signature which matched.
+     * @param lowerPriority A bitset of the formats which the signatures matched so far have priority over.
+     */
+    void addLowerPriorityFormats(final int sigIndex, final long[] lowerPriority) {
+        for (int position : formatPositions[sigIndex]) {
+            priorities.addLowerPriorityFormats(position, lowerPriority);
+        }
+    }
+
+    /*
+     * Orders signatures by rank, keeping their existing order within each rank.
+     */
+    private static int[] buildEvaluationOrder(final int[] ranks) {
+        final Integer[] order = new Integer[ranks.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> ranks[i]));
+        final int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+
+/**
+ * Records how much each binary signature costs to evaluate.
+ *
+ * <p>For each signature it counts how many times it was evaluated, how many times it matched,
+ * the total time spent evaluating it, and the number of bytes in the windows its subsequences
+ * searched.  The bytes searched are an upper bound on the bytes actually read, as a search stops
+ * at the first match.  The costs can be written out as CSV or JSON, most expensive first, to find
+ * the signatures which are responsible for most of the time spent identifying files.</p>
+ *
+ * <p>Profiling is off unless a profiler is set on a signature file.  The counters are striped,
+ * so many identification threads can record costs without contending with each other.</p>
+ */
+public final class SignatureProfiler {
+
+    private static final String CSV_HEADER =
+            "Signature ID,PUIDs,Unanchored,Evaluations,Hits,Total nanos,Mean nanos,Bytes searched\n";
+
+    /*
+     * The number of profilers currently recording costs.  Subsequences only count the bytes they search
+     * when there is at least one, so there is almost no overhead when profiling is off.
+     */
+    private static final AtomicInteger ACTIVE_PROFILERS = new AtomicInteger();
+    private static volatile boolean countBytes;
+
+    /*
+     * The bytes searched by the signature currently being evaluated on each thread.
+     */
+    private static final ThreadLocal<long[]> BYTES_SEARCHED = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ConcurrentMap<Integer, SignatureCost> costs = new ConcurrentHashMap<>();
+    private boolean active;
+
+    /**
+     * Creates a profiler which is recording costs.
+     */
+    public SignatureProfiler() {
+        start();
+    }
+
+    /**
+     * Records that a subsequence searched a window of bytes, if any profiler is recording costs.
+     *
+     * @param numBytes The number of bytes in the window searched.
+     */
+    static void addBytesSearched(final long numBytes) {
+        if (countBytes && numBytes > 0) {
+            BYTES_SEARCHED.get()[0] += numBytes;
+        }
+    }
+
+    /**
+     * Starts recording costs, if the profiler is not already recording them.
+     */
+    public synchronized void start() {
+        if (!active) {
+            active = true;
+            countBytes = ACTIVE_PROFILERS.incrementAndGet() > 0;
+        }
+    }
+
+    /**
+     * Stops recording the bytes searched by signatures.  The costs recorded so far are kept.
+     */
+    public synchronized void stop() {
+        if (active) {
+            active = false;
+            countBytes = ACTIVE_PROFILERS.decrementAndGet() > 0;
+        }
+    }
+
+    /**
+     * Evaluates a signature against a file, recording its cost.
+     *
+     * @param signature The signature to evaluate.
+     * @param targetFile The file to match the signature against.
+     * @param maxBytesToScan The maximum bytes to scan.
+     * @return Whether the signature matches the file.
+     */
+    public boolean matches(final InternalSignature signature, final ByteReader targetFile, final long maxBytesToScan) {
+        final long[] bytesSearched = BYTES_SEARCHED.get();
+        bytesSearched[0] = 0;
+        final long startTime = System.nanoTime();
+        final boolean matched = signature.matches(targetFile, maxBytesToScan);
+        final long elapsed = System.nanoTime() - startTime;
+        getCost(signature).add(matched, elapsed, bytesSearched[0]);
+        return matched;
+    }
+
+    /**
+     * @param signatureID The id of a signature.
+     * @return The costs recorded for the signature, or null if it has not been evaluated.
+     */
+    public SignatureCost getCost(final int signatureID) {
+        return costs.get(signatureID);
+    }
+
+    /**
+     * @return The costs recorded for all signatures evaluated, in descending order of total time.
+     */
+    public List<SignatureCost> getCosts() {
+        final List<SignatureCost> result = new ArrayList<>(costs.values());
+        result.sort(Comparator.comparingLong(SignatureCost::getTotalNanos).reversed()
+                .thenComparingInt(SignatureCost::getSignatureID));
+        return result;
+    }
+
+    /**
+     * Discards all the costs recorded so far.
+     */
+    public void reset() {
+        costs.clear();
+    }
+
+    /**
+     * Writes the costs out as CSV, most expensive first.
+     *
+     * @param writer The writer to write to.
+     * @throws IOException If there was a problem writing.
+     */
+    public void writeCsv(final Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        for (SignatureCost cost : getCosts()) {
+            writer.write(String.format("%d,%s,%b,%d,%d,%d,%d,%d%n", cost.getSignatureID(), cost.getPUIDs(),
+                    cost.isUnanchored(), cost.getEvaluations(), cost.getHits(), cost.getTotalNanos(),
+                    cost.getMeanNanos(), cost.getBytesSearched()));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the costs out as a JSON array, most expensive first.
+     *
+     * @param writer The writer to write to.
+     * @throws IOException If there was a problem writing.
+     */
+    public void writeJson(final Writer writer) throws IOException {
+        writer.write('[');
+        String separator = "\n";
+        for (SignatureCost cost : getCosts()) {
+            writer.write(separator);
+            writer.write(String.format("  {\"signatureId\": %d, \"puids\": \"%s\", \"unanchored\": %b, "
+                    + "\"evaluations\": %d, \"hits\": %d, \"totalNanos\": %d, \"meanNanos\": %d, "
+                    + "\"bytesSearched\": %d}", cost.getSignatureID(), cost.getPUIDs(), cost.isUnanchored(),
+                    cost.getEvaluations(), cost.getHits(), cost.getTotalNanos(), cost.getMeanNanos(),
+                    cost.getBytesSearched()));
+            separator = ",\n";
+        }
+        writer.write("\n]\n");
+        writer.flush();
+    }
+
+    private SignatureCost getCost(final InternalSignature signature) {
+        final SignatureCost cost = costs.get(signature.getID());
+        return cost != null ? cost : costs.computeIfAbsent(signature.getID(), id -> new SignatureCost(signature));
+    }
+
+    /**
+     * The costs recorded for a single signature.
+     */
+    public static final class SignatureCost {
+
+        private final int signatureID;
+        private final String puids;
+        private final boolean unanchored;
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder bytesSearched = new LongAdder();
+
+        private SignatureCost(final InternalSignature signature) {
+            this.signatureID = signature.getID();
+            this.puids = getPUIDs(signature);
+            this.unanchored = isUnanchored(signature);
+        }
+
+        private void add(final boolean matched, final long nanos, final long numBytes) {
+            evaluations.increment();
+            if (matched) {
+                hits.increment();
+            }
+            totalNanos.add(nanos);
+            bytesSearched.add(numBytes);
+        }
+
+        /**
+         * @return The id of the signature.
+         */
+        public int getSignatureID() {
+            return signatureID;
+        }
+
+        /**
+         * @return The PUIDs of the formats the signature matches, separated by spaces.
+         */
+        public String getPUIDs() {
+            return puids;
+        }
+
+        /**
+         * @return True if none of the signature's sequences are anchored to the start or end of a file,
+         *         so it will always scan up to the maximum bytes.
+         */
+        public boolean isUnanchored() {
+            return unanchored;
+        }
+
+        /**
+         * @return The number of times the signature was evaluated.
+         */
+        public long getEvaluations() {
+            return evaluations.sum();
+        }
+
+        /**
+         * @return The number of times the signature matched.
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * @return The total time spent evaluating the signature, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return The mean time spent evaluating the signature, in nanoseconds.
+         */
+        public long getMeanNanos() {
+            final long count = getEvaluations();
+            return count == 0 ? 0 : getTotalNanos() / count;
+        }
+
+        /**
+         * @return The total number of bytes in the windows searched by the signature.
+         */
+        public long getBytesSearched() {
+            return bytesSearched.sum();
+        }
+
+        private static String getPUIDs(final InternalSignature signature) {
+            final StringBuilder builder = new StringBuilder();
+            for (int formatIndex = 0; formatIndex < signature.getNumFileFormats(); formatIndex++) {
+                final FileFormat format = signature.getFileFormat(formatIndex);
+                if (formatIndex > 0) {
+                    builder.append(' ');
+                }
+                builder.append(format.getPUID());
+            }
+            return builder.toString();
+        }
+
+        private static boolean isUnanchored(final InternalSignature signature) {
+            for (ByteSequence sequence : signature.getByteSequences()) {
+                if (sequence.isAnchoredToBOF() || sequence.isAnchoredToEOF()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.bytes.OptimalByteMatcherFactory;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceSequenceMatcher;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
+
+/**
+ * Writes and reads a binary snapshot of a prepared signature file model.
+ *
+ * <p>Parsing the XML signature file compiles every sequence and fragment, which is a large part of the time
+ * taken to start DROID.  The snapshot records the model after it has been prepared, with every sequence
+ * already compiled to the bytes it matches at each position.  Reading it back builds the same model without
+ * parsing or compiling any expressions.  The model read back is prepared for use before it is returned.</p>
+ *
+ * <p>The layout of the snapshot is versioned.  Any change to it, or to the meaning of the values in it,
+ * must increase the {@link #FORMAT_VERSION}, so older snapshots are ignored rather than misread.</p>
+ */
+public final class SignatureSnapshotCodec {
+
+    /**
+     * The version of the snapshot layout.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x44534E50; // "DSNP"
+    private static final int BYTE_VALUES = 256;
+    private static final String ID = "ID";
+    private static final String VERSION = "Version";
+
+    private SignatureSnapshotCodec() {
+    }
+
+    /**
+     * Writes a snapshot of a prepared signature file.
+     *
+     * @param sigFile The signature file, which must already be prepared for use.
+     * @param checksum A checksum of the signature file the model was parsed from.
+     * @param out The output to write to.
+     * @throws IOException If there was a problem writing the snapshot.
+     */
+    public static void write(final FFSignatureFile sigFile, final String checksum,
+                             final DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(checksum);
+        writeNullableString(sigFile.getVersion(), out); // signature files need not have either attribute.
+        writeNullableString(sigFile.getDateCreated(), out);
+        final List<FileFormat> formats = sigFile.getFileFormatCollection().getFileFormats();
+        out.writeInt(formats.size());
+        for (final FileFormat format : formats) {
+            writeFileFormat(format, out);
+        }
+        final List<InternalSignature> signatures = sigFile.getSignatures();
+        out.writeInt(signatures.size());
+        for (final InternalSignature signature : signatures) {
+            writeSignature(signature, out);
+        }
+    }
+
+    /**
+     * Reads a snapshot of a signature file, if it was written from a signature file with the same checksum
+     * by the same version of the snapshot layout.
+     *
+     * @param in The input to read from.
+     * @param checksum The checksum of the signature file the snapshot must have been written from.
+     * @return A prepared signature file, or null if the snapshot is not for this signature file or layout.
+     * @throws IOException If there was a problem reading the snapshot.
+     */
+    public static FFSignatureFile read(final DataInput in, final String checksum) throws IOException {
+        FFSignatureFile sigFile = null;
+        if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && checksum.equals(in.readUTF())) {
+            sigFile = new FFSignatureFile();
+            setAttributeIfPresent(sigFile, VERSION, readNullableString(in));
+            setAttributeIfPresent(sigFile, "DateCreated", readNullableString(in));
+            final FileFormatCollection formats = new FileFormatCollection();
+            final int numFormats = in.readInt();
+            for (int formatIndex = 0; formatIndex < numFormats; formatIndex++) {
+                formats.addFileFormat(readFileFormat(in));
+            }
+            final InternalSignatureCollection signatures = new InternalSignatureCollection();
+            final int numSignatures = in.readInt();
+            for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+                signatures.addInternalSignature(readSignature(in));
+            }
+            sigFile.setFileFormatCollection(formats);
+            sigFile.setInternalSignatureCollection(signatures);
+            sigFile.prepareForUse();
+        }
+        return sigFile;
+    }
+
+    private static void writeFileFormat(final FileFormat format, final DataOutput out) throws IOException {
+        out.writeInt(format.getID());
+        writeNullableString(format.getName(), out);
+        writeNullableString(format.getVersion(), out);
+        writeNullableString(format.getPUID(), out);
+        writeNullableString(format.getMimeType(), out);
+        out.writeInt(format.getNumExtensions());
+        for (final String extension : format.getExtensions()) {
+            out.writeUTF(extension);
+        }
+        final int numSignatures = format.getNumInternalSignatures();
+        out.writeInt(numSignatures);
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            out.writeInt(format.getInternalSignatureID(sigIndex));
+        }
+        final int numPriorities = format.getNumHasPriorityOver();
+        out.writeInt(numPriorities);
+        for (int priorityIndex = 0; priorityIndex < numPriorities; priorityIndex++) {
+            out.writeInt(format.getHasPriorityOver(priorityIndex));
+        }
+    }
+
+    private static FileFormat readFileFormat(final DataInput in) throws IOException {
+        final FileFormat format = new FileFormat();
+        format.setAttributeValue(ID, Integer.toString(in.readInt()));
+        setAttribute(format, "Name", readNullableString(in));
+        setAttribute(format, VERSION, readNullableString(in));
+        setAttribute(format, "PUID", readNullableString(in));
+        setAttribute(format, "MIMEType", readNullableString(in));
+        final int numExtensions = in.readInt();
+        for (int extIndex = 0; extIndex < numExtensions; extIndex++) {
+            format.setExtension(in.readUTF());
+        }
+        final int numSignatures = in.readInt();
+        for (int sigIndex = 0; sigIndex < numSignatures; sigIndex++) {
+            format.setInternalSignatureID(Integer.toString(in.readInt()));
+        }
+        final int numPriorities = in.readInt();
+        for (int priorityIndex = 0; priorityIndex < numPriorities; priorityIndex++) {
+            format.setHasPriorityOverFileFormatID(Integer.toString(in.readInt()));
+        }
+        return format;
+    }
+
+    private static void writeSignature(final InternalSignature signature, final DataOutput out) throws IOException {
+        out.writeInt(signature.getID());
+        out.writeBoolean(signature.isSpecific());
+        final List<ByteSequence> sequences = signature.getByteSequences();
+        out.writeInt(sequences.size());
+        for (final ByteSequence sequence : sequences) {
+            out.writeUTF(sequence.getReference());
+            out.writeBoolean(sequence.isBigEndian());
+            out.writeInt(sequence.getIndirectOffsetLength());
+            out.writeInt(sequence.getIndirectOffsetLocation());
+            final List<SubSequence> subSequences = sequence.getSubSequences();
+            out.writeInt(subSequences.size());
+            for (final SubSequence subSequence : subSequences) {
+                out.writeInt(subSequence.getMinSeqOffset());
+                out.writeInt(subSequence.getMaxSeqOffset());
+                writeMatcher(subSequence.getAnchorMatcher(), out);
+                writeFragments(subSequence.getLeftFragments(), out);
+                writeFragments(subSequence.getRightFragments(), out);
+            }
+        }
+    }
+
+    private static InternalSignature readSignature(final DataInput in) throws IOException {
+        final InternalSignature signature = new InternalSignature();
+        signature.setAttributeValue(ID, Integer.toString(in.readInt()));
+        signature.setAttributeValue("Specificity", in.readBoolean() ? "Specific" : "Generic");
+        final int numSequences = in.readInt();
+        for (int seqIndex = 0; seqIndex < numSequences; seqIndex++) {
+            final ByteSequence sequence = new ByteSequence();
+            sequence.setReference(in.readUTF());
+            sequence.setEndianness(in.readBoolean() ? "Big-endian" : "Little-endian");
+            sequence.setIndirectOffsetLength(Integer.toString(in.readInt()));
+            sequence.setIndirectOffsetLocation(Integer.toString(in.readInt()));
+            final int numSubSequences = in.readInt();
+            for (int subIndex = 0; subIndex < numSubSequences; subIndex++) {
+                final int minSeqOffset = in.readInt();
+                final int maxSeqOffset = in.readInt();
+                final SequenceMatcher anchor = readMatcher(in);
+                final List<List<SideFragment>> leftFragments = readFragments(in);
+                final List<List<SideFragment>> rightFragments = readFragments(in);
+                sequence.addSubSequence(new SubSequence(anchor, leftFragments, rightFragments,
+                        minSeqOffset, maxSeqOffset));
+            }
+            signature.addByteSequence(sequence);
+        }
+        return signature;
+    }
+
+    private static void writeFragments(final List<List<SideFragment>> fragments,
+                                       final DataOutput out) throws IOException {
+        out.writeInt(fragments.size());
+        for (final List<SideFragment> alternatives : fragments) {
+            out.writeInt(alternatives.size());
+            for (final SideFragment fragment : alternatives) {
+                out.writeInt(fragment.getPosition());
+                out.writeInt(fragment.getMinOffset());
+                out.writeInt(fragment.getMaxOffset());
+                writeMatcher(fragment.getMatcher(), out);
+            }
+        }
+    }
+
+    private static List<List<SideFragment>> readFragments(final DataInput in) throws IOException {
+        final int numPositions = in.readInt();
+        final List<List<SideFragment>> fragments = new ArrayList<>(numPositions);
+        for (int position = 0; position < numPositions; position++) {
+            final int numAlternatives = in.readInt();
+            final List<SideFragment> alternatives = new ArrayList<>(numAlternatives);
+            for (int altIndex = 0; altIndex < numAlternatives; altIndex++) {
+                final int fragPosition = in.readInt();
+                final int minOffset = in.readInt();
+                final int maxOffset = in.readInt();
+                alternatives.add(new SideFragment(readMatcher(in), minOffset, maxOffset, fragPosition));
+            }
+            fragments.add(alternatives);
+        }
+        return fragments;
+    }
+
+    /*
+     * Matchers are written as the set of bytes they match at each position.
+     * A position which matches any byte is written as a count of 256, with no bytes following.
+     */
+    private static void writeMatcher(final SequenceMatcher matcher, final DataOutput out) throws IOException {
+        final int length = matcher.length();
+        out.writeInt(length);
+        for (int position = 0; position < length; position++) {
+            final ByteMatcher byteMatcher = matcher.getMatcherForPosition(position);
+            final int numBytes = byteMatcher.getNumberOfMatchingBytes();
+            out.writeShort(numBytes);
+            if (numBytes < BYTE_VALUES) {
+                out.write(byteMatcher.getMatchingBytes());
+            }
+        }
+    }
+
+    /*
+     * Rebuilds a matcher from the bytes it matches at each position.  Runs of single bytes are matched by
+     * a byte array, and any other positions by the most efficient byte matcher for the set of bytes.
+     */
+    private static SequenceMatcher readMatcher(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        final List<SequenceMatcher> parts = new ArrayList<>();
+        final byte[] run = new byte[length];
+        int runLength = 0;
+        for (int position = 0; position < length; position++) {
+            final int numBytes = in.readUnsignedShort();
+            if (numBytes == 1) {
+                run[runLength++] = in.readByte();
+            } else {
+                if (runLength > 0) {
+                    parts.add(new ByteSequenceMatcher(Arrays.copyOf(run, runLength)));
+                    runLength = 0;
+                }
+                parts.add(readByteMatcher(in, numBytes));
+            }
+        }
+        if (runLength > 0) {
+            parts.add(new ByteSequenceMatcher(Arrays.copyOf(run, runLength)));
+        }
+        return parts.size() == 1 ? parts.get(0) : new SequenceSequenceMatcher(parts);
+    }
+
+    private static ByteMatcher readByteMatcher(final DataInput in, final int numBytes) throws IOException {
+        final List<Byte> bytes = new ArrayList<>(Math.min(numBytes, BYTE_VALUES));
+        if (numBytes >= BYTE_VALUES) {
+            for (int byteValue = 0; byteValue < BYTE_VALUES; byteValue++) {
+                bytes.add((byte) byteValue);
+            }
+        } else {
+            for (int byteIndex = 0; byteIndex < numBytes; byteIndex++) {
+                bytes.add(in.readByte());
+            }
+        }
+        return OptimalByteMatcherFactory.FACTORY.create(bytes);
+    }
+
+    private static void setAttributeIfPresent(final FFSignatureFile sigFile, final String name,
+                                              final String value) {
+        if (value != null) {
+            sigFile.setAttributeValue(name, value);
+        }
+    }
+
+    private static void writeNullableString(final String value, final DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void setAttribute(final FileFormat format, final String name, final String value) {
+        if (value != null) {
+            format.setAttributeValue(name, value);
+        }
+    }
+
+}
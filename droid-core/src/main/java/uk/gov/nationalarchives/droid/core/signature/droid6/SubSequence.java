@@ -126,6 +126,7 @@ import net.byteseek.searcher.SearchResult;
 import net.byteseek.searcher.sequence.horspool.HorspoolFinalFlagSearcher;
 import net.byteseek.matcher.sequence.SequenceMatcher;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.WindowCursor;
 import uk.gov.nationalarchives.droid.core.signature.xml.SimpleElement;
 
 /**
@@ -383,6 +384,30 @@ public class SubSequence extends SimpleElement {
         return maxSeqOffset;
     }
 
+    /**
+     * @param leftFrag true to return the minimum length of the left fragments, false for the right fragments.
+     * @return The minimum number of bytes the left or right fragments can occupy, including their gaps.
+     */
+    public final int getMinFragmentLength(final boolean leftFrag) {
+        return leftFrag ? minLeftFragmentLength : minRightFragmentLength;
+    }
+
+    /**
+     * @param leftFrag true to return the maximum length of the left fragments, false for the right fragments.
+     * @return The maximum number of bytes the left or right fragments can occupy, including their gaps.
+     */
+    public final int getMaxFragmentLength(final boolean leftFrag) {
+        return leftFrag ? maxLeftFragmentLength : maxRightFragmentLength;
+    }
+
+    /**
+     * @return Whether this subsequence can be found anywhere after the previous one, rather than
+     *         within its minimum and maximum offsets.  Only valid once prepared for use.
+     */
+    public final boolean isFullFileScan() {
+        return fullFileScan;
+    }
+
     /**
      * Note: unclear whether this is used anymore.
      *
@@ -981,6 +1006,7 @@ public class SubSequence extends SimpleElement {
                 if (endSearchWindow < firstPossibleBytePosition) {
                     endSearchWindow = firstPossibleBytePosition;
                 }
+                SignatureProfiler.addBytesSearched(startSearchWindow - endSearchWindow + 1);
 
                 long matchPosition = startSearchWindow;
                 while (matchPosition >= endSearchWindow) {
@@ -1097,6 +1123,7 @@ public class SubSequence extends SimpleElement {
                 if (endSearchWindow > lastPossibleBytePosition) {
                     endSearchWindow = lastPossibleBytePosition;
                 }
+                SignatureProfiler.addBytesSearched(endSearchWindow - startSearchWindow + 1);
 
                 //long matchPosition = startSearchWindow;
                 long matchPosition = startSearchWindow;
@@ -1554,9 +1581,11 @@ public class SubSequence extends SimpleElement {
 
         //keep searching until either the sequence fragment is found or until the end of the search area has been
         // reached. Compare sequence with file contents directly at fileMarker positionInFile
+        final WindowCursor cursor = new WindowCursor(bytes);
+        final SequenceMatcher fragmentMatcher = fragment.getMatcher();
         while (searchDirectionL * (lastStartPosInFile - startPosInFile) >= 0L) {
             try {
-                if (fragment.matchesBytes(bytes, startPosInFile - byteOffset)) {
+                if (cursor.matches(fragmentMatcher, startPosInFile - byteOffset)) {
                     endPosInFile = startPosInFile + (numBytes * searchDirectionL) - searchDirectionL;
                     break;
                 }
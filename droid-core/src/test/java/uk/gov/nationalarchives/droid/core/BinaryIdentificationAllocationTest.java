@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that identifying a file reuses the working storage of its thread, and measures how many bytes
+ * are allocated identifying the same file over and over again.
+ */
+public class BinaryIdentificationAllocationTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/fmt";
+    private static final Path ONE_HIT_FILE = Paths.get(SKELETONS, "fmt-1000-signature-id-1363.tzx");
+    private static final int WARM_UP = 20000;
+    private static final int MEASURED = 5000;
+
+    /*
+     * Only the result collection returned for each request should be allocated.
+     */
+    private static final long MAX_BYTES_PER_FILE = 512;
+
+    private static BinarySignatureIdentifier droid;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile(SIGFILE);
+        droid.init();
+        droid.setMaxBytesToScan(65536);
+    }
+
+    @Test
+    public void testSameResultsAsIdentifyingWithHits() throws Exception {
+        for (Path file : getSkeletonFiles()) {
+            final List<String> expected = new ArrayList<>();
+            try (ByteReader reader = new IdentificationRequestByteReaderAdapter(openRequest(file))) {
+                droid.getSigFile().runFileIdentification(reader);
+                for (int i = 0; i < reader.getNumHits(); i++) {
+                    final String puid = reader.getHit(i).getFileFormatPUID();
+                    if (!expected.contains(puid)) {
+                        expected.add(puid);
+                    }
+                }
+            }
+            final FileSystemIdentificationRequest request = openRequest(file);
+            try {
+                assertEquals(expected, getPuids(droid.matchBinarySignatures(request)), "Results differ for " + file);
+            } finally {
+                request.close();
+            }
+        }
+    }
+
+    @Test
+    public void testResultsAreSharedBetweenRequests() throws Exception {
+        final FileSystemIdentificationRequest request = openRequest(ONE_HIT_FILE);
+        try {
+            final IdentificationResult first = droid.matchBinarySignatures(request).getResults().get(0);
+            final IdentificationResult second = droid.matchBinarySignatures(request).getResults().get(0);
+            assertSame(first, second);
+        } finally {
+            request.close();
+        }
+    }
+
+    @Test
+    public void testNoHitFileOnlyAllocatesResultCollection() throws Exception {
+        final Path file = tempDir.resolve("no-hit.bin");
+        final byte[] contents = new byte[2048];
+        Arrays.fill(contents, (byte) 'A');
+        Files.write(file, contents);
+        assertAllocationPerFile(file, 0);
+    }
+
+    @Test
+    public void testOneHitFileOnlyAllocatesResultCollection() throws Exception {
+        assertAllocationPerFile(ONE_HIT_FILE, 1);
+    }
+
+    private static void assertAllocationPerFile(Path file, int expectedHits) throws IOException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        final FileSystemIdentificationRequest request = openRequest(file);
+        try {
+            for (int i = 0; i < WARM_UP; i++) {
+                assertEquals(expectedHits, droid.matchBinarySignatures(request).getResults().size());
+            }
+            final long before = allocations.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < MEASURED; i++) {
+                droid.matchBinarySignatures(request);
+            }
+            final long bytesPerFile = (allocations.getCurrentThreadAllocatedBytes() - before) / MEASURED;
+            assertTrue(bytesPerFile <= MAX_BYTES_PER_FILE,
+                    "Identifying " + file + " allocated " + bytesPerFile + " bytes per file");
+        } finally {
+            request.close();
+        }
+    }
+
+    private static List<String> getPuids(IdentificationResultCollection results) {
+        return results.getResults().stream().map(IdentificationResult::getPuid).collect(Collectors.toList());
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(SKELETONS))) {
+            return files.filter(Files::isRegularFile).sorted().limit(200).collect(Collectors.toList());
+        }
+    }
+
+    private static FileSystemIdentificationRequest openRequest(Path file) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return request;
+    }
+}
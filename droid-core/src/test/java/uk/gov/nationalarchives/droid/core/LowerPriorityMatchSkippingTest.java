@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FormatPriorities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that skipping signatures whose hits would be removed as lower priority hits
+ * gives the same results once lower priority hits are removed.
+ */
+public class LowerPriorityMatchSkippingTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/";
+    private static final List<String> RETAINED_PUIDS = Arrays.asList("fmt/111", "x-fmt/263");
+
+    private static BinarySignatureIdentifier allSignatures;
+    private static BinarySignatureIdentifier skipping;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        allSignatures = new BinarySignatureIdentifier();
+        allSignatures.setSignatureFile(SIGFILE);
+        allSignatures.init();
+        skipping = new BinarySignatureIdentifier();
+        skipping.setSignatureFile(SIGFILE);
+        skipping.setSkipLowerPriorityMatches(true);
+        skipping.init();
+        for (String puid : RETAINED_PUIDS) {
+            skipping.retainMatchesForPuid(puid);
+        }
+    }
+
+    @Test
+    public void testSameResultsOnceLowerPriorityHitsRemoved() throws Exception {
+        int allHits = 0;
+        int skippingHits = 0;
+        for (Path file : getSkeletonFiles()) {
+            final IdentificationResultCollection expected = identify(allSignatures, file);
+            final IdentificationResultCollection actual = identify(skipping, file);
+            allHits += expected.getResults().size();
+            skippingHits += actual.getResults().size();
+            for (String puid : RETAINED_PUIDS) {
+                assertEquals(getPuids(expected).contains(puid), getPuids(actual).contains(puid),
+                        "Retained puid " + puid + " differs for " + file);
+            }
+            allSignatures.removeLowerPriorityHits(expected);
+            skipping.removeLowerPriorityHits(actual);
+            assertEquals(getPuids(expected), getPuids(actual), "Results differ for " + file);
+        }
+        assertTrue(skippingHits < allHits, "Some lower priority hits should have been skipped");
+    }
+
+    @Test
+    public void testPriorityIsNotTransitive() {
+        final FormatPriorities priorities = FormatPriorities.build(Arrays.asList(
+                newFormat(1, 2), newFormat(2, 3), newFormat(3, 0)));
+        final long[] lowerPriority = new long[priorities.getNumWords()];
+        priorities.addLowerPriorityFormats(priorities.getPosition(1), lowerPriority);
+        assertTrue(priorities.isLowerPriority(priorities.getPosition(2), lowerPriority));
+        assertFalse(priorities.isLowerPriority(priorities.getPosition(3), lowerPriority));
+        assertFalse(priorities.isRedundant(priorities.getPosition(2), lowerPriority));
+        assertEquals(0, priorities.getRank(priorities.getPosition(1)));
+        assertEquals(2, priorities.getRank(priorities.getPosition(3)));
+        assertEquals(-1, priorities.getPosition(4));
+    }
+
+    private static FileFormat newFormat(int id, int hasPriorityOver) {
+        final FileFormat format = new FileFormat();
+        format.setAttributeValue("ID", Integer.toString(id));
+        format.setAttributeValue("PUID", "test/" + id);
+        if (hasPriorityOver > 0) {
+            format.setHasPriorityOverFileFormatID(Integer.toString(hasPriorityOver));
+        }
+        return format;
+    }
+
+    private static IdentificationResultCollection identify(BinarySignatureIdentifier droid, Path file)
+            throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        try {
+            request.open(file);
+            return droid.matchBinarySignatures(request);
+        } finally {
+            request.close();
+        }
+    }
+
+    private static List<String> getPuids(IdentificationResultCollection results) {
+        return results.getResults().stream().map(IdentificationResult::getPuid).collect(Collectors.toList());
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a signature file loaded from a snapshot identifies files exactly as the parsed signature file does.
+ */
+public class SignatureFileSnapshotTest {
+
+    private static final Path SIGFILE = Paths.get("test_sig_files/DROID_SignatureFile_V119.xml");
+    private static final String SKELETONS = "test-skeletons/";
+
+    private static FFSignatureFile parsed;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void parseSignatures() throws Exception {
+        parsed = new SignatureFileParser().parseSigFile(SIGFILE);
+        parsed.prepareForUse();
+    }
+
+    @Test
+    public void testSnapshotIsWrittenOnFirstLoad() throws Exception {
+        SignatureFileSnapshot snapshot = new SignatureFileSnapshot(tempDir.resolve("snapshots"));
+        FFSignatureFile loaded = snapshot.load(SIGFILE);
+        assertTrue(Files.isRegularFile(snapshot.getSnapshotPath(SIGFILE)));
+        assertEquals(parsed.getVersion(), loaded.getVersion());
+    }
+
+    @Test
+    public void testSnapshotIdentifiesSameAsParsedSignatureFile() throws Exception {
+        SignatureFileSnapshot snapshot = new SignatureFileSnapshot(tempDir);
+        snapshot.load(SIGFILE);
+        FFSignatureFile loaded = snapshot.load(SIGFILE);
+
+        assertEquals(parsed.getVersion(), loaded.getVersion());
+        assertEquals(parsed.getDateCreated(), loaded.getDateCreated());
+        assertEquals(getSignatureIDs(parsed.getSignatures()), getSignatureIDs(loaded.getSignatures()));
+        assertEquals(parsed.getNumFileFormats(), loaded.getNumFileFormats());
+        for (int formatIndex = 0; formatIndex < parsed.getNumFileFormats(); formatIndex++) {
+            FileFormat expected = parsed.getFileFormat(formatIndex);
+            FileFormat actual = loaded.getFileFormat(formatIndex);
+            assertEquals(expected.getPUID(), actual.getPUID());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getMimeType(), actual.getMimeType());
+            assertEquals(expected.getExtensions(), actual.getExtensions());
+            assertEquals(expected.getFormatIdsHasPriorityOver(), actual.getFormatIdsHasPriorityOver());
+        }
+        assertEquals(getFormatIDs(parsed.getTentativeFormatsForExtension("txt")),
+                getFormatIDs(loaded.getTentativeFormatsForExtension("txt")));
+
+        for (Path file : getSkeletonFiles()) {
+            assertEquals(identify(parsed, file), identify(loaded, file), "Identification differs for " + file);
+        }
+    }
+
+    @Test
+    public void testSnapshotIsRewrittenWhenSignatureFileChanges() throws Exception {
+        Path sigFile = tempDir.resolve("signatures.xml");
+        Files.copy(SIGFILE, sigFile);
+        SignatureFileSnapshot snapshot = new SignatureFileSnapshot(tempDir.resolve("snapshots"));
+        snapshot.load(sigFile);
+        byte[] firstSnapshot = Files.readAllBytes(snapshot.getSnapshotPath(sigFile));
+
+        Files.write(sigFile, "\n<!-- changed -->\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNotNull(snapshot.load(sigFile));
+        byte[] secondSnapshot = Files.readAllBytes(snapshot.getSnapshotPath(sigFile));
+        assertNotEquals(new String(firstSnapshot, StandardCharsets.ISO_8859_1),
+                new String(secondSnapshot, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testSnapshotOfSignatureFileWithoutVersion() throws Exception {
+        Path sigFile = tempDir.resolve("unversioned.xml");
+        String xml = new String(Files.readAllBytes(SIGFILE), StandardCharsets.UTF_8);
+        Files.write(sigFile, xml.replaceFirst(" Version=\"119\"", "").getBytes(StandardCharsets.UTF_8));
+        SignatureFileSnapshot snapshot = new SignatureFileSnapshot(tempDir.resolve("snapshots"));
+        snapshot.load(sigFile);
+        assertTrue(Files.isRegularFile(snapshot.getSnapshotPath(sigFile)));
+
+        FFSignatureFile loaded = snapshot.load(sigFile);
+        assertEquals(new SignatureFileParser().parseSigFile(sigFile).getVersion(), loaded.getVersion());
+        assertEquals(parsed.getDateCreated(), loaded.getDateCreated());
+        assertEquals(parsed.getSignatures().size(), loaded.getSignatures().size());
+    }
+
+    @Test
+    public void testCorruptSnapshotFallsBackToParsing() throws Exception {
+        SignatureFileSnapshot snapshot = new SignatureFileSnapshot(tempDir);
+        Files.write(snapshot.getSnapshotPath(SIGFILE), new byte[] {1, 2, 3});
+        FFSignatureFile loaded = snapshot.load(SIGFILE);
+        assertEquals(parsed.getSignatures().size(), loaded.getSignatures().size());
+    }
+
+    private static List<Integer> getSignatureIDs(List<InternalSignature> signatures) {
+        return signatures.stream().map(InternalSignature::getID).collect(Collectors.toList());
+    }
+
+    private static List<Integer> getFormatIDs(List<FileFormat> formats) {
+        return formats == null ? null : formats.stream().map(FileFormat::getID).collect(Collectors.toList());
+    }
+
+    private static List<String> identify(FFSignatureFile sigFile, Path file) throws Exception {
+        final List<String> puids = new ArrayList<>();
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        try (ByteReader reader = new IdentificationRequestByteReaderAdapter(request)) {
+            sigFile.runFileIdentification(reader);
+            for (int hitIndex = 0; hitIndex < reader.getNumHits(); hitIndex++) {
+                puids.add(reader.getHit(hitIndex).getFileFormatPUID());
+            }
+        }
+        return puids;
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
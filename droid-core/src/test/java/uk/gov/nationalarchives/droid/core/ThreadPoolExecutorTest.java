@@ -42,6 +42,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.Before;
@@ -61,7 +62,7 @@ public class ThreadPoolExecutorTest {
 
     @Before
     public void setup() {
-        startLatch = new CountDownLatch(11);
+        startLatch = new CountDownLatch(10);
         stopLatch = new CountDownLatch(1);
         factory = new BlockingThreadPoolExecutorFactory();
     }
@@ -90,13 +91,17 @@ public class ThreadPoolExecutorTest {
         t.start();
         
         startLatch.await();
-        assertEquals(0, executor.getQueue().size());
+        awaitCount(count, 15);
         
-        // We expect 10 tasks running
-        assertEquals(10, count.intValue());
+        // We expect 10 tasks running, 5 queued, and the submitting thread blocked rather than running a task.
+        Thread.sleep(100);
+        assertEquals(5, executor.getQueue().size());
+        assertEquals(15, count.intValue());
         
         stopLatch.countDown();
-        executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+        t.join(5000);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
         assertEquals(0, executor.getQueue().size());
         assertEquals(22, count.intValue());
         
@@ -126,10 +131,10 @@ public class ThreadPoolExecutorTest {
         t.start();
         
         startLatch.await();
-        assertEquals(0, executor.getQueue().size());
+        awaitCount(count, 15);
         
-        // We expect 10 tasks running
-        assertEquals(10, count.intValue());
+        // We expect 10 tasks running and 5 queued
+        assertEquals(5, executor.getQueue().size());
         
         executor.shutdown();
         try {
@@ -139,12 +144,49 @@ public class ThreadPoolExecutorTest {
             
         }
         
+        // The blocked submitter gives up once the pool has shut down.
+        t.join(5000);
         stopLatch.countDown();
-        executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+        executor.awaitTermination(5, TimeUnit.SECONDS);
         assertEquals(0, executor.getQueue().size());
-        // We expect the 10 tasks which have already been queued to have run.
-        assertEquals(11, count.intValue());
+        // We expect only the 15 tasks which were running or queued to have been accepted.
+        assertEquals(15, count.intValue());
+        
+    }
+    
+    @Test
+    public void testPipelineThreadRunsTaskWhenPoolIsSaturated() throws Exception {
+        factory.setCorePoolSize(1);
+        factory.setMaxPoolSize(1);
+        factory.setWorkQueueSize(1);
+        factory.setThreadNamePrefix("stage-thread-");
+        
+        final ThreadPoolExecutor executor = factory.newInstance();
+        
+        // A task running in the pool which submits more work than the pool can take must not block on itself.
+        Future<String> result = executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                executor.submit(new TestTask());
+                stopLatch.countDown();
+                return executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return Thread.currentThread().getName();
+                    }
+                }).get();
+            }
+        });
         
+        assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("stage-thread-"));
+        executor.shutdown();
+    }
+    
+    private static void awaitCount(AtomicInteger count, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && count.intValue() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.intValue());
     }
     
     @Test
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the top and tail of a file buffered for the binary signatures covers every byte they can match.
+ */
+public class TopAndTailExtentTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/";
+    private static final long MAX_BYTES_TO_SCAN = 65536;
+
+    private static BinarySignatureIdentifier droid;
+
+    @BeforeAll
+    public static void initDroid() throws Exception {
+        droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile(SIGFILE);
+        droid.init();
+    }
+
+    @Test
+    public void testExtentFollowsMaxBytesToScan() {
+        droid.setMaxBytesToScan(-1);
+        assertEquals(TopAndTailExtent.MAX_BYTES, droid.getTopAndTailExtent().getTopBytes());
+        droid.setMaxBytesToScan(MAX_BYTES_TO_SCAN);
+        final TopAndTailExtent extent = droid.getTopAndTailExtent();
+        assertTrue(extent.getTopBytes() >= MAX_BYTES_TO_SCAN && extent.getTopBytes() < TopAndTailExtent.MAX_BYTES);
+        assertTrue(extent.getTailBytes() >= MAX_BYTES_TO_SCAN && extent.getTailBytes() < TopAndTailExtent.MAX_BYTES);
+    }
+
+    @Test
+    public void testSameResultsWithSignatureExtent() throws IOException {
+        droid.setMaxBytesToScan(MAX_BYTES_TO_SCAN);
+        final TopAndTailExtent extent = droid.getTopAndTailExtent();
+        final TopAndTailExtent smallest = new TopAndTailExtent(1, 1);
+        for (Path file : getSkeletonFiles()) {
+            final List<String> expected = identify(file, TopAndTailExtent.DEFAULT);
+            assertEquals(expected, identify(file, extent), "Results differ for " + file);
+            assertEquals(expected, identify(file, smallest), "Results differ for " + file);
+        }
+    }
+
+    private static List<String> identify(Path file, TopAndTailExtent extent) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        try (FileSystemIdentificationRequest request =
+                     new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()), extent)) {
+            request.open(file);
+            final List<String> puids = new ArrayList<>();
+            for (IdentificationResult result : droid.matchBinarySignatures(request).getResults()) {
+                puids.add(result.getPuid());
+            }
+            return puids;
+        }
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}
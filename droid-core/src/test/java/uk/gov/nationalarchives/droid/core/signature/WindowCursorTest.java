@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.sequence.ByteSequenceMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WindowCursorTest {
+
+    private static final int WINDOW_SIZE = 8;
+    private static final byte[] DATA = "0123456789ABCDEFGHIJ".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    public void testReadsEveryByteAcrossWindows() throws IOException {
+        final WindowCursor cursor = new WindowCursor(newReader());
+        for (int position = 0; position < DATA.length; position++) {
+            assertEquals(DATA[position], cursor.readByte(position));
+        }
+        for (int position = DATA.length - 1; position >= 0; position--) {
+            assertEquals(DATA[position], cursor.readByte(position));
+        }
+    }
+
+    @Test
+    public void testNoBytesOutsideFile() throws IOException {
+        final WindowCursor cursor = new WindowCursor(newReader());
+        assertEquals(-1, cursor.readByte(-1));
+        assertEquals(-1, cursor.readByte(DATA.length));
+        assertTrue(cursor.moveTo(DATA.length - 1));
+        assertFalse(cursor.moveTo(DATA.length));
+    }
+
+    @Test
+    public void testExposesWindowArray() throws IOException {
+        final WindowCursor cursor = new WindowCursor(newReader());
+        assertTrue(cursor.moveTo(WINDOW_SIZE + 1));
+        assertEquals(WINDOW_SIZE, cursor.getWindowStart());
+        assertEquals(WINDOW_SIZE * 2, cursor.getWindowEnd());
+        assertEquals(DATA[WINDOW_SIZE], cursor.getArray()[0]);
+    }
+
+    @Test
+    public void testMatchesInsideAndAcrossWindows() throws IOException {
+        final WindowCursor cursor = new WindowCursor(newReader());
+        final SequenceMatcher inside = new ByteSequenceMatcher("123");
+        final SequenceMatcher across = new ByteSequenceMatcher("6789AB");
+        final SequenceMatcher pastEnd = new ByteSequenceMatcher("IJK");
+        assertTrue(cursor.matches(inside, 1));
+        assertFalse(cursor.matches(inside, 2));
+        assertTrue(cursor.matches(across, 6));
+        assertFalse(cursor.matches(across, 7));
+        assertFalse(cursor.matches(pastEnd, DATA.length - 2));
+        assertFalse(cursor.matches(inside, -1));
+    }
+
+    private static WindowReader newReader() {
+        return new InputStreamReader(new ByteArrayInputStream(DATA), WINDOW_SIZE);
+    }
+}
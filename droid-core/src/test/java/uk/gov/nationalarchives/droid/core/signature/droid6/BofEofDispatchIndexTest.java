@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.SignatureFileParser;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that selecting signatures by the first and last bytes of a file never excludes a signature which matches.
+ */
+public class BofEofDispatchIndexTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/";
+
+    private static List<InternalSignature> signatures;
+    private static BofEofDispatchIndex index;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        FFSignatureFile sigFile = new SignatureFileParser().parseSigFile(Paths.get(SIGFILE));
+        sigFile.prepareForUse();
+        signatures = sigFile.getSignatures();
+        index = BofEofDispatchIndex.build(signatures);
+    }
+
+    @Test
+    public void testMostSignaturesAreConstrained() {
+        assertTrue(index.getNumConstrainedSignatures() > signatures.size() / 2);
+    }
+
+    @Test
+    public void testFewCandidatesForPdfHeader() {
+        byte[] pdf = "%PDF-1.4\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+        boolean[] candidates = index.findCandidates(new ByteArrayReader(pdf));
+        assertTrue(countCandidates(candidates) < signatures.size() / 2);
+    }
+
+    @Test
+    public void testEmptyIndexHasNoCandidates() {
+        BofEofDispatchIndex emptyIndex = BofEofDispatchIndex.build(List.of());
+        assertEquals(0, emptyIndex.findCandidates(new ByteArrayReader(new byte[10])).length);
+    }
+
+    @Test
+    public void testNoMatchingSignatureIsExcluded() throws Exception {
+        for (Path file : getSkeletonFiles()) {
+            if (Files.size(file) > 0) {
+                try (ByteReader reader = openReader(file)) {
+                    boolean[] candidates = index.findCandidates(reader.getWindowReader());
+                    for (int sigIndex = 0; sigIndex < signatures.size(); sigIndex++) {
+                        if (!candidates[sigIndex]) {
+                            assertFalse(signatures.get(sigIndex).matches(reader, -1),
+                                    "Signature " + signatures.get(sigIndex).getID() + " excluded but matches " + file);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int countCandidates(boolean[] candidates) {
+        int count = 0;
+        for (boolean candidate : candidates) {
+            if (candidate) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ByteReader openReader(Path file) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return new IdentificationRequestByteReaderAdapter(request);
+    }
+}
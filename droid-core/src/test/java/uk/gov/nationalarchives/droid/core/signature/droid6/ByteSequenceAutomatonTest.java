@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.SignatureFileParser;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that matching byte sequences as automata gives the same matches as searching for
+ * their anchors and fragments, for every byte sequence in the PRONOM signature file.
+ */
+public class ByteSequenceAutomatonTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/";
+
+    /*
+     * Signatures the fragment engine matches in skeleton files where their regular expression does not.
+     * When a fragment after a variable gap fails to match, the fragment engine backtracks to find a further
+     * occurrence of the fragment before the gap, but then counts that occurrence as matching the fragment
+     * which failed.  For example, 'MPX' [2c 3b] .{1,50} [2c 3b]'1.0' matches "MPX,...,4,0" as the second
+     * comma is found again.  The automaton does not match these.
+     */
+    private static final Map<String, Set<Integer>> FRAGMENT_FALSE_POSITIVES = new HashMap<>();
+    static {
+        FRAGMENT_FALSE_POSITIVES.put("fmt-102-signature-id-39.html", new HashSet<>(Arrays.asList(35, 36, 38)));
+        FRAGMENT_FALSE_POSITIVES.put("fmt-103-signature-id-40.htm", new HashSet<>(Arrays.asList(35, 36, 38)));
+        FRAGMENT_FALSE_POSITIVES.put("fmt-342-signature-id-473.mpx", new HashSet<>(Arrays.asList(474, 475)));
+        FRAGMENT_FALSE_POSITIVES.put("fmt-659-signature-id-991.ifc", new HashSet<>(Arrays.asList(1029, 1030)));
+        FRAGMENT_FALSE_POSITIVES.put("fmt-699-signature-id-1029.ifc", new HashSet<>(Arrays.asList(991, 1030)));
+        FRAGMENT_FALSE_POSITIVES.put("fmt-700-signature-id-1030.ifc", new HashSet<>(Arrays.asList(991, 1029)));
+    }
+
+    private static FFSignatureFile fragmentSigFile;
+    private static FFSignatureFile automatonSigFile;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        fragmentSigFile = loadSignatures(SequenceMatchingEngine.FRAGMENTS);
+        automatonSigFile = loadSignatures(SequenceMatchingEngine.AUTOMATON);
+    }
+
+    @Test
+    public void testEngineIsSelectedForEverySequence() {
+        for (InternalSignature signature : automatonSigFile.getSignatures()) {
+            for (ByteSequence sequence : signature.getByteSequences()) {
+                assertEquals(SequenceMatchingEngine.AUTOMATON, sequence.getMatchingEngine());
+            }
+        }
+        for (InternalSignature signature : fragmentSigFile.getSignatures()) {
+            for (ByteSequence sequence : signature.getByteSequences()) {
+                assertEquals(SequenceMatchingEngine.FRAGMENTS, sequence.getMatchingEngine());
+            }
+        }
+    }
+
+    @Test
+    public void testSelectingEngineByName() {
+        assertEquals(SequenceMatchingEngine.FRAGMENTS, SequenceMatchingEngine.forName(null));
+        assertEquals(SequenceMatchingEngine.FRAGMENTS, SequenceMatchingEngine.forName(""));
+        assertEquals(SequenceMatchingEngine.AUTOMATON, SequenceMatchingEngine.forName("automaton"));
+    }
+
+    @Test
+    public void testSameMatchesAsFragmentsAcrossSkeletons() throws Exception {
+        final List<InternalSignature> expectedSigs = fragmentSigFile.getSignatures();
+        final List<InternalSignature> actualSigs = automatonSigFile.getSignatures();
+        assertEquals(expectedSigs.size(), actualSigs.size());
+        final List<String> differences = new ArrayList<>();
+        int matches = 0;
+        for (Path file : getSkeletonFiles()) {
+            final String fileName = file.getFileName().toString();
+            final Set<Integer> falsePositives = FRAGMENT_FALSE_POSITIVES.getOrDefault(fileName, new HashSet<>());
+            for (long maxBytes : new long[] {-1, 64}) {
+                try (ByteReader reader = openReader(file)) {
+                    for (int sigIndex = 0; sigIndex < expectedSigs.size(); sigIndex++) {
+                        final List<ByteSequence> expected = expectedSigs.get(sigIndex).getByteSequences();
+                        final List<ByteSequence> actual = actualSigs.get(sigIndex).getByteSequences();
+                        final int sigId = expectedSigs.get(sigIndex).getID();
+                        for (int seqIndex = 0; seqIndex < expected.size(); seqIndex++) {
+                            final boolean expectedMatch = expected.get(seqIndex).matches(reader, maxBytes)
+                                    && !falsePositives.contains(sigId);
+                            final boolean actualMatch = actual.get(seqIndex).matches(reader, maxBytes);
+                            matches += expectedMatch ? 1 : 0;
+                            if (expectedMatch != actualMatch) {
+                                differences.add(fileName + " scanning " + maxBytes + " bytes, signature "
+                                        + sigId + ": " + expected.get(seqIndex).toRegularExpression(true));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(matches > 0);
+        assertEquals(new ArrayList<String>(), differences);
+    }
+
+    @Test
+    public void testFragmentBacktrackingFalsePositiveIsNotMatched() throws Exception {
+        final Path file = Paths.get(SKELETONS, "fmt", "fmt-342-signature-id-473.mpx");
+        assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("1.0"));
+        try (ByteReader reader = openReader(file)) {
+            assertTrue(getSequence(fragmentSigFile, 474).matches(reader, -1));
+            assertFalse(getSequence(automatonSigFile, 474).matches(reader, -1));
+            assertTrue(getSequence(automatonSigFile, 473).matches(reader, -1));
+        }
+    }
+
+    private static ByteSequence getSequence(FFSignatureFile sigFile, int sigId) {
+        for (InternalSignature signature : sigFile.getSignatures()) {
+            if (signature.getID() == sigId) {
+                return signature.getByteSequences().get(0);
+            }
+        }
+        throw new IllegalArgumentException("No signature " + sigId);
+    }
+
+    private static FFSignatureFile loadSignatures(SequenceMatchingEngine engine) throws Exception {
+        final FFSignatureFile sigFile = new SignatureFileParser().parseSigFile(Paths.get(SIGFILE));
+        sigFile.prepareForUse();
+        sigFile.setSequenceMatchingEngine(engine);
+        return sigFile;
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ByteReader openReader(Path file) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return new IdentificationRequestByteReaderAdapter(request);
+    }
+}
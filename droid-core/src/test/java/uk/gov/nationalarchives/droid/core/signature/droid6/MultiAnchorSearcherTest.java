@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.SignatureFileParser;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that searching for the anchors of scanning signatures in one pass gives
+ * exactly the same matches as evaluating every signature against every file.
+ */
+public class MultiAnchorSearcherTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/";
+
+    private static FFSignatureFile sigFile;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        sigFile = new SignatureFileParser().parseSigFile(Paths.get(SIGFILE));
+        sigFile.prepareForUse();
+    }
+
+    @Test
+    public void testSearcherIndexesScanningSignatures() {
+        final MultiAnchorSearcher searcher = MultiAnchorSearcher.build(sigFile.getSignatures());
+        assertTrue(searcher.getNumAnchors() > 0);
+    }
+
+    @Test
+    public void testNoCandidatesInFileWithoutAnchors() throws Exception {
+        final List<InternalSignature> signatures = sigFile.getSignatures();
+        final MultiAnchorSearcher searcher = MultiAnchorSearcher.build(signatures);
+        final Path emptyish = Files.createTempFile("anchors", ".bin");
+        try {
+            Files.write(emptyish, new byte[1024]);
+            try (ByteReader reader = openReader(emptyish)) {
+                final boolean[] candidates = searcher.findCandidates(reader, -1);
+                int excluded = 0;
+                for (boolean candidate : candidates) {
+                    if (!candidate) {
+                        excluded++;
+                    }
+                }
+                assertTrue(excluded > 0, "Some scanning signatures should be excluded for a file of zeros");
+            }
+        } finally {
+            Files.delete(emptyish);
+        }
+    }
+
+    @Test
+    public void testSameMatchesAsEvaluatingAllSignatures() throws Exception {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(sigFile.getSignatures());
+        final List<InternalSignature> unindexed = new ArrayList<>(collection.getInternalSignatures());
+        collection.prepareForUse();
+
+        for (Path file : getSkeletonFiles()) {
+            for (long maxBytes : new long[] {-1, 64, Long.MAX_VALUE}) {
+                try (ByteReader reader = openReader(file)) {
+                    final List<InternalSignature> expected = new ArrayList<>();
+                    for (InternalSignature sig : unindexed) {
+                        if (sig.matches(reader, maxBytes)) {
+                            expected.add(sig);
+                        }
+                    }
+                    assertEquals(expected, collection.getMatchingSignatures(reader, maxBytes),
+                            "Matches differ for " + file + " scanning " + maxBytes + " bytes");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSearcherIsRebuiltWhenSignaturesRemoved() throws Exception {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(sigFile.getSignatures());
+        collection.prepareForUse();
+        final InternalSignature first = collection.getInternalSignatures().get(0);
+        collection.removeInternalSignature(first);
+        final Path file = getSkeletonFiles().get(0);
+        try (ByteReader reader = openReader(file)) {
+            assertFalse(collection.getMatchingSignatures(reader, -1).contains(first));
+        }
+    }
+
+    @Test
+    public void testSearcherIsRebuiltWhenSignaturesAddedOneAtATime() throws Exception {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(sigFile.getSignatures());
+        collection.prepareForUse();
+        final List<InternalSignature> signatures = new ArrayList<>(collection.getInternalSignatures());
+        for (InternalSignature signature : signatures) {
+            collection.removeInternalSignature(signature);
+        }
+        for (InternalSignature signature : signatures) {
+            collection.addInternalSignature(signature);
+        }
+        for (Path file : getSkeletonFiles().subList(0, 20)) {
+            try (ByteReader reader = openReader(file)) {
+                final List<InternalSignature> expected = new ArrayList<>();
+                for (InternalSignature sig : signatures) {
+                    if (sig.matches(reader, -1)) {
+                        expected.add(sig);
+                    }
+                }
+                assertEquals(expected, collection.getMatchingSignatures(reader, -1), "Matches differ for " + file);
+            }
+        }
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Stream.concat(Files.list(Paths.get(SKELETONS, "fmt")),
+                Files.list(Paths.get(SKELETONS, "x-fmt")))) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ByteReader openReader(Path file) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return new IdentificationRequestByteReaderAdapter(request);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.SignatureFileParser;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that recording the cost of each signature doesn't change what matches, and that the costs add up.
+ */
+public class SignatureProfilerTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V119.xml";
+    private static final String SKELETONS = "test-skeletons/fmt";
+
+    private static FFSignatureFile sigFile;
+
+    @BeforeAll
+    public static void loadSignatures() throws Exception {
+        sigFile = new SignatureFileParser().parseSigFile(Paths.get(SIGFILE));
+        sigFile.prepareForUse();
+    }
+
+    @Test
+    public void testProfilingGivesSameMatchesAndCountsThem() throws Exception {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(sigFile.getSignatures());
+        collection.prepareForUse();
+        final SignatureProfiler profiler = new SignatureProfiler();
+        try {
+            int totalHits = 0;
+            for (Path file : getSkeletonFiles()) {
+                try (ByteReader reader = openReader(file)) {
+                    collection.setSignatureProfiler(null);
+                    final List<InternalSignature> expected = collection.getMatchingSignatures(reader, -1);
+                    collection.setSignatureProfiler(profiler);
+                    final List<InternalSignature> actual = collection.getMatchingSignatures(reader, -1);
+                    assertEquals(expected, actual, "Matches differ when profiling " + file);
+                    totalHits += actual.size();
+                }
+            }
+            long recordedHits = 0;
+            long bytesSearched = 0;
+            for (SignatureProfiler.SignatureCost cost : profiler.getCosts()) {
+                assertTrue(cost.getHits() <= cost.getEvaluations());
+                recordedHits += cost.getHits();
+                bytesSearched += cost.getBytesSearched();
+            }
+            assertEquals(totalHits, recordedHits);
+            assertTrue(bytesSearched > 0, "Some bytes should have been searched");
+        } finally {
+            profiler.stop();
+        }
+    }
+
+    @Test
+    public void testCostsAreReportedMostExpensiveFirst() throws Exception {
+        final SignatureProfiler profiler = new SignatureProfiler();
+        try {
+            final Path file = getSkeletonFiles().get(0);
+            try (ByteReader reader = openReader(file)) {
+                for (InternalSignature signature : sigFile.getSignatures()) {
+                    profiler.matches(signature, reader, -1);
+                }
+            }
+        } finally {
+            profiler.stop();
+        }
+        final List<SignatureProfiler.SignatureCost> costs = profiler.getCosts();
+        assertEquals(sigFile.getSignatures().size(), costs.size());
+        for (int i = 1; i < costs.size(); i++) {
+            assertTrue(costs.get(i - 1).getTotalNanos() >= costs.get(i).getTotalNanos());
+        }
+
+        final StringWriter csv = new StringWriter();
+        profiler.writeCsv(csv);
+        final String[] lines = csv.toString().split("\\R");
+        assertEquals(costs.size() + 1, lines.length);
+        assertTrue(lines[0].startsWith("Signature ID,PUIDs"));
+        assertTrue(lines[1].startsWith(costs.get(0).getSignatureID() + ","));
+
+        final StringWriter json = new StringWriter();
+        profiler.writeJson(json);
+        assertTrue(json.toString().startsWith("["));
+        assertTrue(json.toString().contains("\"signatureId\": " + costs.get(0).getSignatureID() + ","));
+
+        profiler.reset();
+        assertTrue(profiler.getCosts().isEmpty());
+        assertNull(profiler.getCost(costs.get(0).getSignatureID()));
+    }
+
+    @Test
+    public void testNoBytesCountedWhenNotProfiling() throws Exception {
+        final SignatureProfiler profiler = new SignatureProfiler();
+        profiler.stop();
+        final InternalSignature signature = sigFile.getSignatures().get(0);
+        try (ByteReader reader = openReader(getSkeletonFiles().get(0))) {
+            profiler.matches(signature, reader, -1);
+        }
+        final SignatureProfiler.SignatureCost cost = profiler.getCost(signature.getID());
+        assertEquals(1, cost.getEvaluations());
+        assertEquals(0, cost.getBytesSearched());
+    }
+
+    private static List<Path> getSkeletonFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(SKELETONS))) {
+            return files.filter(Files::isRegularFile).sorted().limit(100).collect(Collectors.toList());
+        }
+    }
+
+    private static ByteReader openReader(Path file) throws IOException {
+        final RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), file.getFileName().toString());
+        final FileSystemIdentificationRequest request =
+                new FileSystemIdentificationRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        return new IdentificationRequestByteReaderAdapter(request);
+    }
+}
@@ -44,14 +44,17 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.CompositeHashGenerator;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOutputOptions;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportDetails;
@@ -63,6 +66,7 @@ import uk.gov.nationalarchives.droid.profile.ProfileContextLocator;
 import uk.gov.nationalarchives.droid.profile.ProfileInstance;
 import uk.gov.nationalarchives.droid.profile.ProfileInstanceManager;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.WriterConstants;
 
 /**
  * @author rflitcroft, Brian O'Reilly
@@ -257,7 +261,7 @@ public class ExportTask implements Runnable {
         // whether all the selected profiles use the same algorithm.
         Map<String, String> map = new HashMap<String, String>();
         String hashAlgorithmHeader = "HASH";
-        Set<String> algorithmsFound = new HashSet<String>();
+        Set<List<String>> algorithmsFound = new HashSet<List<String>>();
  
         for (String profileId : this.profileIds) {
             if (!this.profileContextLocator.hasProfileContext(profileId)) {
@@ -267,7 +271,8 @@ public class ExportTask implements Runnable {
             }
             ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
             if (profile.getGenerateHash()) {
-                algorithmsFound.add(profile.getHashAlgorithm().toUpperCase());
+                // Lists which differ only in case, spacing or repeated names are the same algorithms.
+                algorithmsFound.add(CompositeHashGenerator.parseAlgorithms(profile.getHashAlgorithm()));
             }
         } 
         
@@ -275,8 +280,11 @@ public class ExportTask implements Runnable {
         // and that only a single hash algorithm was used for all the profiles in the export (e.g. not one with MD5 
         // and one with SHa256). If so, we can set the column header to reflect the specific hash - otherwise we use 
         //the generic "HASH" header.
+        // If several algorithms were used for each file, there is a column header for each of them.
         if (algorithmsFound.size() == 1) {
-            hashAlgorithmHeader = algorithmsFound.iterator().next() + "_HASH";
+            hashAlgorithmHeader = algorithmsFound.iterator().next().stream()
+                    .map(algorithm -> algorithm.toUpperCase(Locale.ROOT) + WriterConstants.HASH_HEADER_SUFFIX)
+                    .collect(Collectors.joining(WriterConstants.HASH_SEPARATOR));
         }
         
         map.put("hash", hashAlgorithmHeader);
@@ -118,7 +118,7 @@ public class ItemWriterImpl implements ItemWriter<ProfileResourceNode> {
 
     @Override
     public void write(List<? extends ProfileResourceNode> nodes) {
-        FormattedDataWriter dataWriter = DataWriterProvider.getDataWriter(columnsToWriteMap, exportTemplate);
+        FormattedDataWriter dataWriter = DataWriterProvider.getDataWriter(columnsToWriteMap, exportTemplate, allHeaders);
         switch (options) {
             case ONE_ROW_PER_FILE: {
                 if (outputOptions == ExportOutputOptions.JSON_OUTPUT) {
@@ -204,12 +204,15 @@ public class ItemWriterImpl implements ItemWriter<ProfileResourceNode> {
     }
     
     /**
-     * Closes the CSV writer.
+     * Closes the CSV writer.  Closing it again has no further effect.
      */
     @Override
     public void close() {
         try {
-            outputJson.completeStream();
+            if (outputJson != null) {
+                outputJson.completeStream();
+                outputJson = null; // the JSON array must only be ended once.
+            }
             writer.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
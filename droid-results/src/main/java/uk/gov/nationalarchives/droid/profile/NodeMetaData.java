@@ -31,7 +31,9 @@
  */
 package uk.gov.nationalarchives.droid.profile;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
 import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
@@ -56,6 +58,7 @@ public class NodeMetaData {
     private IdentificationMethod identificationMethod;
     private ResourceType  resourceType;
     private String hash;
+    private Map<String, String> hashes;
 
     /**
      * Default constructor.
@@ -100,6 +103,7 @@ public class NodeMetaData {
         this.identificationMethod = toCopy.identificationMethod;
         this.resourceType         = toCopy.resourceType;
         this.hash                 = toCopy.hash;
+        this.hashes               = toCopy.hashes;
     }
 
     /**
@@ -233,4 +237,19 @@ public class NodeMetaData {
         return hash;
     }
 
+    /**
+     * @param hashes the hash of each algorithm, by algorithm name, when several algorithms were used.
+     *               The hash of the first algorithm is also the hash of the node.
+     */
+    public void setHashes(Map<String, String> hashes) {
+        this.hashes = hashes == null || hashes.isEmpty() ? null : Collections.unmodifiableMap(hashes);
+    }
+
+    /**
+     * @return the hash of each algorithm, by algorithm name, or an empty map if only one algorithm was used.
+     */
+    public Map<String, String> getHashes() {
+        return hashes == null ? Collections.emptyMap() : hashes;
+    }
+
 }
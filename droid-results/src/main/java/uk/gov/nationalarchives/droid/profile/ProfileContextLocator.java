@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -69,6 +70,15 @@ public class ProfileContextLocator {
     private static final String SIG_PROFILE = "profile\\.\\d+\\.template";
     private static final String DEFAULT_HASH_ALGORITH = "md5";
     private static final int DEFAULT_MAX_BYTES_TO_SCAN = 65536;
+    private static final int DEFAULT_THROTTLE_MAX_CONCURRENCY = 64;
+    private static final int DEFAULT_FILE_STORE_READ_AHEAD = 8;
+    private static final int DEFAULT_CORE_QUEUE_SIZE = 20;
+    private static final int DEFAULT_POST_PROCESS_THREADS = 4;
+    private static final int DEFAULT_POST_PROCESS_QUEUE_SIZE = 40;
+    private static final int DEFAULT_ARCHIVE_THREADS = 2;
+    private static final int DEFAULT_ARCHIVE_QUEUE_SIZE = 8;
+    private static final String SIGNATURE_SNAPSHOT_DIR = "snapshots";
+    private static final String SIGNATURE_COST_REPORT = "signature-costs-%s.csv";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private DroidGlobalConfig globalConfig;
@@ -170,6 +180,44 @@ public class ProfileContextLocator {
         final Properties props = new Properties();
         props.setProperty("defaultThrottle", String.valueOf(profile.getThrottle()));
         props.setProperty("signatureFilePath", signatureFile.toAbsolutePath().toString());
+        props.setProperty("signatureSnapshotDir",
+                globalConfig.getSignatureFileDir().resolve(SIGNATURE_SNAPSHOT_DIR).toAbsolutePath().toString());
+        final String costReportDir = globalConfig.getProperties().getString(
+                DroidGlobalProperty.SIGNATURE_COST_REPORT_DIR.getName(), "");
+        props.setProperty("signatureCostReport", costReportDir.isEmpty() ? ""
+                : Paths.get(costReportDir, String.format(SIGNATURE_COST_REPORT, profile.getUuid())).toString());
+        props.setProperty("sequenceMatchingEngine", globalConfig.getProperties().getString(
+                DroidGlobalProperty.SEQUENCE_MATCHING_ENGINE.getName(), ""));
+        props.setProperty("directoryListingThreads", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.DIRECTORY_LISTING_THREADS.getName(), 0)));
+        props.setProperty("inodeOrderedWalk", String.valueOf(globalConfig.getProperties().getBoolean(
+                DroidGlobalProperty.INODE_ORDERED_WALK.getName(), false)));
+        props.setProperty("throttleTargetLatencyMillis", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.THROTTLE_TARGET_LATENCY.getName(), 0)));
+        props.setProperty("throttleMaxRequestsPerSecond", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.THROTTLE_MAX_REQUESTS_PER_SECOND.getName(), 0)));
+        props.setProperty("throttleMaxConcurrency", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.THROTTLE_MAX_CONCURRENCY.getName(), DEFAULT_THROTTLE_MAX_CONCURRENCY)));
+        props.setProperty("fileStoreThreads", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.FILE_STORE_THREADS.getName(), 0)));
+        props.setProperty("fileStoreReadAhead", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.FILE_STORE_READ_AHEAD.getName(), DEFAULT_FILE_STORE_READ_AHEAD)));
+        props.setProperty("fileStoreLimits", globalConfig.getProperties().getString(
+                DroidGlobalProperty.FILE_STORE_LIMITS.getName(), ""));
+        props.setProperty("prefetchedFiles", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.PREFETCHED_FILES.getName(), 0)));
+        props.setProperty("archiveEntryThreads", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.ARCHIVE_ENTRY_THREADS.getName(), 0)));
+        props.setProperty("coreQueueSize", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.CORE_QUEUE_SIZE.getName(), DEFAULT_CORE_QUEUE_SIZE)));
+        props.setProperty("postProcessThreads", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.POST_PROCESS_THREADS.getName(), DEFAULT_POST_PROCESS_THREADS)));
+        props.setProperty("postProcessQueueSize", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.POST_PROCESS_QUEUE_SIZE.getName(), DEFAULT_POST_PROCESS_QUEUE_SIZE)));
+        props.setProperty("archiveThreads", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.ARCHIVE_THREADS.getName(), DEFAULT_ARCHIVE_THREADS)));
+        props.setProperty("archiveQueueSize", String.valueOf(globalConfig.getProperties().getInt(
+                DroidGlobalProperty.ARCHIVE_QUEUE_SIZE.getName(), DEFAULT_ARCHIVE_QUEUE_SIZE)));
         props.setProperty("submissionQueueFile", submissionQueueFile.toAbsolutePath().toString());
         props.setProperty("tempDirLocation", globalConfig.getTempDir().toAbsolutePath().toString());
         props.setProperty("profileHome", profileHome.toAbsolutePath().toString());
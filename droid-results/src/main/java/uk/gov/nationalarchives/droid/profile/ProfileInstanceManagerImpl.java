@@ -43,6 +43,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 
 import org.slf4j.Logger;
@@ -232,6 +233,7 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
             // Set any results filter set on the profile on the submission gateway (which will set it on the results handler and archive handlers).
             submissionGateway.setResultsFilter(profileInstance.getResultsFilter());
             submissionGateway.setIdentificationFilter(profileInstance.getIdentificationFilter());
+            specWalker.setIdentificationFilter(profileInstance.getIdentificationFilter());
 
             // replay any queued requests
             submissionGateway.replay();
@@ -283,6 +285,7 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         
         @Override
         public void run() {
+            final long startNanos = System.nanoTime();
             try {
                 preWalk();
                 specWalker.walk(profileInstance.getProfileSpec(), walkState);
@@ -294,6 +297,9 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
                 throw new ProfileException(e);
             } finally {
                 postWalk();
+                // Logged so that walk settings, such as the order files are read in, can be compared on real storage.
+                log.info(String.format("Profile walked and identified in %d ms",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
                 if (counter != null) {
                     counter.cancel();
                 }
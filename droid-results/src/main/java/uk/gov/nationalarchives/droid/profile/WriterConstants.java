@@ -33,6 +33,7 @@ package uk.gov.nationalarchives.droid.profile;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.CompositeHashGenerator;
 
 import java.util.Arrays;
 import java.util.List;
@@ -123,6 +124,16 @@ public final class WriterConstants {
      */
     public static final int HASH_ARRAY_INDEX = 12;
 
+    /**
+     * Separates the headers of the hash columns, when several hash algorithms were used.
+     */
+    public static final String HASH_SEPARATOR = CompositeHashGenerator.HASH_SEPARATOR;
+
+    /**
+     * Follows the name of the algorithm in the header of a hash column, as in MD5_HASH.
+     */
+    public static final String HASH_HEADER_SUFFIX = "_HASH";
+
     /**
      * String array for all the default headers.
      */
@@ -33,6 +33,7 @@ package uk.gov.nationalarchives.droid.profile.datawriter;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.univocity.parsers.csv.CsvWriter;
+import org.apache.commons.lang3.StringUtils;
 import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
 import uk.gov.nationalarchives.droid.profile.WriterConstants;
 import uk.gov.nationalarchives.droid.profile.NodeMetaData;
@@ -43,6 +44,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -51,9 +53,21 @@ import java.util.stream.Collectors;
  */
 public class ColumnBasedDataWriter extends FormattedDataWriter {
     private final Map<String, Boolean> columnsToWriteMap;
+    private final String[] hashAlgorithms;
 
     public ColumnBasedDataWriter(Map<String, Boolean> columnsToWriteMap) {
+        this(columnsToWriteMap, null);
+    }
+
+    /**
+     * @param columnsToWriteMap Map with a list of columns to write
+     * @param headers The headers to write, or null for the default headers.  If the hash header lists several
+     *                hash algorithms, the hash of each algorithm is written in its own column.
+     */
+    public ColumnBasedDataWriter(Map<String, Boolean> columnsToWriteMap, String[] headers) {
         this.columnsToWriteMap = columnsToWriteMap;
+        this.hashAlgorithms = headers == null ? new String[] {WriterConstants.HEADER_NAME_HASH}
+                : toHashAlgorithms(splitHashes(headers[WriterConstants.HASH_ARRAY_INDEX]));
     }
 
     @Override
@@ -131,7 +145,7 @@ public class ColumnBasedDataWriter extends FormattedDataWriter {
     @Override
     public void writeHeadersForOneRowPerFile(List<? extends ProfileResourceNode> nodes, String[] headers, CsvWriter csvWriter) {
         super.setCustomisedHeaders(headers);
-        List<String> headersToWrite = new ArrayList<>(getHeadersToWrite(getCustomisedHeaders()));
+        List<String> headersToWrite = expandHashHeaders(getHeadersToWrite(getCustomisedHeaders()));
         int maxIdCount = getMaxIdentificationCount(nodes);
 
         //if we are writing one row per file, then we tag the "per format" fields as additional columns,
@@ -155,7 +169,7 @@ public class ColumnBasedDataWriter extends FormattedDataWriter {
     @Override
     public void writeHeadersForOneRowPerFormat(List<? extends ProfileResourceNode> nodes, String[] headers, CsvWriter csvWriter) {
         super.setCustomisedHeaders(headers);
-        List<String> headersToWrite = new ArrayList<>(getHeadersToWrite(getCustomisedHeaders()));
+        List<String> headersToWrite = expandHashHeaders(getHeadersToWrite(getCustomisedHeaders()));
         csvWriter.writeHeaders(headersToWrite);
         csvWriter.flush();
     }
@@ -175,7 +189,11 @@ public class ColumnBasedDataWriter extends FormattedDataWriter {
         addEntry(objectNode, WriterConstants.HEADER_NAME_EXT, metaData.getExtension());
         addEntry(objectNode, WriterConstants.HEADER_NAME_LAST_MODIFIED, nullSafeDate(metaData.getLastModifiedDate(), WriterConstants.DATE_FORMAT));
         addEntry(objectNode, WriterConstants.HEADER_NAME_EXTENSION_MISMATCH, resourceNode.getExtensionMismatch().toString());
-        addEntry(objectNode, hashHeader, metaData.getHash(), "", WriterConstants.HEADER_NAME_HASH);
+        String[] hashHeaders = splitHashes(hashHeader);
+        String[] hashes = getHashColumns(metaData, toHashAlgorithms(hashHeaders));
+        for (int i = 0; i < hashHeaders.length; i++) {
+            addEntry(objectNode, hashHeaders[i], hashes[i], "", WriterConstants.HEADER_NAME_HASH);
+        }
         addEntry(objectNode, WriterConstants.HEADER_NAME_FORMAT_COUNT, nullSafeNumber(resourceNode.getIdentificationCount()));
     }
 
@@ -193,10 +211,58 @@ public class ColumnBasedDataWriter extends FormattedDataWriter {
         addColumn(row, WriterConstants.HEADER_NAME_EXT, metaData.getExtension());
         addColumn(row, WriterConstants.HEADER_NAME_LAST_MODIFIED, nullSafeDate(metaData.getLastModifiedDate(), WriterConstants.DATE_FORMAT));
         addColumn(row, WriterConstants.HEADER_NAME_EXTENSION_MISMATCH, node.getExtensionMismatch().toString());
-        addColumn(row, WriterConstants.HEADER_NAME_HASH, metaData.getHash());
+        for (String hash : getHashColumns(metaData, hashAlgorithms)) {
+            addColumn(row, WriterConstants.HEADER_NAME_HASH, hash);
+        }
         addColumn(row, WriterConstants.HEADER_NAME_FORMAT_COUNT, nullSafeNumber(node.getIdentificationCount()));
     }
 
+    /*
+     * Gets the hash of each algorithm with a column, or the hash of the node if there is only one column.
+     */
+    private static String[] getHashColumns(NodeMetaData metaData, String[] algorithms) {
+        if (algorithms.length == 1) {
+            return new String[] {metaData.getHash()};
+        }
+        String[] hashes = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            hashes[i] = metaData.getHashes().getOrDefault(algorithms[i], WriterConstants.EMPTY_STRING);
+        }
+        return hashes;
+    }
+
+    /*
+     * Gets the algorithm of each hash header, such as sha256 for SHA256_HASH.
+     */
+    private static String[] toHashAlgorithms(String[] hashHeaders) {
+        String[] algorithms = new String[hashHeaders.length];
+        for (int i = 0; i < hashHeaders.length; i++) {
+            algorithms[i] = StringUtils.removeEnd(hashHeaders[i], WriterConstants.HASH_HEADER_SUFFIX)
+                    .trim().toLowerCase(Locale.ROOT);
+        }
+        return algorithms;
+    }
+
+    private static String[] splitHashes(String value) {
+        return value.split(WriterConstants.HASH_SEPARATOR, -1);
+    }
+
+    /*
+     * Writes a column header for each hash algorithm, if several were used.
+     */
+    private List<String> expandHashHeaders(List<String> headers) {
+        String hashHeader = getCustomisedHeaders()[WriterConstants.HASH_ARRAY_INDEX];
+        List<String> expanded = new ArrayList<>(headers.size());
+        for (String header : headers) {
+            if (header.equals(hashHeader)) {
+                expanded.addAll(Arrays.asList(splitHashes(header)));
+            } else {
+                expanded.add(header);
+            }
+        }
+        return expanded;
+    }
+
     private void addColumn(List<String> row, String columnName, String value) {
         if (columnsToWriteMap.get(columnName)) {
             row.add(value);
@@ -51,10 +51,22 @@ public final class DataWriterProvider {
      * @return Specific data writer.
      */
     public static FormattedDataWriter getDataWriter(Map<String, Boolean> columnsToWriteMap, ExportTemplate exportTemplate) {
+        return getDataWriter(columnsToWriteMap, exportTemplate, null);
+    }
+
+    /**
+     * Instantiate and return specific data writer (either column based, or template based).
+     * @param columnsToWriteMap Map with a list of columns to write
+     * @param exportTemplate exportTemplate
+     * @param headers The headers to write, which give the number of hash columns, or null for the default headers.
+     * @return Specific data writer.
+     */
+    public static FormattedDataWriter getDataWriter(Map<String, Boolean> columnsToWriteMap, ExportTemplate exportTemplate,
+                                                    String[] headers) {
         if (exportTemplate != null) {
             return new TemplateBasedDataWriter(exportTemplate);
         } else {
-            return new ColumnBasedDataWriter(columnsToWriteMap);
+            return new ColumnBasedDataWriter(columnsToWriteMap, headers);
         }
     }
 }
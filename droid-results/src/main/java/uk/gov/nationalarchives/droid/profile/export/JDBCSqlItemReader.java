@@ -36,6 +36,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLDataException;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
@@ -45,7 +47,9 @@ import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
@@ -91,6 +95,7 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
     private DataSource datasource;
     private JDBCBatchResultHandlerDao resultHandlerDao;
     private IdentificationReader identificationReader;
+    private HashReader hashReader;
 
     /**
      * Default constructor.
@@ -187,6 +192,7 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
         open(itemFilter);
 
         this.identificationReader = new IdentificationReader();
+        this.hashReader = new HashReader();
         boolean filterExists = itemFilter != null && itemFilter.isEnabled();
         ProfileResourceNodeFilter nodeFilter = new ProfileResourceNodeFilter(filterExists ? itemFilter : null);
         try {
@@ -197,6 +203,7 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
                 if (nodeFilter.passesFilter(item)) {
                     chunk.add(item);
                     if (chunk.size() == chunkSize) {
+                        hashReader.addHashes(chunk);
                         callback.onItem(chunk);
                         chunk = new ArrayList<>();
                     }
@@ -204,6 +211,7 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
             }
 
             if (!chunk.isEmpty()) {
+                hashReader.addHashes(chunk);
                 callback.onItem(chunk);
                 chunk = new ArrayList<>();
             }
@@ -320,4 +328,44 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
         }
     }
 
+    /**
+     * Reads the hash of each algorithm for a chunk of nodes, if several algorithms were used in the profile.
+     */
+    private class HashReader {
+
+        private static final String ANY_HASH_QUERY = "SELECT NODE_ID FROM NODE_HASH FETCH FIRST 1 ROWS ONLY";
+        private static final String HASH_QUERY = "SELECT NODE_ID, ALGORITHM, HASH FROM NODE_HASH WHERE NODE_ID IN (";
+
+        private final JdbcTemplate jdbcTemplate = new JdbcTemplate(datasource);
+        private final boolean hasHashes;
+
+        HashReader() {
+            this.hasHashes = anyHashes();
+        }
+
+        // Profiles with one algorithm, and profiles from before several could be used, have no hashes to read.
+        private boolean anyHashes() {
+            try {
+                return !jdbcTemplate.queryForList(ANY_HASH_QUERY).isEmpty();
+            } catch (DataAccessException e) {
+                log.debug("No hashes of several algorithms could be read", e);
+                return false;
+            }
+        }
+
+        void addHashes(List<ProfileResourceNode> nodes) {
+            if (!hasHashes) {
+                return;
+            }
+            final Object[] nodeIds = nodes.stream().map(ProfileResourceNode::getId).toArray();
+            final String query = HASH_QUERY + String.join(",", Collections.nCopies(nodeIds.length, "?")) + ")";
+            final Map<Long, Map<String, String>> hashes = new HashMap<>();
+            jdbcTemplate.query(query, (RowCallbackHandler) rs -> hashes.computeIfAbsent(rs.getLong(NODE_ID),
+                id -> new HashMap<>()).put(rs.getString("ALGORITHM"), rs.getString("HASH")), nodeIds);
+            for (ProfileResourceNode node : nodes) {
+                node.getMetaData().setHashes(hashes.get(node.getId()));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.throttle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A submission throttle which adapts how many requests may be in flight at once, using
+ * additive increase and multiplicative decrease (AIMD).
+ * <p>
+ * The time taken to read each request is observed, so signatures which are slow to match do not
+ * cause the limit to back off.  Once a window of requests has completed, the limit is cut by a
+ * quarter if their average read latency was above the target latency, or if they completed faster
+ * than the maximum rate.  Otherwise the limit grows by one.  Requests waiting in the identification
+ * queue count as in flight, so the limit also bounds the depth of that queue.
+ * </p>
+ * <p>
+ * A submitter waits in {@link #apply()} until a request completes to make room under the limit, or
+ * until the throttle is closed.  Any fixed wait set with {@link #setWaitMilliseconds(int)} is applied
+ * as well.  If neither a target latency nor a maximum rate is set, only the fixed wait applies.
+ * </p>
+ */
+public class AdaptiveSubmissionThrottle extends SimpleSubmissionThrottle {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 64;
+    private static final int INITIAL_CONCURRENCY = 4;
+    private static final int MIN_WINDOW_SIZE = 8;
+    private static final double BACKOFF_RATIO = 0.75;
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final Object lock = new Object();
+
+    private long targetLatencyNanos;
+    private double maxRequestsPerSecond;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private int limit = INITIAL_CONCURRENCY;
+    private int inFlight;
+    private int windowCount;
+    private int windowSamples;
+    private long windowLatencyNanos;
+    private long windowStartNanos = System.nanoTime();
+    private boolean closed;
+
+    @Override
+    public void apply() throws InterruptedException {
+        super.apply();
+        if (targetLatencyNanos > 0 || maxRequestsPerSecond > 0) {
+            awaitCapacity();
+        }
+    }
+
+    private void awaitCapacity() throws InterruptedException {
+        synchronized (lock) {
+            while (inFlight >= limit && !closed) {
+                lock.wait();
+            }
+        }
+    }
+
+    @Override
+    public void requestSubmitted() {
+        synchronized (lock) {
+            inFlight++;
+        }
+    }
+
+    @Override
+    public void readCompleted(long elapsedNanos) {
+        synchronized (lock) {
+            windowSamples++;
+            windowLatencyNanos += elapsedNanos;
+        }
+    }
+
+    @Override
+    public void requestCompleted() {
+        synchronized (lock) {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            windowCount++;
+            if (windowCount >= Math.max(limit, MIN_WINDOW_SIZE)) {
+                adjustLimit();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void adjustLimit() {
+        final long now = System.nanoTime();
+        final long averageLatencyNanos = windowSamples == 0 ? 0 : windowLatencyNanos / windowSamples;
+        final double requestsPerSecond = windowCount * NANOS_PER_SECOND / Math.max(1L, now - windowStartNanos);
+        final boolean tooSlow = targetLatencyNanos > 0 && averageLatencyNanos > targetLatencyNanos;
+        final boolean tooFast = maxRequestsPerSecond > 0 && requestsPerSecond > maxRequestsPerSecond;
+        if (tooSlow || tooFast) {
+            limit = Math.max(1, (int) (limit * BACKOFF_RATIO));
+        } else if (limit < maxConcurrency) {
+            limit++;
+        }
+        windowCount = 0;
+        windowSamples = 0;
+        windowLatencyNanos = 0;
+        windowStartNanos = now;
+    }
+
+    /**
+     * Closes the throttle, releasing any submitter waiting for capacity.  Requests which will never
+     * complete, because their executor has been shut down, can no longer block a submitter.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of requests which may currently be in flight before a submitter waits.
+     */
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return limit;
+        }
+    }
+
+    /**
+     * @return the number of requests submitted which have not yet been identified.
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @param targetLatencyMillis the average time to read a request above which the
+     *                            limit is cut, or zero to ignore latency.
+     */
+    public void setTargetLatencyMillis(int targetLatencyMillis) {
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    }
+
+    /**
+     * @param maxRequestsPerSecond the rate of completed requests above which the limit is cut, or zero
+     *                             to ignore the rate.
+     */
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    /**
+     * @param maxConcurrency the most requests which may ever be in flight before a submitter waits.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        synchronized (lock) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            limit = Math.min(limit, this.maxConcurrency);
+        }
+    }
+
+}
@@ -48,4 +48,23 @@ public interface SubmissionThrottle {
      */
     void setWaitMilliseconds(int waitMilliseconds);
 
+    /**
+     * Tells the throttle that a request has been submitted for identification.
+     */
+    default void requestSubmitted() {
+    }
+
+    /**
+     * Tells the throttle how long it took to read the bytes of a submitted request.
+     * @param elapsedNanos the time spent reading the request, in nanoseconds.
+     */
+    default void readCompleted(long elapsedNanos) {
+    }
+
+    /**
+     * Tells the throttle that a submitted request has been identified, or has failed.
+     */
+    default void requestCompleted() {
+    }
+
 }
@@ -104,6 +104,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         INSERT_FIVE_IDENTIFICATIONS, INSERT_SIX_IDENTIFICATIONS, INSERT_SEVEN_IDENTIFICATIONS,
         INSERT_EIGHT_IDENTIFICATIONS, INSERT_NINE_IDENTIFICATIONS, INSERT_TEN_IDENTIFICATIONS, };
 
+    private static final String INSERT_NODE_HASH = "INSERT INTO NODE_HASH (NODE_ID,ALGORITHM,HASH) VALUES (?,?,?)";
+
     private static final String UPDATE_NODE_STATUS = "UPDATE PROFILE_RESOURCE_NODE SET NODE_STATUS = ? WHERE NODE_ID = ?";
     private static final String DELETE_NODE = "DELETE FROM PROFILE_RESOURCE_NODE WHERE NODE_ID = ?";
     private static final String SELECT_FORMAT = "SELECT PUID, MIME_TYPE, NAME, VERSION FROM FORMAT WHERE PUID = ?";
@@ -117,6 +119,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
 
     private static final String SELECT_IDENTIFICATIONS = "SELECT NODE_ID, PUID FROM IDENTIFICATION WHERE NODE_ID = ?";
     private static final String DELETE_IDENTIFICATIONS = "DELETE FROM IDENTIFICATION WHERE NODE_ID = ?";
+    private static final String DELETE_NODE_HASHES = "DELETE FROM NODE_HASH WHERE NODE_ID = ?";
     private static final String MAX_NODE_ID_QUERY = "SELECT MAX(NODE_ID) FROM PROFILE_RESOURCE_NODE";
 
     //DDL statements
@@ -134,6 +137,10 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                     + "PREFIX VARCHAR(255), PREFIX_PLUS_ONE VARCHAR(255), TEXT_ENCODING INTEGER, URI VARCHAR(4000) NOT NULL, "
                     + "U_EXTENSION GENERATED ALWAYS AS (UPPER(EXTENSION)), U_NAME GENERATED ALWAYS AS (UPPER(NAME)), "
                     + "PRIMARY KEY (NODE_ID))";
+    // The hash of each algorithm, when several are generated for each node.  The HASH column holds the first.
+    private static final String CREATE_TABLE_NODE_HASH =
+            "CREATE TABLE NODE_HASH (NODE_ID BIGINT NOT NULL, ALGORITHM VARCHAR(16) NOT NULL, HASH VARCHAR(128) NOT NULL, "
+            + "PRIMARY KEY(NODE_ID, ALGORITHM))";
     private static final String CREATE_IDX_MIME_TYPE_ON_FORMAT = "CREATE INDEX IDX_MIME_TYPE ON FORMAT (MIME_TYPE)";
     private static final String CREATE_IDX_FORMAT_NAME_ON_FORMAT = "CREATE INDEX IDX_FORMAT_NAME ON FORMAT (U_NAME)";
 
@@ -154,6 +161,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             "FOREIGN KEY (PUID) REFERENCES FORMAT";
     private static final String IDENTIFICATION_CONSTRAINT_2 = "ALTER TABLE IDENTIFICATION ADD CONSTRAINT FK_TPXMO6PPUXECKDRELN5PT5E39 " +
             "FOREIGN KEY (NODE_ID) REFERENCES PROFILE_RESOURCE_NODE";
+    private static final String NODE_HASH_CONSTRAINT = "ALTER TABLE NODE_HASH ADD CONSTRAINT FK_NODE_HASH_NODE_ID " +
+            "FOREIGN KEY (NODE_ID) REFERENCES PROFILE_RESOURCE_NODE";
 
     private static final String CREATE_UCASE_PRN_EXTN_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN U_EXTENSION GENERATED ALWAYS AS (UPPER(EXTENSION))";
     private static final String CREATE_UCASE_PRN_NAME_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN U_NAME GENERATED ALWAYS AS (UPPER(NAME))";
@@ -221,6 +230,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         synchronized (LOCKER) {
             if (!getIsFreshTemplate()) {
                 checkCreateUpperCaseColumns();
+                checkCreateNodeHashTable();
                 setUpFormatsAndDatabaseWriter();
             } else {
                 createSchemaOnFreshTemplate();
@@ -327,6 +337,23 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
     }
 
+    // Templates created before the hashes of several algorithms could be stored for each node have no table for them.
+    private void checkCreateNodeHashTable() {
+        try (Connection conn = datasource.getConnection();
+             ResultSet table = conn.getMetaData().getTables(null, null, "NODE_HASH", null)) {
+            if (!table.next()) {
+                for (String ddlSQL : new String[] {CREATE_TABLE_NODE_HASH, NODE_HASH_CONSTRAINT}) {
+                    try (PreparedStatement ddlStatement = conn.prepareStatement(ddlSQL)) {
+                        ddlStatement.execute();
+                    }
+                }
+                conn.commit(); // connections do not auto commit.
+            }
+        } catch (SQLException e) {
+            log.error(e.getSQLState(), e);
+        }
+    }
+
     private void setUpFormatsAndDatabaseWriter() {
         formats = loadAllFormats();
         for (final Format format : formats) {
@@ -351,6 +378,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             PreparedStatement createFormatTable = null;
             PreparedStatement createIdentificationTable = null;
             PreparedStatement createProfileResourceNodeTable = null;
+            PreparedStatement createNodeHashTable = null;
 
             try {
                 createFormatTable = conn.prepareStatement(CREATE_TABLE_FORMAT);
@@ -362,6 +390,9 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 createProfileResourceNodeTable = conn.prepareStatement(CREATE_TABLE_PRN);
                 createProfileResourceNodeTable.execute();
 
+                createNodeHashTable = conn.prepareStatement(CREATE_TABLE_NODE_HASH);
+                createNodeHashTable.execute();
+
                 List<String> createIndexesAndConstraints = new ArrayList<String>(19);
                 createIndexesAndConstraints.add(CREATE_IDX_MIME_TYPE_ON_FORMAT);
                 createIndexesAndConstraints.add(CREATE_IDX_FORMAT_NAME_ON_FORMAT);
@@ -381,6 +412,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 //createIndexesAndConstraints.add(CREATE_IDX_URI_ON_PRN);
                 createIndexesAndConstraints.add(IDENTIFICATION_CONSTRAINT_1);
                 createIndexesAndConstraints.add(IDENTIFICATION_CONSTRAINT_2);
+                createIndexesAndConstraints.add(NODE_HASH_CONSTRAINT);
 
                 for (String ddlSQL : createIndexesAndConstraints) {
                     final PreparedStatement ddlStatement = conn.prepareStatement(ddlSQL);
@@ -411,7 +443,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 //AutoCloseable is new in java 7 - needs to compile for Java 6....
                 //CHECKSTYLE:OFF    Have to catch generic exception from close()
                 PreparedStatement[] statements = new PreparedStatement[] {createFormatTable,
-                        createIdentificationTable, createProfileResourceNodeTable,};
+                        createIdentificationTable, createProfileResourceNodeTable, createNodeHashTable,};
                 for (PreparedStatement a : statements) {
                     if (a != null) {
                         try {
@@ -588,6 +620,13 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         try {
             final Connection conn = datasource.getConnection();
             try {
+                final PreparedStatement hashStatement = conn.prepareStatement(DELETE_NODE_HASHES);
+                try {
+                    hashStatement.setLong(1, nodeId);
+                    hashStatement.execute();
+                } finally {
+                    hashStatement.close();
+                }
                 final PreparedStatement nodeStatement = conn.prepareStatement(DELETE_NODE);
                 try {
                     nodeStatement.setLong(1, nodeId);
@@ -813,6 +852,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         private Connection connection;
         private PreparedStatement insertNodeStatement;
         private PreparedStatement updateNodeStatement;
+        private PreparedStatement insertHashStatement;
         private Map<Integer, PreparedStatement> insertIdentifications;
         private volatile int batchCount;
         private final int batchLimit;
@@ -836,6 +876,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             connection = datasource.getConnection();
             insertNodeStatement = connection.prepareStatement(INSERT_PROFILE_RESOURCE_NODE);
             updateNodeStatement = connection.prepareStatement(UPDATE_NODE_STATUS);
+            insertHashStatement = connection.prepareStatement(INSERT_NODE_HASH);
             final int maxStatements = 64;
 
             insertIdentifications = new HashMap<Integer, PreparedStatement>(maxStatements);
@@ -889,6 +930,11 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             } catch (SQLException s) {
                 log.error("A problem occurred closing a node insert prepared statement.", s);
             }
+            try {
+                insertHashStatement.close();
+            } catch (SQLException s) {
+                log.error("A problem occurred closing a hash insert prepared statement.", s);
+            }
             try {
                 connection.close();
             } catch (SQLException s) {
@@ -952,6 +998,14 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
             statement.addBatch();
 
+            // insert the hash of each algorithm, if several were used:
+            for (final Map.Entry<String, String> algorithmHash : metadata.getHashes().entrySet()) {
+                insertHashStatement.setLong(1, nodeId);
+                insertHashStatement.setString(2, algorithmHash.getKey());
+                insertHashStatement.setString(3, algorithmHash.getValue());
+                insertHashStatement.addBatch();
+            }
+
             commitBatchIfLargeEnough();
         }
         //CHECKSTYLE:ON
@@ -991,6 +1045,9 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                         identifications.executeBatch();
                         //TODO: optimise? what about identification statements not used in this run?
                     }
+
+                    // Insert the hashes of new nodes, if several algorithms were used:
+                    insertHashStatement.executeBatch();
                     connection.commit();
                 } catch (SQLException e) {
                     log.error("A problem occurred attempting to batch commit nodes into the database. ", e);
@@ -88,6 +88,7 @@ public class ProfileNodeResultHandler implements ResultHandler {
         metaData.setExtension(ResourceUtils.getExtension(requestMetaData.getName()));
         metaData.setResourceType(results.isArchive() ? ResourceType.CONTAINER : ResourceType.FILE);
         metaData.setHash(requestMetaData.getHash());
+        metaData.setHashes(requestMetaData.getHashes());
         metaData.setNodeStatus(NodeStatus.DONE);
         node.setMetaData(metaData);
         node.setExtensionMismatch(results.getExtensionMismatch());
@@ -137,6 +138,7 @@ public class ProfileNodeResultHandler implements ResultHandler {
             metaData.setExtension(request.getExtension());
             metaData.setLastModified(request.getRequestMetaData().getTime());
             metaData.setHash(requestMetaData.getHash());
+            metaData.setHashes(requestMetaData.getHashes());
             node.addFormatIdentification(Format.NULL);
             node.setFinished(new Date());
             resultHandlerDao.save(node, identifier.getParentResourceId());
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Lists directories ahead of a file walker on a work-stealing pool, so that sibling directories
+ * are listed concurrently while the walker handles the files it has already found.
+ * <p>
+ * Only the listing is done in parallel.  Listings are taken by the walker in its own depth-first
+ * order, so the walk and its progress are exactly the same as walking on a single thread.
+ * This class is not thread safe, and must only be called by the walker thread.
+ * </p>
+ */
+final class DirectoryLister implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_PREFETCHED = 1024;
+
+    private final ForkJoinPool pool;
+    private final int maxPrefetched;
+    private final boolean inodeOrdered;
+    private final Map<Path, ForkJoinTask<DirectoryListing>> prefetched = new HashMap<>();
+
+    /**
+     * @param threads The number of threads to list directories with.
+     * @param inodeOrdered Whether the children of each directory are ordered by inode number.
+     */
+    DirectoryLister(final int threads, final boolean inodeOrdered) {
+        this(threads, DEFAULT_MAX_PREFETCHED, inodeOrdered);
+    }
+
+    /**
+     * @param threads The number of threads to list directories with.
+     * @param maxPrefetched The most directories which can be listed ahead of the walker.
+     * @param inodeOrdered Whether the children of each directory are ordered by inode number.
+     */
+    DirectoryLister(final int threads, final int maxPrefetched, final boolean inodeOrdered) {
+        this.pool = new ForkJoinPool(threads);
+        this.maxPrefetched = maxPrefetched;
+        this.inodeOrdered = inodeOrdered;
+    }
+
+    /**
+     * Starts listing the child directories of a listing, until as many directories as allowed are listed ahead.
+     * @param listing The listing whose child directories should be listed.
+     * @param from The index of the first child to consider.
+     * @return The index of the first child which was not considered.
+     */
+    int prefetch(final DirectoryListing listing, final int from) {
+        int index = from;
+        for (; index < listing.size() && prefetched.size() < maxPrefetched; index++) {
+            if (listing.isDirectory(index)) {
+                final Path directory = listing.getChild(index);
+                prefetched.put(directory, pool.submit(() -> DirectoryListing.list(directory, true, inodeOrdered)));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the listing of a directory, waiting for it if it is being listed ahead,
+     * or listing it on the calling thread if it was not.
+     * @param directory The directory to list.
+     * @return The listing of the directory.
+     * @throws IOException If the directory could not be listed.
+     */
+    DirectoryListing take(final Path directory) throws IOException {
+        final ForkJoinTask<DirectoryListing> task = prefetched.remove(directory);
+        if (task == null) {
+            return DirectoryListing.list(directory, true, inodeOrdered);
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted listing " + directory);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Discards any listing of a directory the walker will not enter.
+     * @param directory The directory which will not be walked.
+     */
+    void discard(final Path directory) {
+        final ForkJoinTask<DirectoryListing> task = prefetched.remove(directory);
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        prefetched.clear();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.util.FileUtil;
+
+/**
+ * The children of a directory, and their attributes.
+ * The attributes of each child are read once, and carried with it so they need not be read again.
+ */
+final class DirectoryListing {
+
+    // The basic attributes and the inode number of a file, read from the unix view in one call.
+    private static final String UNIX_ATTRIBUTES = "unix:ino,size,lastModifiedTime,lastAccessTime,creationTime,"
+            + "isDirectory,isRegularFile,isSymbolicLink,isOther,fileKey";
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryListing.class);
+    private static final AtomicBoolean NO_INODES_LOGGED = new AtomicBoolean();
+
+    private final List<Path> children;
+    private final BasicFileAttributes[] attributes;
+
+    private DirectoryListing(final List<Path> children, final BasicFileAttributes[] attributes) {
+        this.children = children;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Lists a directory.
+     * @param directory The directory to list.
+     * @param readAttributes Whether to read the attributes of the children.  If false, no child is a directory.
+     * @param inodeOrdered Whether to order the children by inode number, if their attributes are read and the
+     *                     file system has inodes.  Otherwise they are in the order the directory lists them.
+     * @return A listing of the directory.
+     * @throws IOException If the directory could not be listed.
+     */
+    static DirectoryListing list(final Path directory, final boolean readAttributes, final boolean inodeOrdered)
+        throws IOException {
+        final List<Path> children = FileUtil.listFiles(directory, false, (DirectoryStream.Filter<Path>) null);
+        final BasicFileAttributes[] attributes = new BasicFileAttributes[children.size()];
+        if (readAttributes) {
+            final boolean byInode = inodeOrdered && hasInodes(directory);
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = byInode ? readUnixAttributesQuietly(children.get(i))
+                        : FileUtil.readAttributesQuietly(children.get(i));
+            }
+            if (byInode) {
+                return orderedByInode(children, attributes);
+            }
+        }
+        return new DirectoryListing(children, attributes);
+    }
+
+    private static boolean hasInodes(final Path directory) {
+        final boolean hasInodes = FileUtil.hasInodes(directory);
+        if (!hasInodes && NO_INODES_LOGGED.compareAndSet(false, true)) {
+            LOG.info("Walking in inode order was requested, but the file system of " + directory
+                    + " does not give files inode numbers.  Directories on it are walked in the order they list.");
+        }
+        return hasInodes;
+    }
+
+    // Reads the basic attributes and the inode number of a file together, so each file is only asked for once.
+    private static BasicFileAttributes readUnixAttributesQuietly(final Path path) {
+        try {
+            return new UnixAttributes(Files.readAttributes(path, UNIX_ATTRIBUTES));
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Files on spinning disks and tape-backed storage tend to be laid out in the order their inodes were allocated,
+     * so reading them in that order seeks far less than reading them in the order a directory lists them.
+     * The sort is stable, so the order is the same each time a directory is listed, which resuming a walk relies on.
+     */
+    private static DirectoryListing orderedByInode(final List<Path> children, final BasicFileAttributes[] attributes) {
+        final int size = attributes.length;
+        final long[] inodes = new long[size];
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            inodes[i] = attributes[i] instanceof UnixAttributes unix ? unix.inode() : -1L;
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> inodes[i]));
+        final Path[] orderedChildren = new Path[size];
+        final BasicFileAttributes[] orderedAttributes = new BasicFileAttributes[size];
+        for (int i = 0; i < size; i++) {
+            orderedChildren[i] = children.get(order[i]);
+            orderedAttributes[i] = attributes[order[i]];
+        }
+        return new DirectoryListing(Arrays.asList(orderedChildren), orderedAttributes);
+    }
+
+    /**
+     * @return The number of children in the directory.
+     */
+    int size() {
+        return attributes.length;
+    }
+
+    /**
+     * @param index The index of the child.
+     * @return The child at the index.
+     */
+    Path getChild(final int index) {
+        return children.get(index);
+    }
+
+    /**
+     * @param index The index of the child.
+     * @return Whether the child at the index is a directory.
+     */
+    boolean isDirectory(final int index) {
+        return attributes[index] != null && attributes[index].isDirectory();
+    }
+
+    /**
+     * @param index The index of the child.
+     * @return The attributes of the child at the index, or null if they were not read.
+     */
+    BasicFileAttributes getAttributes(final int index) {
+        return attributes[index];
+    }
+
+    /**
+     * @return A new array of the children of the directory.
+     */
+    Path[] toArray() {
+        return children.toArray(new Path[children.size()]);
+    }
+
+    /**
+     * The basic attributes of a file read from the unix attribute view, with its inode number.
+     * @param values The attributes read, by name.
+     */
+    private record UnixAttributes(Map<String, Object> values) implements BasicFileAttributes {
+
+        long inode() {
+            return (Long) values.get("ino");
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return (FileTime) values.get("lastModifiedTime");
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return (FileTime) values.get("lastAccessTime");
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return (FileTime) values.get("creationTime");
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return (Boolean) values.get("isRegularFile");
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return (Boolean) values.get("isDirectory");
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return (Boolean) values.get("isSymbolicLink");
+        }
+
+        @Override
+        public boolean isOther() {
+            return (Boolean) values.get("isOther");
+        }
+
+        @Override
+        public long size() {
+            return (Long) values.get("size");
+        }
+
+        @Override
+        public Object fileKey() {
+            return values.get("fileKey");
+        }
+    }
+}
@@ -34,8 +34,7 @@ package uk.gov.nationalarchives.droid.submitter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.util.Date;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -111,12 +110,29 @@ public class FileEventHandler {
      *            an optional node ID for the request.
      */
     public void onEvent(final Path file, ResourceId parentId, ResourceId nodeId) {
+        onEvent(file, null, parentId, nodeId);
+    }
+
+    /**
+     * Creates a job in the database and submits the job to the identification
+     * engine.
+     *
+     * @param file
+     *            the node file to handle
+     * @param attributes
+     *            the attributes of the file if they have already been read, or null to read them.
+     * @param parentId
+     *            the ID of the node's parent
+     * @param nodeId
+     *            an optional node ID for the request.
+     */
+    public void onEvent(final Path file, BasicFileAttributes attributes, ResourceId parentId, ResourceId nodeId) {
 
-        final FileTime lastModified = FileUtil.lastModifiedQuietly(file);
-        RequestMetaData metaData = new RequestMetaData(
-                FileUtil.sizeQuietly(file),
-                lastModified == null ? new Date(0).getTime() : new Date(lastModified.toMillis()).getTime(),
-                FileUtil.fileName(file));
+        // The attributes are read only once, and are carried into the request so they are not read again.
+        final BasicFileAttributes fileAttributes = attributes == null ? FileUtil.readAttributesQuietly(file) : attributes;
+        final RequestMetaData metaData = fileAttributes == null
+                ? new RequestMetaData(-1L, 0L, FileUtil.fileName(file))
+                : new RequestMetaData(fileAttributes, FileUtil.fileName(file));
 
         RequestIdentifier identifier = new RequestIdentifier(file.toUri());
         identifier.setParentResourceId(parentId);
@@ -33,11 +33,13 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.nio.file.Path;
 
+import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.IdentificationRequestFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.TopAndTailExtent;
 
 /**
  * @author rflitcroft
@@ -45,13 +47,35 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
  */
 public class FileIdentificationRequestFactory implements IdentificationRequestFactory<Path> {
 
+    private DroidCore droidCore;
+    private boolean deferReads;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final IdentificationRequest<Path> newRequest(RequestMetaData metaData,
                                                         RequestIdentifier identifier) {
-        return new FileSystemIdentificationRequest(metaData, identifier);
+        final TopAndTailExtent extent = droidCore == null ? TopAndTailExtent.DEFAULT : droidCore.getTopAndTailExtent();
+        final FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(metaData, identifier, extent);
+        request.setDeferReads(deferReads);
+        return request;
+    }
+
+    /**
+     * @param droidCore the binary signature identifier, used to size the buffers for each file
+     *                  to the bytes its signatures can match in.
+     */
+    public void setDroidCore(DroidCore droidCore) {
+        this.droidCore = droidCore;
+    }
+
+    /**
+     * @param deferReads whether opening a request only opens its file, leaving its bytes to be prefetched
+     *                   by the submission gateway.
+     */
+    public void setDeferReads(boolean deferReads) {
+        this.deferReads = deferReads;
     }
     
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+
+/**
+ * Gives each file store (mount) files are read from its own pool of identification threads, so that a slow
+ * device such as a network share or a USB disk cannot take every thread from files on faster devices,
+ * and so that the number of files read at once can be tuned for each device.
+ * <p>
+ * Each pool has a number of threads, which is how many files on the store are read at once, and a read-ahead,
+ * which is how many opened files can queue for the store before the walker blocks.  Both default to the
+ * values set here, and can be overridden for a store by its name (e.g. /dev/sdb1) or its type (e.g. nfs)
+ * with entries like <code>nfs=16:32,/dev/sdb1=1:2</code>.  If the number of threads is zero, no pools
+ * are made and all files are read on the shared identification pool.
+ * </p>
+ */
+public class FileStoreExecutors {
+
+    private static final int DEFAULT_READ_AHEAD = 8;
+    private static final int MAX_CACHED_DIRECTORIES = 1024;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final String ENTRY_SEPARATOR = ",";
+    private static final String KEY_SEPARATOR = "=";
+    private static final String LIMIT_SEPARATOR = ":";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Map<FileStore, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+    private final Map<String, int[]> limits = new HashMap<>();
+
+    // Finding the store of a path reads the mount table, so the store of each recently seen directory is cached.
+    private final Map<Path, FileStore> directoryStores = Collections.synchronizedMap(
+        new LinkedHashMap<Path, FileStore>(MAX_CACHED_DIRECTORIES, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, FileStore> eldest) {
+                return size() > MAX_CACHED_DIRECTORIES;
+            }
+        });
+
+    private int threads;
+    private int readAhead = DEFAULT_READ_AHEAD;
+    private volatile boolean closed;
+
+    /**
+     * Returns the pool to read a file with, creating it the first time a file on its store is seen.
+     * @param file The file to be read.
+     * @return The pool for the store the file is on, or null if files should be read on the shared pool
+     *         because there are no per-store pools, or the store could not be found.
+     */
+    public ExecutorService executorFor(Path file) {
+        if (threads <= 0 || closed || file == null) {
+            return null;
+        }
+        final FileStore store = getStore(file);
+        return store == null ? null : pools.computeIfAbsent(store, this::newPool);
+    }
+
+    /**
+     * Returns the number of tasks waiting in the queue of each store's pool.
+     * @return A map of store name to the number of tasks waiting for that store.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Map.Entry<FileStore, ThreadPoolExecutor> entry : pools.entrySet()) {
+            depths.put(entry.getKey().name(), entry.getValue().getQueue().size());
+        }
+        return depths;
+    }
+
+    /**
+     * Shuts down the pools of all stores.
+     */
+    public void close() {
+        closed = true;
+        for (ThreadPoolExecutor pool : pools.values()) {
+            pool.shutdownNow();
+        }
+        pools.clear();
+        directoryStores.clear();
+    }
+
+    private FileStore getStore(Path file) {
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path key = directory == null ? file : directory;
+        FileStore store = directoryStores.get(key);
+        if (store == null) {
+            try {
+                store = Files.getFileStore(key);
+                directoryStores.put(key, store);
+            } catch (IOException | SecurityException e) {
+                log.debug(String.format("Could not find the file store of %s: %s", key, e.getMessage()), e);
+            }
+        }
+        return store;
+    }
+
+    private ThreadPoolExecutor newPool(FileStore store) {
+        int[] limit = limits.get(store.name());
+        if (limit == null) {
+            limit = limits.getOrDefault(store.type(), new int[] {threads, readAhead});
+        }
+        final int storeThreads = limit[0];
+        final int storeReadAhead = limit[1] < 0 ? readAhead : limit[1];
+        log.info(String.format("Reading files on %s (%s) with %d threads and a read-ahead of %d",
+                store.name(), store.type(), storeThreads, storeReadAhead));
+        final BlockingThreadPoolExecutorFactory factory = new BlockingThreadPoolExecutorFactory();
+        factory.setCorePoolSize(storeThreads);
+        factory.setMaxPoolSize(storeThreads);
+        factory.setWorkQueueSize(storeReadAhead);
+        factory.setThreadNamePrefix("store-thread-" + store.name() + "-");
+        return factory.newInstance();
+    }
+
+    /**
+     * @param threads The number of threads reading files on each store, or zero to read all files on the
+     *                shared identification pool.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param readAhead The number of opened files which can wait for a thread on each store.
+     */
+    public void setReadAhead(int readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Sets the threads and read-ahead of particular stores, as comma separated entries of
+     * <code>store=threads:readAhead</code>, where the store is its name or its type, and the read-ahead
+     * may be left out.  Entries which cannot be parsed are logged and ignored.
+     * @param storeLimits The threads and read-ahead of particular stores, or empty for none.
+     */
+    public void setStoreLimits(String storeLimits) {
+        limits.clear();
+        if (storeLimits == null || storeLimits.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : storeLimits.split(ENTRY_SEPARATOR)) {
+            final String[] keyValue = entry.trim().split(KEY_SEPARATOR, 2);
+            final int[] limit = keyValue.length == 2 ? parseLimit(keyValue[1]) : null;
+            if (limit == null) {
+                log.warn(String.format("Ignoring file store limits which could not be read: %s", entry));
+            } else {
+                limits.put(keyValue[0].trim(), limit);
+            }
+        }
+    }
+
+    // Returns the threads and read-ahead (or -1 to use the default), or null if they are not valid.
+    private static int[] parseLimit(String value) {
+        final String[] values = value.split(LIMIT_SEPARATOR, 2);
+        try {
+            final int storeThreads = Integer.parseInt(values[0].trim());
+            final int storeReadAhead = values.length > 1 ? Integer.parseInt(values[1].trim()) : -1;
+            final boolean valid = storeThreads > 0 && (storeReadAhead >= 0 || values.length == 1);
+            return valid ? new int[] {storeThreads, storeReadAhead} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -33,10 +33,10 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -52,8 +52,8 @@ import jakarta.xml.bind.annotation.XmlElementWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequestFilter;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
-import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
  * A file walker which supports resume.
@@ -83,6 +83,10 @@ public class FileWalker {
     private FileWalkerHandler restrictedDirectoryHandler;
     private boolean fastForward;
     private List<ProgressEntry> recoveryRoad;
+    private int listingThreads;
+    private boolean inodeOrdered;
+    private IdentificationRequestFilter fileFilter;
+    private DirectoryLister lister;
     
     /**
      * Default Constructor.
@@ -147,7 +151,16 @@ public class FileWalker {
             progress = new ArrayDeque<>();
         }
         
-        walk(Paths.get(root), 0);
+        if (recursive && listingThreads > 1) {
+            try (DirectoryLister directoryLister = new DirectoryLister(listingThreads, inodeOrdered)) {
+                lister = directoryLister;
+                walk(Paths.get(root), 0);
+            } finally {
+                lister = null;
+            }
+        } else {
+            walk(Paths.get(root), 0);
+        }
     }
 
     private static List<ProgressEntry> reverseProgress(final Deque<ProgressEntry> progress) {
@@ -161,20 +174,31 @@ public class FileWalker {
 
     private void walk(final Path directory, final int depth) throws IOException {
         if (handleDirectory(directory, depth)) {
-            final List<Path> children = FileUtil.listFiles(directory, false, (DirectoryStream.Filter<Path>) null);
-            handleDirectoryStart(directory, depth, children.toArray(new Path[children.size()]));
-            if (recursive || depth == 0) {
+            final boolean walkChildren = recursive || depth == 0;
+            final DirectoryListing children = lister == null
+                    ? DirectoryListing.list(directory, walkChildren, inodeOrdered) : lister.take(directory);
+            handleDirectoryStart(directory, depth, children.toArray());
+            if (walkChildren) {
                 final int childDepth = depth + 1;
-                for (final Path child : children) {
-                    if (Files.isDirectory(child)) {
+                // Start listing sub-directories while files are handled, and keep listing ahead as they are walked.
+                int nextToList = lister == null ? 0 : lister.prefetch(children, 0);
+                for (int i = 0; i < children.size(); i++) {
+                    final Path child = children.getChild(i);
+                    if (children.isDirectory(i)) {
+                        if (lister != null) {
+                            nextToList = lister.prefetch(children, nextToList);
+                        }
                         walk(child, childDepth);
                     } else {
-                        handleFile(child, childDepth);
+                        handleFile(child, children.getAttributes(i), childDepth);
                     }
                 }
             }
             handleDirectoryEnd(directory, depth);
         } else { // can't access children - restricted directory.
+            if (lister != null) {
+                lister.discard(directory);
+            }
             handleRestrictedDirectory(directory, depth);
         }
     }
@@ -241,8 +265,21 @@ public class FileWalker {
      */
     protected void handleFile(final Path file, final int depth)
         throws IOException {
+        handleFile(file, null, depth);
+    }
+
+    /**
+     *
+     * @param file file to handle.
+     * @param attributes the attributes of the file read when its directory was listed, or null if they weren't.
+     *                   If they were read, the file is not checked again.
+     * @param depth level to which to check
+     * @throws IOException  An error occurs in accessing the resource
+     */
+    protected void handleFile(final Path file, final BasicFileAttributes attributes, final int depth)
+        throws IOException {
 
-        if (!SubmitterUtils.isFileSystemAvailable(file, topLevelAbsolutePath)) {
+        if (attributes == null && !SubmitterUtils.isFileSystemAvailable(file, topLevelAbsolutePath)) {
             log.error(String.format(FILE_SYSTEM_UNAVAILABLE, file.toAbsolutePath().toString()));
             throw new IOException(file.toAbsolutePath().toString());
         }
@@ -257,12 +294,21 @@ public class FileWalker {
         }
 
         final ProgressEntry progressEntry = progress.peek();
-        if (!Files.isDirectory(file)) {
+        if (attributes != null) {
+            if (passesFileFilter(file, attributes)) {
+                fileHandler.handle(file, attributes, depth, progressEntry);
+            }
+        } else if (!Files.isDirectory(file)) {
             fileHandler.handle(file, depth, progressEntry);
         }
         progressEntry.removeChild(file);
     }
 
+    private boolean passesFileFilter(final Path file, final BasicFileAttributes attributes) {
+        return fileFilter == null || fileFilter.passesFilter(file.getFileName().toString(),
+                attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
     /**
      *
      * @param directory directory.
@@ -300,6 +346,35 @@ public class FileWalker {
         }
     }
     
+    /**
+     * Sets how many threads list directories ahead of a recursive walk.
+     * Files and directories are still handled one at a time in the same order, so resume is unaffected.
+     * @param listingThreads the number of threads to list directories with; one or less lists them
+     *                       on the walking thread.
+     */
+    public void setListingThreads(final int listingThreads) {
+        this.listingThreads = listingThreads;
+    }
+
+    /**
+     * Sets whether the children of each directory are walked in the order of their inode numbers rather than
+     * the order the directory lists them in, which reduces seeking on spinning disks and tape-backed storage.
+     * The order is the same each time a directory is listed, so resume is unaffected.
+     * @param inodeOrdered whether to walk the children of each directory in inode order.
+     */
+    public void setInodeOrdered(final boolean inodeOrdered) {
+        this.inodeOrdered = inodeOrdered;
+    }
+
+    /**
+     * Sets a filter which files found in a listed directory must pass before they are handled.
+     * Files which do not pass are skipped without being handed to the file handler.
+     * @param fileFilter the filter files must pass, or null to handle all files.
+     */
+    public void setFileFilter(final IdentificationRequestFilter fileFilter) {
+        this.fileFilter = fileFilter;
+    }
+
     /**
      * @param fileHandler the fileHandler to set
      */
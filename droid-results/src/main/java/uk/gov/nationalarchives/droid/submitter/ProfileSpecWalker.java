@@ -34,6 +34,7 @@ package uk.gov.nationalarchives.droid.submitter;
 import java.io.IOException;
 
 
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.profile.ProfileSpec;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 
@@ -67,4 +68,11 @@ public interface ProfileSpecWalker {
      */
     FileEventHandler getFileEventHandler();
 
+    /**
+     * Sets a filter which resources must pass before they are submitted for identification.
+     * Walkers which already know the name, size and date of a resource skip it if it does not pass.
+     * @param filter the identification filter, or null to walk all resources.
+     */
+    void setIdentificationFilter(Filter filter);
+
 }
@@ -35,11 +35,14 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 
 
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequestFilter;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.profile.AbstractProfileResource;
 import uk.gov.nationalarchives.droid.profile.ProfileSpec;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
@@ -64,6 +67,9 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
     private DirectoryEventHandler directoryEventHandler;
     private ResultHandler resultHandler;
     private ProgressMonitor progressMonitor;
+    private int directoryListingThreads;
+    private boolean inodeOrderedWalk;
+    private IdentificationRequestFilter identificationFilter;
 
     private transient volatile boolean cancelled;
 
@@ -116,6 +122,7 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
 
             if (resource.isS3Object()) {
                 S3Walker s3Walker = new S3Walker(progressMonitor, resultHandler, s3EventHandler);
+                s3Walker.setIdentificationFilter(identificationFilter);
                 s3Walker.walk(resource);
             } else if (resource.isDirectory()) {
                 processDirectory(resource, fastForward, walkState);
@@ -149,6 +156,20 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         this.directoryEventHandler = directoryEventHandler;
     }
 
+    /**
+     * @param directoryListingThreads the number of threads which list directories ahead of a recursive walk.
+     */
+    public void setDirectoryListingThreads(int directoryListingThreads) {
+        this.directoryListingThreads = directoryListingThreads;
+    }
+
+    /**
+     * @param inodeOrderedWalk whether to walk the children of each directory in the order of their inode numbers.
+     */
+    public void setInodeOrderedWalk(boolean inodeOrderedWalk) {
+        this.inodeOrderedWalk = inodeOrderedWalk;
+    }
+
     /**
      * To cancel Profile speck walker.
      */
@@ -176,6 +197,12 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         return fileEventHandler;
     }
 
+    @Override
+    public void setIdentificationFilter(Filter filter) {
+        final IdentificationRequestFilter requestFilter = new IdentificationRequestFilter(filter);
+        this.identificationFilter = requestFilter.isFiltering() ? requestFilter : null;
+    }
+
 
     private URI toURI(final Path file) {
         return SubmitterUtils.toURI(file.toFile(), uriBuilder);
@@ -196,17 +223,26 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         }
 
         fileWalker = walkState.getCurrentFileWalker();
+        fileWalker.setListingThreads(directoryListingThreads);
+        fileWalker.setInodeOrdered(inodeOrderedWalk);
+        fileWalker.setFileFilter(identificationFilter);
 
         fileWalker.setFileHandler(new FileWalkerHandler() {
 
             @Override
             public ResourceId handle(final Path file, final int depth, final ProgressEntry parent) {
+                return handle(file, null, depth, parent);
+            }
+
+            @Override
+            public ResourceId handle(final Path file, final BasicFileAttributes attributes, final int depth,
+                                     final ProgressEntry parent) {
                 if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
                         || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
                     progressMonitor.startJob(toURI(file));
                 }
                 ResourceId parentId = parent == null ? null : parent.getResourceId();
-                fileEventHandler.onEvent(file, parentId, null);
+                fileEventHandler.onEvent(file, attributes, parentId, null);
                 return null;
             }
         });
@@ -56,12 +56,23 @@ public class S3Walker {
 
     private final S3EventHandler s3EventHandler;
 
+    private IdentificationRequestFilter identificationFilter;
+
     public S3Walker(final ProgressMonitor progressMonitor, final ResultHandler resultHandler, final S3EventHandler s3EventHandler) {
         this.progressMonitor = progressMonitor;
         this.resultHandler = resultHandler;
         this.s3EventHandler = s3EventHandler;
     }
 
+    /**
+     * Sets a filter which objects must pass to be submitted for identification.  Objects are tested using
+     * the size and date given in the bucket listing, so those which do not pass are never fetched.
+     * @param identificationFilter the filter objects must pass, or null to submit all objects.
+     */
+    public void setIdentificationFilter(IdentificationRequestFilter identificationFilter) {
+        this.identificationFilter = identificationFilter;
+    }
+
     public void walk(AbstractProfileResource resource) {
         S3Result s3Result = getS3Result(resource);
         progressMonitor.setTargetCount(s3Result.totalCount());
@@ -120,26 +131,28 @@ public class S3Walker {
                 parent = uriWithBucket + s3Object.key().substring(0, lastSlashIndex -1);
             }
 
-            if (!dirToFileMap.containsKey(parent)) {
-                List<String> existingKeys = new ArrayList<>();
-                existingKeys.add(keyUri);
+            // A directory is still recorded when none of the objects in it pass the filter.
+            List<String> existingKeys = dirToFileMap.get(parent);
+            if (existingKeys == null) {
+                existingKeys = new ArrayList<>();
                 dirToFileMap.put(parent, existingKeys);
-                if (FORWARD_SLASH.equals(URI.create(parent).getPath())) {
-                    totalCount = totalCount + 1;
-                } else {
-                    totalCount = totalCount + 2;
+                if (!FORWARD_SLASH.equals(URI.create(parent).getPath())) {
+                    totalCount++;
                 }
-
-            } else {
-                List<String> existingKeys = dirToFileMap.get(parent);
+            }
+            if (passesFilter(s3Object)) {
                 existingKeys.add(keyUri);
-                dirToFileMap.put(parent, existingKeys);
                 totalCount++;
             }
         }
         return new S3Result(dirToFileMap, totalCount);
     }
 
+    private boolean passesFilter(S3Object s3Object) {
+        return identificationFilter == null || s3Object.size() == null || s3Object.lastModified() == null
+                || identificationFilter.passesFilter(s3Object.key(), s3Object.size(), s3Object.lastModified().toEpochMilli());
+    }
+
     private record S3Result(Map<String, List<String>> dirToFileMap, int totalCount) {
     }
 
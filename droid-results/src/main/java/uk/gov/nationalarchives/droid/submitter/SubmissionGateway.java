@@ -32,16 +32,21 @@
 package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,12 +69,31 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.control.PauseAspect;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.CompositeHashGenerator;
 import uk.gov.nationalarchives.droid.core.interfaces.hash.HashGenerator;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.profile.throttle.SubmissionThrottle;
 
 /**
  * Acts as a DroidCore proxy by keeping track of in-flight identification
  * requests. Requests are removed from the queue when the droid ID task finishes
  * All requests should come through this pipeline.
+ * <p>
+ * Requests pass through up to three stages, each of which can be given its own executor:
+ * binary signature matching, post-processing (hashing, container and extension matching and handing
+ * results to the result handler) and archive expansion.  If no executor is set for the post-processing
+ * or archive stages, that work runs on the thread which finished the previous stage.
+ * </p>
+ * <p>
+ * If file store executors are set, files are matched on the pool of the file store they are on,
+ * so that slow devices do not take every identification thread.  All other requests, and the
+ * post-processing and archive stages of every request, still share the same pools.
+ * </p>
+ * <p>
+ * If a prefetch executor is set, files are read ahead of identification on it: the next files to identify have
+ * their top and tail read while the identification threads are matching earlier files.
+ * </p>
  * @author rflitcroft
  *
  *
@@ -86,12 +110,20 @@ public class SubmissionGateway implements AsynchDroid {
      */
     private static final String ARCHIVE_ERROR = "Could not process the archival format(%s): %s\t%s\t%s";
 
+    private static final String IDENTIFICATION_STAGE = "identification";
+
     //CHECKSTYLE:ON    
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final JobCounter jobCounter = new JobCounter();
     private DroidCore droidCore;
     private ResultHandler resultHandler;
     private ExecutorService executorService;
+    private ExecutorService postProcessExecutorService;
+    private ExecutorService archiveExecutorService;
+    private FileStoreExecutors fileStoreExecutors;
+    private ExecutorService prefetchExecutorService;
+    private Semaphore prefetchPermits;
+    private int maxPrefetchedFiles;
     private boolean processZip;
     private boolean processTar;
     private boolean processGzip;
@@ -113,6 +145,7 @@ public class SubmissionGateway implements AsynchDroid {
     private SubmissionQueue submissionQueue;
     private ReplaySubmitter replaySubmitter;
     private PauseAspect pauseControl;
+    private SubmissionThrottle submissionThrottle;
     private IdentificationRequestFilter identificationFilter; // A filter to decide whether a resource should be submitted for identification.
 
     private Set<IdentificationRequest> requests = Collections.synchronizedSet(new HashSet<IdentificationRequest>());
@@ -188,10 +221,60 @@ public class SubmissionGateway implements AsynchDroid {
         };
 
         FutureTask<IdentificationResultCollection> task = new SubmissionFutureTask(callable, request);
-        executorService.submit(task);
+        if (submissionThrottle != null) {
+            submissionThrottle.requestSubmitted();
+        }
+        if (prefetchPermits != null && request instanceof FileSystemIdentificationRequest) {
+            prefetch((FileSystemIdentificationRequest) request, task);
+        } else {
+            getIdentificationExecutor(request).submit(task);
+        }
         return task;
     }
 
+    // Reads the top and tail of a file on the prefetch executor, then hands it to be identified.
+    // Blocks if as many files as are allowed are already being prefetched.
+    private void prefetch(FileSystemIdentificationRequest request, FutureTask<IdentificationResultCollection> task) {
+        prefetchPermits.acquireUninterruptibly();
+        try {
+            prefetchExecutorService.execute(() -> {
+                try {
+                    request.prefetch();
+                } catch (IOException e) {
+                    // The file is read again when it is identified, which reports the error.
+                    log.debug(e.getMessage(), e);
+                } finally {
+                    identifyPrefetched(request, task);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetchPermits.release();
+            getIdentificationExecutor(request).submit(task);
+        }
+    }
+
+    private void identifyPrefetched(IdentificationRequest request, FutureTask<IdentificationResultCollection> task) {
+        try {
+            getIdentificationExecutor(request).submit(task);
+        } catch (RejectedExecutionException e) {
+            log.debug(e.getMessage(), e);
+            task.cancel(false);
+        } finally {
+            prefetchPermits.release();
+        }
+    }
+
+    private ExecutorService getIdentificationExecutor(IdentificationRequest request) {
+        if (fileStoreExecutors != null && request instanceof FileSystemIdentificationRequest) {
+            final ExecutorService storeExecutor =
+                    fileStoreExecutors.executorFor(((FileSystemIdentificationRequest) request).getFile());
+            if (storeExecutor != null) {
+                return storeExecutor;
+            }
+        }
+        return executorService;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -203,15 +286,9 @@ public class SubmissionGateway implements AsynchDroid {
     private void generateHash(IdentificationRequest request) throws IOException {
         if (generateHash) {
             try {
-                InputStream in = request.getSourceInputStream();
-                try {
-                    String hash = hashGenerator.hash(in);
-                    request.getRequestMetaData().setHash(hash);
-                } finally {
-                    if (in != null) {
-                        in.close();
-                    }
-                }
+                // Hashes the windows the request was identified from, so bytes already read are not read again.
+                String hash = hashGenerator.hash(request);
+                setHashes(request.getRequestMetaData(), hash);
                 //CHECKSTYLE:OFF - generating a hash can't prejudice any other results
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
@@ -220,6 +297,17 @@ public class SubmissionGateway implements AsynchDroid {
         }
     }
 
+    // When several algorithms are used, the hash of each is kept apart, and the hash of the first is the node's hash.
+    private void setHashes(RequestMetaData metaData, String hash) {
+        if (hashGenerator instanceof CompositeHashGenerator composite && composite.getAlgorithms().size() > 1) {
+            Map<String, String> hashes = composite.getHashes(hash);
+            metaData.setHash(hashes.get(composite.getAlgorithms().get(0)));
+            metaData.setHashes(hashes);
+        } else {
+            metaData.setHash(hash);
+        }
+    }
+
     private IdentificationResultCollection handleExtensions(IdentificationRequest request,
                                                             IdentificationResultCollection results) {
         IdentificationResultCollection extensionResults = results;
@@ -265,6 +353,10 @@ public class SubmissionGateway implements AsynchDroid {
         }
         submissionQueue.add(request.getIdentifier());
         jobCounter.decrement();
+        runStage(archiveExecutorService, () -> expandArchive(request, archiveFormat), () -> finishArchive(request));
+    }
+
+    private void expandArchive(IdentificationRequest request, String archiveFormat) {
         try {
             //BNO: Does this always return the same archive handler for any given container format?
             //And will it end up using the same submission gateway, or a new one with a different thread pool?
@@ -287,8 +379,41 @@ public class SubmissionGateway implements AsynchDroid {
             resultHandler.handleError(new IdentificationException(
                     request, IdentificationErrorType.OTHER, e));
         } finally {
-            submissionQueue.remove(request.getIdentifier());
-            jobCounter.decrementPostProcess();
+            finishArchive(request);
+        }
+    }
+
+    private void finishArchive(IdentificationRequest request) {
+        closeRequest(request);
+        submissionQueue.remove(request.getIdentifier());
+        jobCounter.decrementPostProcess();
+    }
+
+    /**
+     * Runs work on the executor for a stage, or on the current thread if the stage has no executor.
+     * @param stage The executor for the stage, or null.
+     * @param work The work to run.
+     * @param abandon What to do if the stage will not accept the work because it has been shut down.
+     */
+    private void runStage(ExecutorService stage, Runnable work, Runnable abandon) {
+        if (stage == null) {
+            work.run();
+        } else {
+            try {
+                stage.execute(work);
+            } catch (RejectedExecutionException e) {
+                log.debug(e.getMessage(), e);
+                abandon.run();
+            }
+        }
+    }
+
+    private void closeRequest(IdentificationRequest request) {
+        requests.remove(request);
+        try {
+            request.close();
+        } catch (IOException e) {
+            log.error(String.format("Error closing request [%s]", request.getIdentifier().getUri()), e);
         }
     }
 
@@ -373,6 +498,30 @@ public class SubmissionGateway implements AsynchDroid {
         return null;
     }
 
+    /**
+     * Returns the number of tasks waiting in the queue of each stage which has its own thread pool.
+     * The identification pool of each file store is given as identification:storeName.
+     * @return A map of stage name to the number of tasks waiting for that stage.
+     */
+    public Map<String, Integer> getStageQueueDepths() {
+        final Map<String, Integer> depths = new LinkedHashMap<>();
+        addQueueDepth(depths, IDENTIFICATION_STAGE, executorService);
+        if (fileStoreExecutors != null) {
+            for (Map.Entry<String, Integer> store : fileStoreExecutors.getQueueDepths().entrySet()) {
+                depths.put(IDENTIFICATION_STAGE + ":" + store.getKey(), store.getValue());
+            }
+        }
+        addQueueDepth(depths, "postProcess", postProcessExecutorService);
+        addQueueDepth(depths, "archive", archiveExecutorService);
+        return depths;
+    }
+
+    private static void addQueueDepth(Map<String, Integer> depths, String stage, ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            depths.put(stage, ((ThreadPoolExecutor) executor).getQueue().size());
+        }
+    }
+
     /**
      * Waits until all in-process jobs have completed.
      * @throws InterruptedException if the calling thread was interrupted.
@@ -433,6 +582,53 @@ public class SubmissionGateway implements AsynchDroid {
         this.executorService = executorService;
     }
 
+    /**
+     * @param postProcessExecutorService the executor for hashing, container and extension matching and
+     *                                   handling results, or null to run them on the identification thread.
+     */
+    public void setPostProcessExecutorService(ExecutorService postProcessExecutorService) {
+        this.postProcessExecutorService = postProcessExecutorService;
+    }
+
+    /**
+     * @param archiveExecutorService the executor for expanding archives, or null to expand them on the
+     *                               post-processing thread.
+     */
+    public void setArchiveExecutorService(ExecutorService archiveExecutorService) {
+        this.archiveExecutorService = archiveExecutorService;
+    }
+
+    /**
+     * @param fileStoreExecutors the pools to match files on each file store with, or null to match
+     *                           all files on the identification executor.
+     */
+    public void setFileStoreExecutors(FileStoreExecutors fileStoreExecutors) {
+        this.fileStoreExecutors = fileStoreExecutors;
+    }
+
+    /**
+     * @param prefetchExecutorService the executor to read files ahead of identification on, or null to read
+     *                                them only when they are identified.
+     */
+    public void setPrefetchExecutorService(ExecutorService prefetchExecutorService) {
+        this.prefetchExecutorService = prefetchExecutorService;
+        setPrefetchPermits();
+    }
+
+    /**
+     * @param maxPrefetchedFiles the most files which can be read ahead of identification at once,
+     *                           or zero to read files only when they are identified.
+     */
+    public void setMaxPrefetchedFiles(int maxPrefetchedFiles) {
+        this.maxPrefetchedFiles = maxPrefetchedFiles;
+        setPrefetchPermits();
+    }
+
+    private void setPrefetchPermits() {
+        prefetchPermits = prefetchExecutorService != null && maxPrefetchedFiles > 0
+                ? new Semaphore(maxPrefetchedFiles) : null;
+    }
+
     /**
      * @param processZip set whether to process Zip files
      */
@@ -534,6 +730,13 @@ public class SubmissionGateway implements AsynchDroid {
         this.pauseControl = pauseAspect;
     }
 
+    /**
+     * @param submissionThrottle a throttle to tell when requests are submitted and identified.
+     */
+    public void setSubmissionThrottle(SubmissionThrottle submissionThrottle) {
+        this.submissionThrottle = submissionThrottle;
+    }
+
     /**
      * @param hashGenerator the hashGenerator to set
      */
@@ -556,11 +759,23 @@ public class SubmissionGateway implements AsynchDroid {
     }
 
     /**
-     * Shuts down the executor service and closes any in-flight requests.
+     * Shuts down the executor services and closes any in-flight requests.
      * @throws IOException if temp files could not be deleted.
      */
     public void close() throws IOException {
         executorService.shutdownNow();
+        if (postProcessExecutorService != null) {
+            postProcessExecutorService.shutdownNow();
+        }
+        if (archiveExecutorService != null) {
+            archiveExecutorService.shutdownNow();
+        }
+        if (prefetchExecutorService != null) {
+            prefetchExecutorService.shutdownNow();
+        }
+        if (fileStoreExecutors != null) {
+            fileStoreExecutors.close();
+        }
         for (IdentificationRequest request : requests) {
             request.close();
         }
@@ -610,10 +825,24 @@ public class SubmissionGateway implements AsynchDroid {
 
         @Override
         protected void done() {
-            boolean jobCountDecremented = false;
+            if (submissionThrottle != null) {
+                // Only the time spent reading is sampled, so slow matching does not make the throttle back off.
+                if (request instanceof FileSystemIdentificationRequest) {
+                    submissionThrottle.readCompleted(((FileSystemIdentificationRequest) request).getReadNanos());
+                }
+                submissionThrottle.requestCompleted();
+            }
+            runStage(postProcessExecutorService, this::postProcess, () -> {
+                closeRequest(request);
+                jobCounter.decrement();
+            });
+        }
+
+        private void postProcess() {
+            boolean archiveHandedOff = false;
             try {
-                generateHash(request);
                 IdentificationResultCollection results = get();
+                generateHash(request); // only requests which were identified are hashed.
                 IdentificationResultCollection containerResults = handleContainer(request, results);
                 if (containerResults == null) {
                     // no container results - process the normal results.
@@ -627,7 +856,7 @@ public class SubmissionGateway implements AsynchDroid {
                     }
                     if (archiveFormat != null) {
                         handleArchive(request, results, archiveFormat);
-                        jobCountDecremented = true;
+                        archiveHandedOff = true;
                     } else { // just process the results so far:
                         results.setArchive(getArchiveFormat(results) != null);
                         ResourceId id = resultHandler.handle(results);
@@ -644,27 +873,23 @@ public class SubmissionGateway implements AsynchDroid {
                 log.error(cause.getStackTrace().toString(), cause);
                 resultHandler.handleError(new IdentificationException(
                         request, IdentificationErrorType.OTHER, cause));
+            } catch (CancellationException e) {
+                // The request could not be queued for identification, e.g. as the gateway was shutting down.
+                resultHandler.handleError(new IdentificationException(
+                        request, IdentificationErrorType.OTHER, e));
             } catch (InterruptedException e) {
                 log.debug(e.getMessage(), e);
             } catch (IOException e) {
                 resultHandler.handleError(new IdentificationException(
                         request, IdentificationErrorType.OTHER, e));
             } finally {
-                closeRequest();
-                if (!jobCountDecremented) {
+                // An archive closes its own request once its entries have been submitted.
+                if (!archiveHandedOff) {
+                    closeRequest(request);
                     jobCounter.decrement();
                 }
             }
         }
-
-        private void closeRequest() {
-            requests.remove(request);
-            try {
-                request.close();
-            } catch (IOException e) {
-                log.error(String.format("Error closing request [%s]", request.getIdentifier().getUri()), e);
-            }
-        }
     }
 
 }
@@ -55,6 +55,7 @@ public final class FileUtil {
     /**
      * 
      */
+    private static final String UNIX_VIEW = "unix";
     private static final int BYTES_IN_KILOBYTE = 1024;
     private static final SimpleFileVisitor<Path> DELETE_DIR_VISITOR = new DeleteDirVisitor();
 
@@ -122,6 +123,29 @@ public final class FileUtil {
         return path.getFileName().toString();
     }
 
+    /**
+     * Reads the basic attributes of a file or directory.
+     *
+     * @param path The path to read the attributes of
+     *
+     * @return The attributes of the file or directory or null
+     */
+    public static BasicFileAttributes readAttributesQuietly(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path A path on a file system.
+     * @return Whether the file system the path is on gives files inode numbers.
+     */
+    public static boolean hasInodes(final Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains(UNIX_VIEW);
+    }
+
     /**
      * Determine the last modified time of a file or directory.
      *
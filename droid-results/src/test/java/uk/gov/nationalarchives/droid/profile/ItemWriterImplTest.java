@@ -1093,6 +1093,75 @@ public class ItemWriterImplTest {
 
     }
 
+    @Test
+    public void should_write_a_column_for_each_hash_when_several_algorithms_are_present() throws IOException {
+        try(final Writer writer = new StringWriter()) {
+            List<ProfileResourceNode> nodes = new ArrayList<>();
+
+            ProfileResourceNode node = buildProfileResourceNode(1, 1000L);
+            node.getMetaData().setHash("11111111111111111111111111111111");
+            node.getMetaData().setHashes(Map.of("md5", "11111111111111111111111111111111",
+                    "sha256", "22222222222222222222222222222222"));
+            node.addFormatIdentification(buildFormat(1));
+            nodes.add(node);
+
+            ProfileResourceNode folder = buildProfileResourceNode(2, null);
+            folder.getMetaData().setHash(null);
+            nodes.add(folder);
+
+            itemWriter.setOptions(ExportOptions.ONE_ROW_PER_FILE);
+
+            Map<String, String> headerCustomisation = new HashMap<>();
+            headerCustomisation.put("hash", "MD5_HASH,SHA256_HASH");
+            itemWriter.setHeaders(headerCustomisation);
+            itemWriter.setColumnsToWrite("NAME HASH FORMAT_NAME");
+            itemWriter.open(writer);
+            itemWriter.write(nodes);
+
+            final String[] lines = writer.toString().split(LINE_SEPARATOR);
+
+            assertEquals(3, lines.length);
+            assertEquals(toCsvRow(new String[] {"NAME", "MD5_HASH", "SHA256_HASH", "FORMAT_NAME"}), lines[0]);
+            assertEquals(toCsvRow(new String[] {"file1.txt", "11111111111111111111111111111111",
+                    "22222222222222222222222222222222", "Plain Text"}), lines[1]);
+            assertEquals(toCsvRow(new String[] {"file2.txt", "", "", ""}), lines[2]);
+        }
+    }
+
+    @Test
+    public void should_write_an_entry_for_each_hash_when_several_algorithms_are_present() throws IOException {
+        try(final Writer writer = new StringWriter()) {
+            List<ProfileResourceNode> nodes = new ArrayList<>();
+
+            ProfileResourceNode node = buildProfileResourceNode(1, 1000L);
+            node.getMetaData().setHash("11111111111111111111111111111111");
+            node.getMetaData().setHashes(Map.of("md5", "11111111111111111111111111111111",
+                    "sha256", "22222222222222222222222222222222"));
+            node.addFormatIdentification(buildFormat(1));
+            nodes.add(node);
+
+            itemWriter.setOptions(ExportOptions.ONE_ROW_PER_FORMAT);
+            itemWriter.setOutputOptions(ExportOutputOptions.JSON_OUTPUT);
+
+            Map<String, String> headerCustomisation = new HashMap<>();
+            headerCustomisation.put("hash", "SHA256_HASH,MD5_HASH");
+            itemWriter.setHeaders(headerCustomisation);
+            itemWriter.setColumnsToWrite("NAME HASH FORMAT_NAME");
+            itemWriter.open(writer);
+            itemWriter.write(nodes);
+            itemWriter.close(); // the JSON array is only closed when the writer is.
+
+            final String expectedJson = toJsonRow(new String[] {"NAME", "SHA256_HASH", "MD5_HASH", "FORMAT_NAME"},
+                    new String[] {"file1.txt", "22222222222222222222222222222222",
+                            "11111111111111111111111111111111", "Plain Text"});
+
+            final String[] lines = writer.toString().split(LINE_SEPARATOR);
+
+            assertEquals(1, lines.length);
+            assertEquals(expectedJson, lines[0]);
+        }
+    }
+
     @Test
     public void testWriteOneNodeWithTwoFormatsWithOneRowPerFormat() throws IOException {
         when(config.getBooleanProperty(DroidGlobalProperty.CSV_EXPORT_ROW_PER_FORMAT)).thenReturn(true);
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.throttle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSubmissionThrottleTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    private AdaptiveSubmissionThrottle throttle;
+
+    @Before
+    public void setup() {
+        throttle = new AdaptiveSubmissionThrottle();
+        throttle.setTargetLatencyMillis(1000);
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsBelowTarget() {
+        int initialLimit = throttle.getConcurrencyLimit();
+        complete(8, FAST);
+        assertEquals(initialLimit + 1, throttle.getConcurrencyLimit());
+        complete(8, FAST);
+        assertEquals(initialLimit + 2, throttle.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testLimitIsCutWhenLatencyIsAboveTarget() {
+        complete(8, FAST);
+        complete(8, FAST);
+        int limit = throttle.getConcurrencyLimit();
+        complete(8, SLOW);
+        assertEquals((int) (limit * 0.75), throttle.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testLimitGrowsWhenRequestsAreSlowToIdentifyButFastToRead() {
+        int initialLimit = throttle.getConcurrencyLimit();
+        for (int i = 0; i < 8; i++) {
+            throttle.requestSubmitted();
+            throttle.requestCompleted(); // no read was sampled, however long identification took.
+        }
+        assertEquals(initialLimit + 1, throttle.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testLimitNeverFallsBelowOneOrRisesAboveMaximum() {
+        for (int i = 0; i < 10; i++) {
+            complete(8, SLOW);
+        }
+        assertEquals(1, throttle.getConcurrencyLimit());
+
+        throttle.setMaxConcurrency(3);
+        for (int i = 0; i < 10; i++) {
+            complete(8, FAST);
+        }
+        assertEquals(3, throttle.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testLimitIsCutWhenRequestsCompleteFasterThanTheMaximumRate() {
+        throttle.setTargetLatencyMillis(0);
+        throttle.setMaxRequestsPerSecond(1);
+        int limit = throttle.getConcurrencyLimit();
+        complete(8, FAST);
+        assertEquals((int) (limit * 0.75), throttle.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testSubmitterWaitsUntilARequestCompletes() throws Exception {
+        fillToLimit();
+        final CountDownLatch applied = new CountDownLatch(1);
+        Thread submitter = startSubmitter(applied);
+        assertFalse(applied.await(1500, TimeUnit.MILLISECONDS));
+
+        throttle.requestCompleted();
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        submitter.join();
+    }
+
+    @Test
+    public void testSubmitterIsReleasedWhenTheThrottleIsClosed() throws Exception {
+        fillToLimit();
+        final CountDownLatch applied = new CountDownLatch(1);
+        Thread submitter = startSubmitter(applied);
+        assertFalse(applied.await(100, TimeUnit.MILLISECONDS));
+
+        throttle.close();
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        submitter.join();
+    }
+
+    @Test
+    public void testSubmitterDoesNotWaitWithoutATarget() throws Exception {
+        throttle.setTargetLatencyMillis(0);
+        fillToLimit();
+        long start = System.nanoTime();
+        throttle.apply();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(throttle.getConcurrencyLimit(), throttle.getInFlight());
+    }
+
+    private Thread startSubmitter(CountDownLatch applied) {
+        Thread submitter = new Thread(() -> {
+            try {
+                throttle.apply();
+                applied.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        return submitter;
+    }
+
+    private void fillToLimit() {
+        for (int i = throttle.getConcurrencyLimit(); i > 0; i--) {
+            throttle.requestSubmitted();
+        }
+    }
+
+    private void complete(int count, long elapsedNanos) {
+        for (int i = 0; i < count; i++) {
+            throttle.requestSubmitted();
+            throttle.readCompleted(elapsedNanos);
+            throttle.requestCompleted();
+        }
+    }
+}
@@ -36,8 +36,11 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -116,6 +119,21 @@ public class FileEventHandlerTest {
         verify(identificationEngine).submit(requestCaptor.capture());
     }
     
+    @Test
+    public void testFileAttributesAreCarriedIntoTheRequest() throws IOException {
+        fileEventHandler.setSubmissionThrottle(mock(SubmissionThrottle.class));
+
+        final Path file = Paths.get("test_sig_files/DROID 5  Architecture.doc");
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        fileEventHandler.onEvent(file, attributes, new ResourceId(1L, ""), null);
+
+        ArgumentCaptor<RequestMetaData> metaDataCaptor = ArgumentCaptor.forClass(RequestMetaData.class);
+        verify(requestFactory).newRequest(metaDataCaptor.capture(), any(RequestIdentifier.class));
+        assertSame(attributes, metaDataCaptor.getValue().getAttributes());
+        assertEquals(Long.valueOf(attributes.size()), metaDataCaptor.getValue().getSize());
+        assertEquals(Long.valueOf(attributes.lastModifiedTime().toMillis()), metaDataCaptor.getValue().getTime());
+    }
+
     @Test
     public void testFileEventHandlerAppliesThrottleAfterSubmittingAFile() throws Exception {
         
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FileStoreExecutorsTest {
+
+    private static final Path FILE = Paths.get("test_sig_files/sample.pdf");
+    private static final Path OTHER_FILE = Paths.get("test_sig_files/persistence.zip");
+
+    private final FileStoreExecutors executors = new FileStoreExecutors();
+
+    @After
+    public void tearDown() {
+        executors.close();
+    }
+
+    @Test
+    public void testNoPoolsWithoutThreads() {
+        assertNull(executors.executorFor(FILE));
+        assertTrue(executors.getQueueDepths().isEmpty());
+    }
+
+    @Test
+    public void testFilesOnTheSameStoreShareAPool() {
+        executors.setThreads(3);
+        executors.setReadAhead(5);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executors.executorFor(FILE);
+        assertNotNull(pool);
+        assertSame(pool, executors.executorFor(OTHER_FILE));
+        assertEquals(3, pool.getMaximumPoolSize());
+        assertEquals(5, pool.getQueue().remainingCapacity());
+        assertEquals(1, executors.getQueueDepths().size());
+    }
+
+    @Test
+    public void testStoreLimitsOverrideTheDefaults() throws Exception {
+        FileStore store = Files.getFileStore(FILE);
+        executors.setThreads(3);
+        executors.setReadAhead(5);
+        executors.setStoreLimits("nonsense, unknown=x, " + store.type() + "=2:7");
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executors.executorFor(FILE);
+        assertEquals(2, pool.getMaximumPoolSize());
+        assertEquals(7, pool.getQueue().remainingCapacity());
+    }
+
+    @Test
+    public void testStoreNameTakesPrecedenceAndReadAheadCanBeLeftOut() throws Exception {
+        FileStore store = Files.getFileStore(FILE);
+        executors.setThreads(3);
+        executors.setReadAhead(5);
+        executors.setStoreLimits(store.type() + "=2:7," + store.name() + "=1");
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executors.executorFor(FILE);
+        assertEquals(1, pool.getMaximumPoolSize());
+        assertEquals(5, pool.getQueue().remainingCapacity());
+    }
+
+    @Test
+    public void testNoPoolsOnceClosed() {
+        executors.setThreads(1);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executors.executorFor(FILE);
+        executors.close();
+        assertTrue(pool.isShutdown());
+        assertNull(executors.executorFor(FILE));
+    }
+}
@@ -45,6 +45,7 @@ import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -56,13 +57,19 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Ignore;
+import org.junit.Assume;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequestFilter;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.BasicFilter;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.BasicFilterCriterion;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionFieldEnum;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
 import uk.gov.nationalarchives.droid.submitter.FileWalker.ProgressEntry;
 import uk.gov.nationalarchives.droid.util.FileUtil;
 
@@ -146,8 +153,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -185,7 +192,7 @@ public class FileWalkerTest {
          assertEquals(files.get(FILES_TO_WALK), e.getFile().toPath());
       }
 
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
@@ -224,8 +231,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -271,7 +278,7 @@ public class FileWalkerTest {
       else
          fail("Error deleting test file: " + files.get(FILES_TO_WALK).toUri());
       
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
@@ -309,8 +316,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -366,7 +373,7 @@ public class FileWalkerTest {
       
       FileUtil.deleteQuietly(parentDir);
       
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
@@ -403,8 +410,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -451,7 +458,7 @@ public class FileWalkerTest {
       }
       assertEquals(0, FileUtil.listFiles(directoryToEmpty, true, (DirectoryStream.Filter<Path>) null).size());
 
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
@@ -501,8 +508,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -544,7 +551,7 @@ public class FileWalkerTest {
       assertTrue(Files.exists(Files.createFile(newFile)));
       fileSet.add(newFile);   // represent the new file in the HashSet
 
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
@@ -583,8 +590,8 @@ public class FileWalkerTest {
       final AtomicLong nextId = new AtomicLong(0);
       FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
 
-      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class);
-      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler directoryHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
+      FileWalkerHandler fileHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
 
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
@@ -630,7 +637,7 @@ public class FileWalkerTest {
       final Path newFile = file.resolveSibling(file.getFileName().toString() + "a");
       assertTrue(FileUtil.mkdirsQuietly(newFile));
 
-      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
+      FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class, CALLS_REAL_METHODS);
       when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
@@ -650,4 +657,108 @@ public class FileWalkerTest {
       // Check the files have all been processed even with addition of directory
       assertEquals(fileSet.isEmpty(), true);
    }
-}
\ No newline at end of file
+
+   @Test
+   public void testListingAheadWalksInTheSameOrder() throws Exception {
+      assertEquals(walkOrder(1), walkOrder(4));
+   }
+
+   @Test
+   public void testListingAheadResumesFromUnprocessedFile() throws Exception {
+      final int FILES_TO_WALK = 23;
+      final Set<Path> fileSet = new HashSet<>(files);
+      final AtomicLong nextId = new AtomicLong(0);
+
+      FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setListingThreads(4);
+      fileWalker.setDirectoryHandler((file, depth, parent) -> new ResourceId(nextId.incrementAndGet(), ""));
+      fileWalker.setFileHandler((file, depth, parent) -> {
+         if (file.equals(files.get(FILES_TO_WALK))) {
+            throw new DirectoryWalker.CancelException(file.toFile(), depth);
+         }
+         assertTrue(fileSet.remove(file));
+         return null;
+      });
+
+      try {
+         fileWalker.walk();
+         fail("Expected file walker to throw exception");
+      } catch (DirectoryWalker.CancelException e) {
+         assertEquals(files.get(FILES_TO_WALK), e.getFile().toPath());
+      }
+
+      fileWalker.setFileHandler((file, depth, parent) -> {
+         assertTrue(fileSet.remove(file));
+         return null;
+      });
+      fileWalker.walk();
+
+      assertTrue(fileSet.isEmpty());
+   }
+
+   @Test
+   public void testFilesWhichFailTheFilterAreNotHandled() throws Exception {
+      final List<Path> walkedFiles = new ArrayList<>();
+      final AtomicLong nextId = new AtomicLong(0);
+      FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setFileFilter(new IdentificationRequestFilter(new BasicFilter(Collections.singletonList(
+              new BasicFilterCriterion(CriterionFieldEnum.FILE_NAME, CriterionOperator.STARTS_WITH, "file1")), true)));
+      fileWalker.setDirectoryHandler((file, depth, parent) -> new ResourceId(nextId.incrementAndGet(), ""));
+      fileWalker.setFileHandler((file, depth, parent) -> {
+         walkedFiles.add(file);
+         return null;
+      });
+      fileWalker.walk();
+
+      assertEquals(15, walkedFiles.size());
+      for (Path file : walkedFiles) {
+         assertTrue(file.getFileName().toString().startsWith("file1"));
+      }
+      assertEquals(7, nextId.get());
+   }
+
+   @Test
+   public void testInodeOrderedWalkVisitsEachDirectoryInInodeOrder() throws Exception {
+      Assume.assumeTrue(FileUtil.hasInodes(TEST_ROOT));
+      final List<Path> walked = new ArrayList<>();
+      final AtomicLong nextId = new AtomicLong(0);
+      FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setInodeOrdered(true);
+      fileWalker.setListingThreads(2);
+      fileWalker.setDirectoryHandler((file, depth, parent) -> {
+         walked.add(file);
+         return new ResourceId(nextId.incrementAndGet(), "");
+      });
+      fileWalker.setFileHandler((file, depth, parent) -> {
+         walked.add(file);
+         return null;
+      });
+      fileWalker.walk();
+
+      assertEquals(new HashSet<>(walkOrder(1)), new HashSet<>(walked));
+      final Map<Path, Long> lastInode = new HashMap<>();
+      for (Path path : walked) {
+         final long inode = (Long) Files.getAttribute(path, "unix:ino");
+         final Long previous = lastInode.put(path.getParent(), inode);
+         assertTrue(previous == null || previous < inode);
+      }
+   }
+
+   private static List<Path> walkOrder(int listingThreads) throws Exception {
+      final List<Path> walked = new ArrayList<>();
+      final AtomicLong nextId = new AtomicLong(0);
+      FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setListingThreads(listingThreads);
+      fileWalker.setDirectoryHandler((file, depth, parent) -> {
+         walked.add(file);
+         return new ResourceId(nextId.incrementAndGet(), "");
+      });
+      fileWalker.setFileHandler((file, depth, parent) -> {
+         walked.add(file);
+         return null;
+      });
+      fileWalker.walk();
+      assertEquals(new HashSet<>(files).size() + 7, walked.size());
+      return walked;
+   }
+}
@@ -36,6 +36,7 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -242,28 +243,28 @@ public class ProfileSpecWalkerImplTest {
         walker.walk(profileSpec, new ProfileWalkState());
 
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file11.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file11.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file12.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file12.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file13.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file13.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file14.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file14.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file15.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file15.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
 
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
 
-        verify(fileEventHandler, times(10)).onEvent(any(Path.class), (ResourceId) any(),
+        verify(fileEventHandler, times(10)).onEvent(any(Path.class), any(BasicFileAttributes.class), (ResourceId) any(),
                 (ResourceId) isNull());
 
         verify(fileEventHandler, never()).onEvent(
@@ -277,7 +278,7 @@ public class ProfileSpecWalkerImplTest {
                         return "A Node with a File containing the String 'sub'";
                     }
 
-                }), (ResourceId) any(), (ResourceId) isNull());
+                }), any(BasicFileAttributes.class), (ResourceId) any(), (ResourceId) isNull());
     }
 
     private List<AbstractProfileResource> buildFileResources(String[] locations) {
@@ -393,63 +394,63 @@ public class ProfileSpecWalkerImplTest {
 
         walker.walk(profileSpec, new ProfileWalkState());
 
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file11.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file12.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file13.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file14.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file15.ext"), new ResourceId(1L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file111.ext"),
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file112.ext"), 
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file113.ext"),
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file114.ext"), 
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file115.ext"), 
-                new ResourceId(11L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file121.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file122.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file123.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file124.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file125.ext"), 
-                new ResourceId(12L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file211.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file212.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file213.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file214.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file215.ext"), 
-                new ResourceId(21L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file221.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file222.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file223.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file224.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file225.ext"), 
-                new ResourceId(22L, ""), null);
-
-        verify(fileEventHandler, times(30)).onEvent(any(Path.class), (ResourceId) any(),
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file11.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file12.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file13.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file14.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file15.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")), isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file111.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file112.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(11L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file113.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file114.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(11L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file115.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(11L, "")), isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file121.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(12L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file122.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(12L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file123.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(12L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file124.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(12L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file125.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(12L, "")), isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")), isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file211.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(21L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file212.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(21L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file213.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(21L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file214.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(21L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file215.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(21L, "")), isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file221.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(22L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file222.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(22L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file223.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(22L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file224.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(22L, "")), isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file225.ext")), any(BasicFileAttributes.class), 
+                eq(new ResourceId(22L, "")), isNull());
+
+        verify(fileEventHandler, times(30)).onEvent(any(Path.class), any(BasicFileAttributes.class), (ResourceId) any(),
                 (ResourceId) isNull());
     }
 
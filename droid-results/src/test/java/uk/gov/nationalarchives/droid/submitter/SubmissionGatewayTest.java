@@ -35,18 +35,27 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -55,6 +64,8 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
@@ -64,9 +75,11 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandlerFacto
 import uk.gov.nationalarchives.droid.core.interfaces.archive.TrueVfsArchiveHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ZipEntryRequestFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.control.PauseAspect;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashGenerator;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.SignatureParseException;
+import uk.gov.nationalarchives.droid.profile.throttle.SubmissionThrottle;
 
 /**
  * @author rflitcroft
@@ -222,4 +235,180 @@ public class SubmissionGatewayTest {
         assertEquals("I failed", e.getCause().getMessage());
         */
     }
+
+    @Test
+    public void testResultsAreHandledOnThePostProcessStage() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        submissionGateway.setContainerFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setArchiveFormatResolver(mock(ArchiveFormatResolver.class));
+
+        BlockingThreadPoolExecutorFactory factory = new BlockingThreadPoolExecutorFactory();
+        factory.setWorkQueueSize(4);
+        submissionGateway.setExecutorService(factory.newInstance());
+        factory.setThreadNamePrefix("post-process-thread-");
+        submissionGateway.setPostProcessExecutorService(factory.newInstance());
+        SubmissionThrottle throttle = mock(SubmissionThrottle.class);
+        submissionGateway.setSubmissionThrottle(throttle);
+
+        final AtomicReference<String> handlerThread = new AtomicReference<>();
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        doAnswer(invocation -> {
+            handlerThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(resultHandler).handle(any(IdentificationResultCollection.class));
+        submissionGateway.setResultHandler(resultHandler);
+
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        RequestMetaData metaData = new RequestMetaData(
+                Files.size(file), Files.getLastModifiedTime(file).toMillis(), "sample.pdf");
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(
+                metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+
+        submissionGateway.submit(request);
+        submissionGateway.awaitFinished();
+
+        verify(resultHandler).handle(any(IdentificationResultCollection.class));
+        assertTrue(handlerThread.get().startsWith("post-process-thread-"));
+        verify(throttle).requestSubmitted();
+        verify(throttle).readCompleted(anyLong());
+        verify(throttle).requestCompleted();
+
+        Map<String, Integer> depths = submissionGateway.getStageQueueDepths();
+        assertEquals(Integer.valueOf(0), depths.get("identification"));
+        assertEquals(Integer.valueOf(0), depths.get("postProcess"));
+        assertEquals(2, depths.size());
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testFilesAreMatchedOnThePoolOfTheirFileStore() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        submissionGateway.setContainerFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setArchiveFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setExecutorService(new BlockingThreadPoolExecutorFactory().newInstance());
+        FileStoreExecutors fileStoreExecutors = new FileStoreExecutors();
+        fileStoreExecutors.setThreads(1);
+        submissionGateway.setFileStoreExecutors(fileStoreExecutors);
+
+        final AtomicReference<String> handlerThread = new AtomicReference<>();
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        doAnswer(invocation -> {
+            handlerThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(resultHandler).handle(any(IdentificationResultCollection.class));
+        submissionGateway.setResultHandler(resultHandler);
+
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        RequestMetaData metaData = new RequestMetaData(
+                Files.size(file), Files.getLastModifiedTime(file).toMillis(), "sample.pdf");
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(
+                metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+
+        submissionGateway.submit(request);
+        submissionGateway.awaitFinished();
+
+        verify(resultHandler).handle(any(IdentificationResultCollection.class));
+        assertTrue(handlerThread.get().startsWith("store-thread-"));
+        String storeName = Files.getFileStore(file).name();
+        assertEquals(Integer.valueOf(0), submissionGateway.getStageQueueDepths().get("identification:" + storeName));
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testPrefetchedFilesAreIdentified() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        submissionGateway.setContainerFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setArchiveFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setExecutorService(new BlockingThreadPoolExecutorFactory().newInstance());
+        submissionGateway.setPrefetchExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+        submissionGateway.setMaxPrefetchedFiles(1);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        submissionGateway.setResultHandler(resultHandler);
+
+        FileIdentificationRequestFactory factory = new FileIdentificationRequestFactory();
+        factory.setDeferReads(true);
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        for (int i = 0; i < 3; i++) {
+            RequestMetaData metaData = new RequestMetaData(
+                    Files.readAttributes(file, BasicFileAttributes.class), "sample.pdf");
+            IdentificationRequest<Path> request = factory.newRequest(metaData, new RequestIdentifier(file.toUri()));
+            request.open(file);
+            submissionGateway.submit(request);
+        }
+        submissionGateway.awaitFinished();
+
+        ArgumentCaptor<IdentificationResultCollection> captor =
+                ArgumentCaptor.forClass(IdentificationResultCollection.class);
+        verify(resultHandler, times(3)).handle(captor.capture());
+        for (IdentificationResultCollection results : captor.getAllValues()) {
+            assertEquals("fmt/18", results.getResults().get(0).getPuid());
+        }
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testRequestsWhichCannotBeQueuedAfterPrefetchingAreReportedAsErrors() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        ExecutorService identificationExecutor = Executors.newSingleThreadExecutor();
+        identificationExecutor.shutdown();
+        submissionGateway.setExecutorService(identificationExecutor);
+        submissionGateway.setPrefetchExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+        submissionGateway.setMaxPrefetchedFiles(1);
+        HashGenerator hashGenerator = mock(HashGenerator.class);
+        submissionGateway.setHashGenerator(hashGenerator);
+        submissionGateway.setGenerateHash(true);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        submissionGateway.setResultHandler(resultHandler);
+
+        FileIdentificationRequestFactory factory = new FileIdentificationRequestFactory();
+        factory.setDeferReads(true);
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        RequestMetaData metaData = new RequestMetaData(
+                Files.readAttributes(file, BasicFileAttributes.class), "sample.pdf");
+        IdentificationRequest<Path> request = factory.newRequest(metaData, new RequestIdentifier(file.toUri()));
+        request.open(file);
+        submissionGateway.submit(request);
+        submissionGateway.awaitFinished();
+
+        ArgumentCaptor<IdentificationException> captor = ArgumentCaptor.forClass(IdentificationException.class);
+        verify(resultHandler).handleError(captor.capture());
+        assertSame(request, captor.getValue().getRequest());
+        verify(resultHandler, never()).handle(any(IdentificationResultCollection.class));
+        verify(hashGenerator, never()).hash(any(IdentificationRequest.class));
+        submissionGateway.close();
+    }
 }
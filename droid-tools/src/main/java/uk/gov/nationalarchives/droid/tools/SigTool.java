@@ -81,6 +81,8 @@ public final class SigTool {
     private static final String MATCH_OPTION = "m";
     private static final String OUTPUT_FILE = "o";
     private static final String INTERNAL_FILE = "i";
+    private static final String COSTS_OPTION = "r";
+    private static final String JSON_OPTION = "j";
 
 
     private static final int SUCCESS = 0;
@@ -192,7 +194,10 @@ public final class SigTool {
 
     private static void processSigFiles(CommandLine cli, PrintStream output, SignatureType sigType,
                                    boolean spaceElements, boolean noTabs) throws IOException, SignatureParseException {
-        if (cli.hasOption(EXPRESSION_OUTPUT)) {
+        if (cli.hasOption(COSTS_OPTION)) {
+            SigUtils.profileSignatureFile(output, cli.getOptionValue(FILE_OPTION), cli.getOptionValue(COSTS_OPTION),
+                    cli.hasOption(JSON_OPTION));
+        } else if (cli.hasOption(EXPRESSION_OUTPUT)) {
             SigUtils.summariseSignatures(output, cli.getOptionValue(FILE_OPTION), sigType, spaceElements, noTabs);
         } else {
             SigUtils.convertSignatureFileToNewFormat(output, cli.getOptionValue(FILE_OPTION), sigType, spaceElements);
@@ -244,6 +249,11 @@ public final class SigTool {
                 "Specifies a file to output the results to.  If not specified, will output to console."));
         options.addOption(new Option(INTERNAL_FILE, "internal", true,
                 "The path of an internal file if matching container signatures."));
+        options.addOption(new Option(COSTS_OPTION, "costs", true,
+                "Identifies a file or the files in a folder with the signature file, and outputs the cost of "
+                        + "evaluating each signature, most expensive first."));
+        options.addOption(new Option(JSON_OPTION, "json", false,
+                "Output signature costs as JSON rather than CSV."));
         addOptionGroups(options, buildFileOptions(), buildOutputOptions(), buildSignatureOptions(), buildCompileOptions());
         return options;
     }
@@ -37,12 +37,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import jakarta.xml.bind.JAXBException;
 import javax.xml.parsers.ParserConfigurationException;
@@ -84,6 +87,7 @@ import uk.gov.nationalarchives.droid.core.signature.droid6.ByteSequence;
 import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
 import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
 import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SignatureProfiler;
 import uk.gov.nationalarchives.droid.core.signature.xml.XmlUtils;
 
 /**
@@ -530,6 +534,52 @@ public final class SigUtils {
         }
     }
 
+    /**
+     * Identifies a file, or all the files under a folder, with a binary signature file and outputs the cost
+     * of evaluating each signature, most expensive first.
+     *
+     * @param output The PrintStream to write the signature costs to.
+     * @param signatureFileName The name of the binary signature file to profile.
+     * @param pathToScan The path of a file or a folder to identify.
+     * @param json Whether to output the costs as JSON rather than CSV.
+     * @throws IOException If a problem occurs during IO.
+     * @throws SignatureParseException If a problem occurs parsing the signature file.
+     */
+    public static void profileSignatureFile(PrintStream output, String signatureFileName, String pathToScan,
+                                            boolean json) throws IOException, SignatureParseException {
+        FFSignatureFile sigFile = readBinarySignatures(signatureFileName);
+        sigFile.prepareForUse();
+        SignatureProfiler profiler = new SignatureProfiler();
+        sigFile.setSignatureProfiler(profiler);
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(Paths.get(getPathWithoutEndingSeparator(pathToScan)))) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        StringBuilder exceptionMessages = new StringBuilder();
+        try {
+            for (Path file : files) {
+                try (ByteReader reader = getByteReaderForFile(file)) {
+                    sigFile.runFileIdentification(reader);
+                } catch (IOException e) {
+                    exceptionMessages.append(IO_EXCEPTION_PROCESSING).append(file).append(':')
+                            .append(e.getMessage()).append(NEW_LINE_CHAR);
+                }
+            }
+        } finally {
+            profiler.stop();
+        }
+        PrintWriter writer = new PrintWriter(output);
+        if (json) {
+            profiler.writeJson(writer);
+        } else {
+            profiler.writeCsv(writer);
+        }
+        String failureMessages = exceptionMessages.toString();
+        if (!failureMessages.isEmpty()) {
+            throw new IOException(failureMessages);
+        }
+    }
+
     /**
      * Matches ContainerSignature against a file or files in a folder and outputs a tab-delimited summary
      * of the matches.